@@ -0,0 +1,53 @@
+package com.example.xmlgenerator.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sample templates for the supported message types, bundled under /templates.
+ */
+public final class BenchmarkTemplates {
+
+    private BenchmarkTemplates() {
+    }
+
+    /**
+     * Loads the sample template of a message type.
+     *
+     * @param messageType PAIN1V3, PAIN7V9, PAIN8V8 or PACS8V8.
+     * @return The template bytes.
+     * @throws IOException If the template cannot be read.
+     */
+    public static byte[] load(String messageType) throws IOException {
+        String resource;
+        switch (messageType) {
+            case "PAIN1V3":
+                resource = "/templates/pain001v3.xml";
+                break;
+            case "PAIN7V9":
+                resource = "/templates/pain007v9.xml";
+                break;
+            case "PAIN8V8":
+                resource = "/templates/pain008v8.xml";
+                break;
+            case "PACS8V8":
+                resource = "/templates/pacs008v8.xml";
+                break;
+            default:
+                throw new IllegalArgumentException("No sample template for message type: " + messageType);
+        }
+        try (InputStream in = BenchmarkTemplates.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Template resource not found: " + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.xmlgenerator.benchmarks;
+
+import com.example.xmlgenerator.XmlGeneratorApplication;
+import com.example.xmlgenerator.concurrent.ThreadMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency seen by many concurrent clients, with the server handling connections on platform threads
+ * (NanoHTTPD's thread per connection) or on virtual threads. Each benchmark thread is one client doing small
+ * generate and download round trips; most of them wait in the admission queue at any time, which is where the two
+ * modes differ. Sample mode reports the latency percentiles.
+ *
+ * The "virtual" mode needs Java 21 or later; on older JVMs run with "-p threadMode=platform".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+// All clients come from localhost, so the per-client quota and the queue must admit all of them.
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dxmlgenerator.admission.maxQueued=1000", "-Dxmlgenerator.admission.maxPerClient=1000"})
+public class ConcurrentClientsBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threadMode;
+
+    @Param({"buffered", "stream"})
+    public String delivery;
+
+    @Param({"100"})
+    public int transactions;
+
+    private XmlGeneratorApplication application;
+    private String baseUrl;
+    private byte[] requestBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ThreadMode mode = ThreadMode.valueOf(threadMode.toUpperCase());
+        if (mode == ThreadMode.VIRTUAL && !ThreadMode.virtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later; run with -p threadMode=platform");
+        }
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        application = new XmlGeneratorApplication(port, mode);
+        baseUrl = "http://localhost:" + port;
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("numTransactions", String.valueOf(transactions));
+        fields.put("numBatches", "1");
+        fields.put("numCopies", "1");
+        fields.put("engine", "streaming");
+        fields.put("delivery", delivery);
+        requestBody = GenerateRequests.multipartBody(fields, BenchmarkTemplates.load("PAIN1V3"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.stop();
+    }
+
+    @Benchmark
+    public long generateAndDownload() throws Exception {
+        return GenerateRequests.generateAndDownload(baseUrl, requestBody);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.xmlgenerator.benchmarks;
+
+import com.example.xmlgenerator.XmlGeneratorApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full round trip through the embedded server: multipart POST /generate, then GET of the download link,
+ * reading the whole ZIP. The server runs in the benchmark JVM on a free port, so the allocation figures
+ * include both the client and the server side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class GenerateEndpointBenchmark {
+
+    @Param({"dom", "streaming", "parallel"})
+    public String engine;
+
+    @Param({"buffered", "stream"})
+    public String delivery;
+
+    @Param({"1000", "100000"})
+    public int transactions;
+
+    private XmlGeneratorApplication application;
+    private String baseUrl;
+    private byte[] requestBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        application = new XmlGeneratorApplication(port);
+        baseUrl = "http://localhost:" + port;
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("numTransactions", String.valueOf(transactions));
+        fields.put("numBatches", "1");
+        fields.put("numCopies", "1");
+        fields.put("engine", engine);
+        fields.put("delivery", delivery);
+        requestBody = GenerateRequests.multipartBody(fields, BenchmarkTemplates.load("PAIN1V3"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.stop();
+    }
+
+    @Benchmark
+    public long generateAndDownload() throws Exception {
+        return GenerateRequests.generateAndDownload(baseUrl, requestBody);
+    }
+}
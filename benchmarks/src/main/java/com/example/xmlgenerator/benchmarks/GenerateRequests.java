@@ -0,0 +1,88 @@
+package com.example.xmlgenerator.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * HTTP client side of the endpoint benchmarks: builds the /generate form and runs a generate and download round trip.
+ */
+final class GenerateRequests {
+
+    private static final String BOUNDARY = "----xmlgeneratorbenchmark";
+
+    private GenerateRequests() {
+    }
+
+    /**
+     * Runs POST /generate, then GET of the download link, reading the whole ZIP.
+     *
+     * @param baseUrl     The server URL, e.g. http://localhost:8080.
+     * @param requestBody The multipart body built by multipartBody.
+     * @return The number of ZIP bytes received.
+     * @throws IOException If a request fails.
+     */
+    static long generateAndDownload(String baseUrl, byte[] requestBody) throws IOException {
+        HttpURLConnection post = (HttpURLConnection) new URL(baseUrl + "/generate").openConnection();
+        post.setInstanceFollowRedirects(false);
+        post.setDoOutput(true);
+        post.setRequestMethod("POST");
+        post.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        post.setFixedLengthStreamingMode(requestBody.length);
+        try (OutputStream out = post.getOutputStream()) {
+            out.write(requestBody);
+        }
+        if (post.getResponseCode() != 303) {
+            throw new IllegalStateException("Unexpected /generate response: " + post.getResponseCode());
+        }
+        String location = post.getHeaderField("Location");
+        drain(post.getInputStream());
+
+        String downloadQuery = location.substring(location.indexOf('?'));
+        HttpURLConnection get = (HttpURLConnection) new URL(baseUrl + "/download-generated-files" + downloadQuery).openConnection();
+        if (get.getResponseCode() != 200) {
+            throw new IllegalStateException("Unexpected download response: " + get.getResponseCode());
+        }
+        return drain(get.getInputStream());
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = in) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Builds the multipart/form-data body of a /generate request.
+     *
+     * @param fields   The form fields (numTransactions, numBatches, numCopies, engine, delivery).
+     * @param template The template file content.
+     * @return The request body.
+     * @throws IOException Never, writes to memory only.
+     */
+    static byte[] multipartBody(Map<String, String> fields, byte[] template) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            body.write(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field.getKey() + "\"\r\n\r\n"
+                    + field.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"templateFile\"; filename=\"template.xml\"\r\n"
+                + "Content-Type: application/xml\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(template);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.xmlgenerator.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it, but counts the bytes so the JIT cannot drop the writes.
+ */
+public final class NullOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
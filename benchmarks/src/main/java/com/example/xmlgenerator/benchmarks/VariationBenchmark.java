@@ -0,0 +1,70 @@
+package com.example.xmlgenerator.benchmarks;
+
+import com.example.xmlgenerator.variation.TransactionVariation;
+import com.example.xmlgenerator.variation.Variation;
+import com.example.xmlgenerator.variation.VariationSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the varied values of one transaction (amount text, currency, name, IBAN and BIC) on a single thread,
+ * i.e. what the variation adds to the rendering of each transaction. The target is above 500k transactions/s.
+ * The preparation of the counterparty pool is measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariationBenchmark {
+
+    private static final int TRANSACTIONS = 10000;
+
+    @Param({"uniform(1.00,2500.00)", "lognormal(150.00,1.5)"})
+    public String amount;
+
+    private VariationSpec spec;
+    private TransactionVariation variation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spec = VariationSpec.parse("seed=42; amount=" + amount + "; currency=EUR:90,USD:7,JPY:3; name=builtin;"
+                + " iban=on; bic=on; countries=DE,FR,NL,ES", false);
+        variation = Variation.create(spec).forCopy(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public void transactionValues(Blackhole blackhole) {
+        for (int j = 0; j < TRANSACTIONS; j++) {
+            blackhole.consume(variation.getUnscaledAmount(0, j));
+            blackhole.consume(variation.getAmountText(0, j));
+            blackhole.consume(variation.getCurrency(0, j));
+            blackhole.consume(variation.getName(0, j));
+            blackhole.consume(variation.getIban(0, j));
+            blackhole.consume(variation.getBic(0, j));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public Variation preparePool() {
+        return Variation.create(spec);
+    }
+}
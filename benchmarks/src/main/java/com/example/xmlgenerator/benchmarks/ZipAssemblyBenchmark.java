@@ -0,0 +1,91 @@
+package com.example.xmlgenerator.benchmarks;
+
+import com.example.xmlgenerator.archive.CompressingOutputSink;
+import com.example.xmlgenerator.archive.ZipArchiveWriter;
+import com.example.xmlgenerator.archive.ZipCompression;
+import com.example.xmlgenerator.id.IdGenerators;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.GeneratedFile;
+import com.example.xmlgenerator.service.XmlProcessorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * In-memory ZIP assembly of generated files: deflating on the assembling thread with ZipOutputStream, against
+ * copying entries that the generation tasks already deflated (as done by the /generate handler for buffered delivery).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ZipAssemblyBenchmark {
+
+    @Param({"1000", "100000"})
+    public int transactions;
+
+    @Param({"1", "4"})
+    public int copies;
+
+    private XmlProcessorService service;
+    private List<GeneratedFile> files;
+    private List<GeneratedFile> compressedFiles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = new XmlProcessorService(IdGenerators.create("counter", 0));
+        CompiledTemplate compiledTemplate = service.compileTemplate(new ByteArrayInputStream(BenchmarkTemplates.load("PAIN1V3")));
+        files = service.generateXmlFilesStreaming(compiledTemplate, transactions, 1, copies).getFiles();
+        compressedFiles = service.generateXmlFilesStreaming(compiledTemplate, transactions, 1, copies,
+                new CompressingOutputSink(HeapOutputSink.getInstance(), ZipCompression.DEFAULT)).getFiles();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public byte[] zip() throws Exception {
+        ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(zipOutputStream)) {
+            for (GeneratedFile generatedFile : files) {
+                zos.putNextEntry(new ZipEntry(generatedFile.getFileName()));
+                generatedFile.writeTo(zos);
+                zos.closeEntry();
+            }
+        }
+        return zipOutputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] zipPrecompressed() throws Exception {
+        ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
+        try (ZipArchiveWriter archive = new ZipArchiveWriter(zipOutputStream)) {
+            for (GeneratedFile generatedFile : compressedFiles) {
+                archive.addEntry(generatedFile.getFileName(), generatedFile.getContent());
+            }
+        }
+        return zipOutputStream.toByteArray();
+    }
+}
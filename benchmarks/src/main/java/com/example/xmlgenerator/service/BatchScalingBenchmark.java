@@ -0,0 +1,65 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.benchmarks.BenchmarkTemplates;
+import com.example.xmlgenerator.benchmarks.NullOutputStream;
+import com.example.xmlgenerator.id.IdGenerators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of transactions spread over more and more batches. With the precomputed paths the cost
+ * should stay flat as the batch count grows; a rising curve means per-batch work crept back into the loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BatchScalingBenchmark {
+
+    @Param({"100000"})
+    public int transactions;
+
+    @Param({"1", "10", "100", "1000"})
+    public int batches;
+
+    private XmlProcessorService service;
+    private CompiledTemplate compiledTemplate;
+    private StreamingXmlGenerator streamingGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = new XmlProcessorService(IdGenerators.create("counter", 0));
+        compiledTemplate = service.compileTemplate(new ByteArrayInputStream(BenchmarkTemplates.load("PAIN1V3")));
+        streamingGenerator = new StreamingXmlGenerator(compiledTemplate);
+    }
+
+    @Benchmark
+    public Document dom() throws Exception {
+        Document doc = compiledTemplate.newDocument();
+        service.processSingleXmlDocument(doc, compiledTemplate, transactions, batches);
+        return doc;
+    }
+
+    @Benchmark
+    public long streaming() throws Exception {
+        NullOutputStream out = new NullOutputStream();
+        service.writeStreamingCopy(streamingGenerator, out, transactions, batches);
+        return out.getCount();
+    }
+}
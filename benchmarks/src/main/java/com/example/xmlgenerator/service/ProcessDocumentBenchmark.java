@@ -0,0 +1,55 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.benchmarks.BenchmarkTemplates;
+import com.example.xmlgenerator.id.IdGenerators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DOM generation of one document: cloning the compiled template and processSingleXmlDocument,
+ * for every supported message type. Bytes per transaction = gc.alloc.rate.norm / transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProcessDocumentBenchmark {
+
+    @Param({"PAIN1V3", "PAIN7V9", "PAIN8V8", "PACS8V8"})
+    public String messageType;
+
+    @Param({"1", "1000", "100000"})
+    public int transactions;
+
+    private XmlProcessorService service;
+    private CompiledTemplate compiledTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = new XmlProcessorService(IdGenerators.create("counter", 0));
+        compiledTemplate = service.compileTemplate(new ByteArrayInputStream(BenchmarkTemplates.load(messageType)));
+    }
+
+    @Benchmark
+    public Document processSingleXmlDocument() throws Exception {
+        Document doc = compiledTemplate.newDocument();
+        service.processSingleXmlDocument(doc, compiledTemplate, transactions, 1);
+        return doc;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.benchmarks.BenchmarkTemplates;
+import com.example.xmlgenerator.id.IdGenerators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a generated DOM document (xmlDocumentToBytes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SerializationBenchmark {
+
+    @Param({"PAIN1V3", "PACS8V8"})
+    public String messageType;
+
+    @Param({"1", "1000", "100000"})
+    public int transactions;
+
+    private XmlProcessorService service;
+    private Document doc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = new XmlProcessorService(IdGenerators.create("counter", 0));
+        CompiledTemplate compiledTemplate = service.compileTemplate(new ByteArrayInputStream(BenchmarkTemplates.load(messageType)));
+        doc = compiledTemplate.newDocument();
+        service.processSingleXmlDocument(doc, compiledTemplate, transactions, 1);
+    }
+
+    @Benchmark
+    public byte[] xmlDocumentToBytes() throws Exception {
+        return service.xmlDocumentToBytes(doc);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.benchmarks.BenchmarkTemplates;
+import com.example.xmlgenerator.id.IdGenerators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing, type detection and compilation of an uploaded template (XmlProcessorService.compileTemplate),
+ * and the type detection alone, which runs before the template is parsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateParseBenchmark {
+
+    @Param({"PAIN1V3", "PAIN7V9", "PAIN8V8", "PACS8V8"})
+    public String messageType;
+
+    private XmlProcessorService service;
+    private byte[] template;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = new XmlProcessorService(IdGenerators.create("counter", 0));
+        template = BenchmarkTemplates.load(messageType);
+    }
+
+    @Benchmark
+    public CompiledTemplate compileTemplate() throws Exception {
+        return service.compileTemplate(new ByteArrayInputStream(template));
+    }
+
+    @Benchmark
+    public String sniffMessageType() throws Exception {
+        return MessageTypeSniffer.sniff(new ByteArrayInputStream(template));
+    }
+}
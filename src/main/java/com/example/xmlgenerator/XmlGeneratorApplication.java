@@ -2,25 +2,51 @@
 // Located at: src/main/java/com/example/xmlgenerator/XmlGeneratorApplication.java
 package com.example.xmlgenerator;
 
+import com.example.xmlgenerator.admission.AdmissionController;
+import com.example.xmlgenerator.admission.AdmissionRejectedException;
+import com.example.xmlgenerator.admission.AdmissionTicket;
+import com.example.xmlgenerator.archive.ArchiveFormat;
+import com.example.xmlgenerator.archive.ArchiveSettings;
+import com.example.xmlgenerator.archive.ArchiveWriter;
+import com.example.xmlgenerator.archive.CompressingOutputSink;
+import com.example.xmlgenerator.cache.CachedDownload;
+import com.example.xmlgenerator.cli.GenerateCommand;
+import com.example.xmlgenerator.cache.DownloadCache;
+import com.example.xmlgenerator.concurrent.BlockingPipe;
+import com.example.xmlgenerator.concurrent.ExecutorAsyncRunner;
+import com.example.xmlgenerator.concurrent.ThreadMode;
+import com.example.xmlgenerator.jobs.GenerationJob;
+import com.example.xmlgenerator.jobs.JobManager;
+import com.example.xmlgenerator.jobs.JobState;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.OutputSinks;
+import com.example.xmlgenerator.service.CompiledTemplate;
 import com.example.xmlgenerator.service.XmlProcessorService;
 import com.example.xmlgenerator.service.GeneratedFile;
 import com.example.xmlgenerator.service.GenerationResult;
+import com.example.xmlgenerator.service.TimestampFormatter;
+import com.example.xmlgenerator.templates.RegisteredTemplate;
+import com.example.xmlgenerator.templates.TemplateLibrary;
+import com.example.xmlgenerator.templates.TemplateRegistry;
+import com.example.xmlgenerator.variation.VariationSpec;
 import fi.iki.elonen.NanoHTTPD;
+import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.io.FileInputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.UUID; // For generating unique IDs for cached files
 import java.util.concurrent.ConcurrentHashMap; // For in-memory caching
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Main application class extending NanoHTTPD to serve web content and handle XML generation.
@@ -36,15 +62,80 @@ public class XmlGeneratorApplication extends NanoHTTPD {
     // --- END PORT MODIFICATION ---
 
     private final XmlProcessorService xmlProcessorService; // Service for XML processing
-
-    // Date format for ZIP file naming convention: YYYYMMDDHHmmss
-    private static final SimpleDateFormat ZIP_FILE_TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyMMddHHmmss");
-
-    // In-memory cache for generated ZIP files.
-    // Key: Unique ID (UUID), Value: byte array of the zipped content.
-    private final ConcurrentHashMap<String, byte[]> generatedZipCache = new ConcurrentHashMap<>();
-    // In-memory cache for ZIP file names, associated with the unique ID.
-    private final ConcurrentHashMap<String, String> generatedZipNames = new ConcurrentHashMap<>();
+    private final AdmissionController admissionController; // Decides when each generation may run
+    private final JobManager jobManager; // Runs asynchronous generation jobs (/jobs)
+    private final TemplateRegistry templateRegistry; // Compiled templates by SHA-256, reused across uploads (/templates)
+    private final TemplateLibrary templateLibrary; // Named templates of the library directory
+
+    // Thread-safe formatter for the ZIP file naming convention: YYYYMMDDHHmmss
+    private static final TimestampFormatter TIMESTAMP_FORMATTER = TimestampFormatter.systemDefault();
+
+    // Response header carrying the ID of the registered template of a generation, to be sent as templateId next time
+    private static final String TEMPLATE_ID_HEADER = "X-Template-Id";
+
+    // --- DOWNLOAD CACHE SETTINGS ---
+    // Can be overridden with -D system properties, e.g. -Dxmlgenerator.cache.maxBytes=1073741824
+    private static final long CACHE_MAX_BYTES = Long.getLong("xmlgenerator.cache.maxBytes", 256L * 1024 * 1024); // Heap for cached ZIP files
+    private static final long CACHE_TTL_MILLIS = Long.getLong("xmlgenerator.cache.ttlMinutes", 30L) * 60 * 1000; // Lifetime of an undownloaded ZIP file
+    private static final long CACHE_SPILL_THRESHOLD_BYTES = Long.getLong("xmlgenerator.cache.spillThresholdBytes", 32L * 1024 * 1024); // Larger archives go to disk
+    private static final long CACHE_MAX_SPILLED_BYTES = Long.getLong("xmlgenerator.cache.maxSpilledBytes", 8L * 1024 * 1024 * 1024); // Disk for spilled archives
+    private static final String CACHE_SPILL_DIR = System.getProperty("xmlgenerator.cache.spillDir",
+            new File(System.getProperty("java.io.tmpdir"), "xml-generator-cache").getPath());
+    // --- END DOWNLOAD CACHE SETTINGS ---
+
+    // --- OUTPUT SETTINGS ---
+    // Where buffered generations keep the generated XML files until they are zipped:
+    // heap (default), channel (temporary files written through a FileChannel) or mapped (memory-mapped temporary files).
+    // The file based sinks keep large outputs off the heap; their files go to the spill directory.
+    private static final String OUTPUT_SINK = System.getProperty("xmlgenerator.output.sink", "heap");
+    // --- END OUTPUT SETTINGS ---
+
+    // --- ARCHIVE SETTINGS ---
+    // The archive format is chosen per request (form field "archive": zip, tar, tar.gz or tar.zst; zip by default).
+    // Compression levels: -Dxmlgenerator.zip.compression=stored|default|0-9 (buffered generations deflate each file
+    // in its own generation task, so multi-copy ZIP files compress in parallel), -Dxmlgenerator.gzip.level=1-9
+    // and -Dxmlgenerator.zstd.level=1-22. Tar entries generated while streaming are spooled to the spill directory.
+    private static final ArchiveSettings ARCHIVE_SETTINGS = ArchiveSettings.fromSystemProperties(
+            OutputSinks.create("channel", new File(CACHE_SPILL_DIR), true));
+    // --- END ARCHIVE SETTINGS ---
+
+    // --- TEMPLATE REGISTRY SETTINGS ---
+    // Number of compiled templates kept for reuse; the least recently used one is evicted beyond it.
+    private static final int TEMPLATE_REGISTRY_MAX_ENTRIES = Integer.getInteger("xmlgenerator.templates.maxEntries", 64);
+    // Directory of the named templates (templateName form field); loaded and warmed up before the port opens.
+    private static final String TEMPLATE_LIBRARY_DIR = System.getProperty("xmlgenerator.templates.dir", "templates");
+    // Transactions generated from each library template at startup to warm up the engines (0 to skip).
+    private static final int TEMPLATE_WARMUP_TRANSACTIONS = Integer.getInteger("xmlgenerator.templates.warmupTransactions", 20000);
+    // --- END TEMPLATE REGISTRY SETTINGS ---
+
+    // --- ADMISSION SETTINGS ---
+    // Apply to all generations: buffered and streamed downloads as well as jobs.
+    private static final int ADMISSION_MAX_CONCURRENT = Integer.getInteger("xmlgenerator.admission.maxConcurrent", 2); // Generations running at the same time
+    private static final int ADMISSION_MAX_QUEUED = Integer.getInteger("xmlgenerator.admission.maxQueued", 32); // Generations waiting before new ones get 429
+    private static final int ADMISSION_MAX_PER_CLIENT = Integer.getInteger("xmlgenerator.admission.maxPerClient", 4); // Generations one client may have running or waiting
+    private static final String RETRY_AFTER_SECONDS = "30"; // Retry-After of a 429 response
+    // --- END ADMISSION SETTINGS ---
+
+    // Cache for generated ZIP files, keyed by a unique ID (UUID), until they are downloaded or expire.
+    private final DownloadCache downloadCache = new DownloadCache(CACHE_MAX_BYTES, CACHE_MAX_SPILLED_BYTES, CACHE_TTL_MILLIS,
+            CACHE_SPILL_THRESHOLD_BYTES, new File(CACHE_SPILL_DIR));
+    // Generations that are only run when their download is requested ("stream" delivery).
+    // Key: Unique ID (UUID), Value: the compiled template and parameters of the generation.
+    // Expired entries are purged whenever a new one is added.
+    private final ConcurrentHashMap<String, PendingDownload> pendingDownloads = new ConcurrentHashMap<>();
+
+    // Size of the pipe between a generating thread and the HTTP response.
+    private static final int STREAM_PIPE_SIZE = 64 * 1024;
+    // Threads writing streamed downloads; each one is blocked on its client most of the time.
+    // Always platform threads: ZipOutputStream.write is synchronized, so on Java 21 a virtual thread blocked
+    // on a slow client inside it would pin its carrier thread.
+    private final ExecutorService downloadExecutor = ThreadMode.PLATFORM.newThreadPerTaskExecutor("stream-download-");
+    // Threads handling HTTP connections (upload spooling, downloads), or null for NanoHTTPD's default runner.
+    private final ExecutorService connectionExecutor;
+    // Destination of the XML files of buffered generations.
+    private final OutputSink outputSink = OutputSinks.create(OUTPUT_SINK, new File(CACHE_SPILL_DIR), true);
+    // Compresses each file into its ZIP entry data while it is generated.
+    private final OutputSink compressingOutputSink = new CompressingOutputSink(outputSink, ARCHIVE_SETTINGS.getZipCompression());
 
 
     /**
@@ -53,17 +144,75 @@ public class XmlGeneratorApplication extends NanoHTTPD {
      * @throws IOException If the server cannot be started.
      */
     public XmlGeneratorApplication() throws IOException {
-        super(PORT); // Call the superclass constructor with the port number.
+        this(PORT);
+    }
+
+    /**
+     * Starts the server on a specific port (e.g., a free port for benchmarks).
+     * @param port The port to listen on.
+     * @throws IOException If the server cannot be started.
+     */
+    public XmlGeneratorApplication(int port) throws IOException {
+        this(port, ThreadMode.fromSystemProperties());
+    }
+
+    /**
+     * Starts the server on a specific port with a specific kind of threads for connections and streamed downloads.
+     * @param port       The port to listen on.
+     * @param threadMode Platform threads, or virtual threads (Java 21+) for the HTTP connections.
+     * @throws IOException If the server cannot be started.
+     */
+    public XmlGeneratorApplication(int port, ThreadMode threadMode) throws IOException {
+        super(port); // Call the superclass constructor with the port number.
+        if (threadMode == ThreadMode.VIRTUAL) {
+            // One virtual thread per connection instead of NanoHTTPD's platform thread per connection
+            this.connectionExecutor = threadMode.newThreadPerTaskExecutor("http-connection-");
+            setAsyncRunner(new ExecutorAsyncRunner(connectionExecutor));
+        } else {
+            this.connectionExecutor = null;
+        }
         this.xmlProcessorService = new XmlProcessorService(); // Initialize the XML processor service.
+        this.templateRegistry = new TemplateRegistry(xmlProcessorService, TEMPLATE_REGISTRY_MAX_ENTRIES);
+        this.templateLibrary = new TemplateLibrary(new File(TEMPLATE_LIBRARY_DIR), xmlProcessorService, TEMPLATE_WARMUP_TRANSACTIONS);
+        this.admissionController = new AdmissionController(ADMISSION_MAX_CONCURRENT, ADMISSION_MAX_QUEUED, ADMISSION_MAX_PER_CLIENT);
+        this.jobManager = new JobManager(xmlProcessorService, downloadCache, admissionController, CACHE_TTL_MILLIS, ARCHIVE_SETTINGS);
+        // Compile and warm up the library templates first, so the first request is as fast as the following ones.
+        templateLibrary.start();
+        try {
+            templateLibrary.awaitLoaded();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Start anyway; the library keeps loading in the background
+        }
         start(NanoHTTPD.SOCKET_READ_TIMEOUT, false); // Start the server.
-        System.out.println("Server started on port " + PORT + ". Access http://localhost:" + PORT);
+        System.out.println("Server started on port " + port + " (" + threadMode.name().toLowerCase() + " threads). Access http://localhost:" + port);
+    }
+
+    /**
+     * Stops the server and releases its worker threads and cached downloads.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        templateLibrary.close();
+        jobManager.shutdown();
+        downloadExecutor.shutdown();
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdown();
+        }
+        downloadCache.close();
+        xmlProcessorService.shutdown();
     }
 
     /**
      * Main method to start the XML Generator application.
-     * @param args Command line arguments (not used).
+     * With "generate" as first argument, runs the headless generate command instead of the server
+     * (see GenerateCommand, e.g. "generate -t 1000 -o out template.xml").
+     * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && "generate".equals(args[0])) {
+            System.exit(GenerateCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
         try {
             new XmlGeneratorApplication(); // Create and start a new instance of the application.
         } catch (IOException e) {
@@ -87,7 +236,11 @@ public class XmlGeneratorApplication extends NanoHTTPD {
 
         try {
             // Route requests based on URI and method
-            if (Method.GET.equals(method)) {
+            if ("/jobs".equals(uri) || uri.startsWith("/jobs/")) {
+                return handleJobsRequest(session, method, uri); // Asynchronous generation jobs
+            } else if ("/templates".equals(uri) || uri.startsWith("/templates/")) {
+                return handleTemplatesRequest(session, method, uri); // Registered templates
+            } else if (Method.GET.equals(method)) {
                 if ("/".equals(uri) || "/index.html".equals(uri)) {
                     return handleIndexPage(); // Serve the main HTML page
                 } else if ("/result.html".equals(uri)) {
@@ -96,6 +249,8 @@ public class XmlGeneratorApplication extends NanoHTTPD {
                 } else if (uri.startsWith("/download-generated-files")) {
                     // New endpoint to handle actual file download from cache
                     return handleDownloadRequest(session);
+                } else if ("/cache-stats".equals(uri)) {
+                    return handleCacheStatsRequest(); // Download cache counters for monitoring
                 }
                 else {
                     // Serve other static files (CSS, JS, images)
@@ -170,7 +325,7 @@ public class XmlGeneratorApplication extends NanoHTTPD {
 
     /**
      * Handles the POST request for XML file generation.
-     * It parses form data, calls the XML processing service, zips the generated files in memory,
+     * It parses form data, calls the XML processing service, archives the generated files (ZIP by default),
      * stores them in a cache, and redirects the user to the result page with a download ID.
      *
      * @param session The HTTP session containing request details, including form data.
@@ -186,63 +341,122 @@ public class XmlGeneratorApplication extends NanoHTTPD {
             String numTransactionsStr = session.getParms().get("numTransactions");
             String numBatchesStr = session.getParms().get("numBatches");
             String numCopiesStr = session.getParms().get("numCopies");
+            // Generation engine: "dom" (default), "streaming" or "parallel"
+            String engine = session.getParms().get("engine");
+            // Delivery: "buffered" (default) archives everything now, "stream" generates while downloading
+            String delivery = session.getParms().get("delivery");
+            // Archive format: "zip" (default), "tar", "tar.gz" or "tar.zst"
+            ArchiveFormat archiveFormat = parseArchiveFormat(session.getParms().get("archive"));
+            // Optional data variation, e.g. "seed=42; amount=uniform(1.00,2500.00); iban=on"
+            VariationSpec variationSpec = parseVariation(session.getParms().get("variation"));
 
             // Validate and convert parameters to integers
             int numTransactions = Integer.parseInt(numTransactionsStr);
             int numBatches = Integer.parseInt(numBatchesStr);
             int numCopies = Integer.parseInt(numCopiesStr);
 
-            // Get the uploaded template file content
-            String templateTempFilePath = files.get("templateFile"); 
-            if (templateTempFilePath == null) {
-                return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Template file not uploaded.");
+            // The uploaded template file, compiled unless it is registered already, or the registered templateId
+            RegisteredTemplate template = resolveTemplate(session, files);
+            if (template == null) {
+                return unknownTemplate();
             }
+            CompiledTemplate compiledTemplate = template.getCompiledTemplate().withVariation(variationSpec);
 
-            // Read the uploaded template file into an InputStream from its temporary location
-            InputStream templateInputStream = new FileInputStream(templateTempFilePath);
+            if ("stream".equals(delivery)) {
+                return handleStreamedGenerateRequest(compiledTemplate, template.getTemplateId(), engine, archiveFormat,
+                        numTransactions, numBatches, numCopies);
+            }
+
+            // Wait for a generation slot; rejected right away if the queue is full or the client is over its quota
+            AdmissionTicket ticket = admissionController.enqueue(session.getRemoteIpAddress(), (long) numTransactions * numCopies);
+            GenerationResult generationResult;
+            try {
+                if (!ticket.awaitTurn()) {
+                    return newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Generation was withdrawn.");
+                }
 
-            // Generate XML files in memory and get the GenerationResult
-            GenerationResult generationResult = xmlProcessorService.generateXmlFiles(templateInputStream, numTransactions, numBatches, numCopies);
+                // Generate XML files into the output sink and get the GenerationResult.
+                // For ZIP files, each file is deflated by its own generation task.
+                OutputSink sink = archiveFormat.compressesEntries() ? compressingOutputSink : outputSink;
+                if ("streaming".equals(engine)) {
+                    generationResult = xmlProcessorService.generateXmlFilesStreaming(compiledTemplate, numTransactions, numBatches, numCopies, sink);
+                } else if ("parallel".equals(engine)) {
+                    generationResult = xmlProcessorService.generateXmlFilesParallel(compiledTemplate, numTransactions, numBatches, numCopies, sink);
+                } else {
+                    generationResult = xmlProcessorService.generateXmlFiles(compiledTemplate, numTransactions, numBatches, numCopies, sink);
+                }
+            } finally {
+                ticket.close();
+            }
             List<GeneratedFile> generatedFiles = generationResult.getFiles();
-            
-            // Close the template input stream after processing
-            templateInputStream.close();
 
+            if (generationResult.getFailedCopies() > 0) {
+                // Not served as a partial archive: the failures were logged by the service
+                for (GeneratedFile generatedFile : generatedFiles) {
+                    generatedFile.discard();
+                }
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT,
+                        generationResult.getFailedCopies() + " of " + numCopies + " XML files could not be generated.");
+            }
             if (generatedFiles.isEmpty()) {
                 return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "No XML files were generated.");
             }
 
-            // Construct the ZIP file name
-            String zipFileName = generationResult.getFileTypeShortcode() + "_" + 
-                                 generationResult.getBatchTransactionType() + "_" + 
-                                 ZIP_FILE_TIMESTAMP_FORMAT.format(new Date()) + ".zip";
+            // Construct the archive file name
+            String archiveFileName = buildArchiveFileName(generationResult.getFileTypeShortcode(),
+                    generationResult.getBatchTransactionType(), archiveFormat);
 
-            // Create a ZIP archive in memory
-            ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
-            try (ZipOutputStream zos = new ZipOutputStream(zipOutputStream)) {
+            // Generate a unique ID for this generated archive
+            String downloadId = UUID.randomUUID().toString();
+
+            // Assemble the archive. ZIP entries were compressed by the generation tasks, so only copying is left here.
+            // In memory with the heap sink; with a file based sink the archive goes to disk like the files.
+            boolean onHeap = outputSink instanceof HeapOutputSink;
+            ByteArrayOutputStream archiveBytes = null;
+            File archiveFile = null;
+            try {
+                OutputStream archiveOut;
+                if (onHeap) {
+                    archiveBytes = new ByteArrayOutputStream();
+                    archiveOut = archiveBytes;
+                } else {
+                    archiveFile = downloadCache.createSpillFile(downloadId);
+                    archiveOut = new BufferedOutputStream(new FileOutputStream(archiveFile), STREAM_PIPE_SIZE);
+                }
+                try (ArchiveWriter archive = archiveFormat.newWriter(archiveOut,
+                        ARCHIVE_SETTINGS.withEntryClock(compiledTemplate.getFixedClock()))) {
+                    for (GeneratedFile generatedFile : generatedFiles) {
+                        archive.addEntry(generatedFile.getFileName(), generatedFile.getContent());
+                    }
+                }
+                if (onHeap) {
+                    downloadCache.put(downloadId, archiveFileName, archiveBytes.toByteArray()); // Store the archive and filename in cache
+                } else {
+                    downloadCache.putFile(downloadId, archiveFileName, archiveFile);
+                    archiveFile = null; // Owned by the cache now
+                }
+            } finally {
                 for (GeneratedFile generatedFile : generatedFiles) {
-                    ZipEntry entry = new ZipEntry(generatedFile.getFileName());
-                    zos.putNextEntry(entry);
-                    zos.write(generatedFile.getContent());
-                    zos.closeEntry();
+                    generatedFile.discard(); // Deletes the temporary files of the file based sinks
+                }
+                if (archiveFile != null && !archiveFile.delete()) {
+                    System.err.println("Warning: Could not delete partial archive " + archiveFile);
                 }
             }
 
-            byte[] zipBytes = zipOutputStream.toByteArray();
-
-            // Generate a unique ID for this generated ZIP file
-            String downloadId = UUID.randomUUID().toString();
-            generatedZipCache.put(downloadId, zipBytes); // Store the ZIP content in cache
-            generatedZipNames.put(downloadId, zipFileName); // Store the ZIP filename in cache
-
             // Redirect to result.html, passing the download ID and filename as query parameters
             Response response = newFixedLengthResponse(Response.Status.REDIRECT_SEE_OTHER, "text/html", "Redirecting to download page...");
-            response.addHeader("Location", "/result.html?id=" + downloadId + "&filename=" + zipFileName);
+            response.addHeader("Location", "/result.html?id=" + downloadId + "&filename=" + archiveFileName);
+            response.addHeader(TEMPLATE_ID_HEADER, template.getTemplateId());
             return response;
 
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e);
         } catch (NumberFormatException e) {
             System.err.println("Invalid number format for input parameters: " + e.getMessage());
             return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Invalid number format for transactions, batches, or copies.");
+        } catch (IllegalArgumentException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, e.getMessage());
         } catch (Exception e) {
             System.err.println("Error during file generation: " + e.getMessage());
             e.printStackTrace();
@@ -251,7 +465,290 @@ public class XmlGeneratorApplication extends NanoHTTPD {
     }
 
     /**
-     * Handles the GET request for downloading a generated ZIP file from the in-memory cache.
+     * Handles a generation request with "stream" delivery.
+     * The template is compiled by the caller, so an invalid upload is still reported on the form,
+     * but nothing is generated until the download link is requested (see streamPendingDownload).
+     *
+     * @param compiledTemplate The compiled template, with the requested data variation.
+     * @param templateId       The ID of the registered template.
+     * @param engine           The requested generation engine.
+     * @param archiveFormat    The requested archive format.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @return A NanoHTTPD.Response redirecting to the result page.
+     */
+    private Response handleStreamedGenerateRequest(CompiledTemplate compiledTemplate, String templateId, String engine,
+                                                   ArchiveFormat archiveFormat, int numTransactions, int numBatches,
+                                                   int numCopies) {
+        String archiveFileName = buildArchiveFileName(compiledTemplate.getFileTypeShortcode(),
+                xmlProcessorService.getBatchTransactionType(numTransactions, numBatches, 1), archiveFormat);
+
+        purgeExpiredPendingDownloads();
+        String downloadId = UUID.randomUUID().toString();
+        pendingDownloads.put(downloadId, new PendingDownload(compiledTemplate, numTransactions, numBatches, numCopies,
+                "parallel".equals(engine), archiveFormat, archiveFileName));
+
+        Response response = newFixedLengthResponse(Response.Status.REDIRECT_SEE_OTHER, "text/html", "Redirecting to download page...");
+        response.addHeader("Location", "/result.html?id=" + downloadId + "&filename=" + archiveFileName);
+        response.addHeader(TEMPLATE_ID_HEADER, templateId);
+        return response;
+    }
+
+    /**
+     * Builds the archive file name: type, batch/transaction type and timestamp, with the extension of the format
+     * (e.g., PAIN1V3_SDMC_20240101120000.zip or PAIN1V3_SDMC_20240101120000.tar.gz).
+     *
+     * @param fileTypeShortcode    The file type shortcode of the template.
+     * @param batchTransactionType The batch/transaction type (see XmlProcessorService.getBatchTransactionType).
+     * @param archiveFormat        The archive format.
+     * @return The archive file name.
+     */
+    private static String buildArchiveFileName(String fileTypeShortcode, String batchTransactionType, ArchiveFormat archiveFormat) {
+        return fileTypeShortcode + "_" + batchTransactionType + "_" + TIMESTAMP_FORMATTER.compactDateTime() + archiveFormat.getExtension();
+    }
+
+    /**
+     * Parses the "archive" form field.
+     *
+     * @param archive The field value, or null.
+     * @return The archive format, ZIP if the field is missing or empty.
+     * @throws IllegalArgumentException If the format is unknown.
+     */
+    private static ArchiveFormat parseArchiveFormat(String archive) {
+        return archive == null || archive.isEmpty() ? ArchiveFormat.ZIP : ArchiveFormat.fromName(archive);
+    }
+
+    /**
+     * Parses the "variation" form field. Name dictionaries cannot be read from files of the server.
+     *
+     * @param variation The field value, or null.
+     * @return The variation spec, or null if the field is missing or blank.
+     * @throws IllegalArgumentException If a setting is invalid.
+     */
+    private static VariationSpec parseVariation(String variation) {
+        return VariationSpec.parse(variation, false);
+    }
+
+    /**
+     * Handles the template API:
+     * GET /templates lists the named templates of the library,
+     * POST /templates (multipart form with a templateFile) registers a template and returns its templateId,
+     * GET /templates/{templateId} tells whether a template is still registered.
+     * Generation requests (/generate, POST /jobs) accept the templateName or templateId form field instead of a
+     * templateFile.
+     *
+     * @param session The HTTP session.
+     * @param method  The HTTP method.
+     * @param uri     The requested URI.
+     * @return A NanoHTTPD.Response with the template as JSON, or an error message.
+     */
+    private Response handleTemplatesRequest(IHTTPSession session, Method method, String uri) {
+        try {
+            RegisteredTemplate template;
+            if (("/templates".equals(uri) || "/templates/".equals(uri)) && Method.GET.equals(method)) {
+                StringBuilder json = new StringBuilder("{\"templates\":[");
+                for (Map.Entry<String, RegisteredTemplate> entry : templateLibrary.getTemplates().entrySet()) {
+                    if (json.charAt(json.length() - 1) != '[') {
+                        json.append(',');
+                    }
+                    json.append("{\"name\":\"").append(escapeJson(entry.getKey())).append('"')
+                        .append(",\"templateId\":\"").append(entry.getValue().getTemplateId()).append('"')
+                        .append(",\"fileType\":\"").append(entry.getValue().getCompiledTemplate().getFileTypeShortcode()).append("\"}");
+                }
+                return newFixedLengthResponse(Response.Status.OK, "application/json", json.append("]}").toString());
+            } else if (("/templates".equals(uri) || "/templates/".equals(uri)) && Method.POST.equals(method)) {
+                Map<String, String> files = new HashMap<>();
+                session.parseBody(files);
+                String templateTempFilePath = files.get("templateFile");
+                if (templateTempFilePath == null) {
+                    return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Template file not uploaded.");
+                }
+                template = templateRegistry.register(new File(templateTempFilePath));
+            } else if (uri.startsWith("/templates/") && Method.GET.equals(method)) {
+                template = templateRegistry.get(uri.substring("/templates/".length()));
+                if (template == null) {
+                    return unknownTemplate();
+                }
+            } else {
+                return newFixedLengthResponse(Response.Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, "Unsupported method for " + uri);
+            }
+            String json = "{\"templateId\":\"" + template.getTemplateId() + "\""
+                    + ",\"fileType\":\"" + template.getCompiledTemplate().getFileTypeShortcode() + "\"}";
+            return newFixedLengthResponse(Response.Status.OK, "application/json", json);
+        } catch (SAXException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Invalid template: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error registering template: " + e.getMessage());
+            e.printStackTrace();
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Error registering template: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the template of a generation request: the uploaded templateFile, registered (and only compiled
+     * if it is new), else the library template named by the templateName form field, else the registered
+     * template of the templateId form field.
+     *
+     * @param session The HTTP session, with its body already parsed.
+     * @param files   The uploaded files of the request.
+     * @return The template, or null if the templateName or templateId is unknown (or was evicted).
+     * @throws IllegalArgumentException If neither a template file nor a templateName or templateId was sent.
+     * @throws Exception                If the uploaded template cannot be read or compiled.
+     */
+    private RegisteredTemplate resolveTemplate(IHTTPSession session, Map<String, String> files) throws Exception {
+        String templateTempFilePath = files.get("templateFile");
+        String templateName = session.getParms().get("templateName");
+        String templateId = session.getParms().get("templateId");
+        boolean hasName = templateName != null && !templateName.trim().isEmpty();
+        boolean hasId = templateId != null && !templateId.trim().isEmpty();
+        // A form selecting a template by name or ID may still send an empty file field
+        if (templateTempFilePath != null && !((hasName || hasId) && new File(templateTempFilePath).length() == 0)) {
+            return templateRegistry.register(new File(templateTempFilePath));
+        }
+        if (hasName) {
+            return templateLibrary.get(templateName);
+        }
+        if (!hasId) {
+            throw new IllegalArgumentException("Template file not uploaded.");
+        }
+        return templateRegistry.get(templateId);
+    }
+
+    private Response unknownTemplate() {
+        return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT,
+                "Unknown templateName, or unknown or evicted templateId. Upload the template file instead.");
+    }
+
+    /**
+     * Handles the asynchronous job API:
+     * POST /jobs (same form fields as /generate) queues a job and returns its ID right away,
+     * GET /jobs/{id} reports its state and progress, and DELETE /jobs/{id} or POST /jobs/{id}/cancel cancels it.
+     * A completed job's archive is downloaded from the cache with the downloadUrl of its status.
+     *
+     * @param session The HTTP session.
+     * @param method  The HTTP method.
+     * @param uri     The requested URI.
+     * @return A NanoHTTPD.Response with the job status as JSON, or an error message.
+     */
+    private Response handleJobsRequest(IHTTPSession session, Method method, String uri) {
+        if ("/jobs".equals(uri) || "/jobs/".equals(uri)) {
+            if (Method.POST.equals(method)) {
+                return handleCreateJobRequest(session);
+            }
+            return newFixedLengthResponse(Response.Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, "Use POST to create a job.");
+        }
+
+        String path = uri.substring("/jobs/".length());
+        boolean cancel = Method.DELETE.equals(method);
+        if (path.endsWith("/cancel") && Method.POST.equals(method)) {
+            path = path.substring(0, path.length() - "/cancel".length());
+            cancel = true;
+        }
+        GenerationJob job;
+        if (cancel) {
+            job = jobManager.cancel(path);
+        } else if (Method.GET.equals(method)) {
+            job = jobManager.get(path);
+        } else {
+            return newFixedLengthResponse(Response.Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, "Unsupported method for " + uri);
+        }
+        if (job == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Job not found or expired.");
+        }
+        return newFixedLengthResponse(Response.Status.OK, "application/json", jobToJson(job));
+    }
+
+    /**
+     * Queues a generation job from the same multipart form as /generate.
+     * Jobs always use the streaming engine ("parallel" renders each copy on all cores).
+     *
+     * @param session The HTTP session containing the form data.
+     * @return A 202 response with the job status, 429 if the job is not admitted, or an error message.
+     */
+    private Response handleCreateJobRequest(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            int numTransactions = Integer.parseInt(session.getParms().get("numTransactions"));
+            int numBatches = Integer.parseInt(session.getParms().get("numBatches"));
+            int numCopies = Integer.parseInt(session.getParms().get("numCopies"));
+            String engine = session.getParms().get("engine");
+            ArchiveFormat archiveFormat = parseArchiveFormat(session.getParms().get("archive"));
+            VariationSpec variationSpec = parseVariation(session.getParms().get("variation"));
+
+            RegisteredTemplate template = resolveTemplate(session, files);
+            if (template == null) {
+                return unknownTemplate();
+            }
+            CompiledTemplate compiledTemplate = template.getCompiledTemplate().withVariation(variationSpec);
+            String archiveFileName = buildArchiveFileName(compiledTemplate.getFileTypeShortcode(),
+                    xmlProcessorService.getBatchTransactionType(numTransactions, numBatches, 1), archiveFormat);
+
+            GenerationJob job = jobManager.submit(session.getRemoteIpAddress(), compiledTemplate,
+                    numTransactions, numBatches, numCopies, "parallel".equals(engine), archiveFormat, archiveFileName);
+            Response response = newFixedLengthResponse(Response.Status.ACCEPTED, "application/json", jobToJson(job));
+            response.addHeader("Location", "/jobs/" + job.getId());
+            response.addHeader(TEMPLATE_ID_HEADER, template.getTemplateId());
+            return response;
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e);
+        } catch (NumberFormatException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, "Invalid number format for transactions, batches, or copies.");
+        } catch (IllegalArgumentException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error creating job: " + e.getMessage());
+            e.printStackTrace();
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Error creating job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renders the state and progress of a job as JSON.
+     *
+     * @param job The job.
+     * @return The JSON object.
+     */
+    private static String jobToJson(GenerationJob job) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":\"").append(job.getId()).append('"')
+            .append(",\"state\":\"").append(job.getState()).append('"')
+            .append(",\"totalTransactions\":").append(job.getTotalTransactions())
+            .append(",\"transactionsRendered\":").append(job.getTransactionsRendered())
+            .append(",\"bytesWritten\":").append(job.getBytesWritten())
+            .append(",\"elapsedMillis\":").append(job.getElapsedMillis())
+            .append(",\"etaMillis\":").append(job.getEtaMillis())
+            .append(",\"fileName\":\"").append(job.getArchiveFileName()).append('"');
+        if (job.getState() == JobState.COMPLETED) {
+            json.append(",\"downloadUrl\":\"/download-generated-files?id=").append(job.getId())
+                .append("&filename=").append(job.getArchiveFileName()).append('"');
+        }
+        if (job.getError() != null) {
+            json.append(",\"error\":\"").append(escapeJson(job.getError())).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Handles the GET request for downloading a generated archive from the in-memory cache.
      *
      * @param session The HTTP session containing request details, including query parameters.
      * @return A NanoHTTPD.Response object for the download or an error message.
@@ -261,26 +758,175 @@ public class XmlGeneratorApplication extends NanoHTTPD {
         String downloadId = parms.get("id");
         String requestedFileName = parms.get("filename"); // Get filename from URL for Content-Disposition
 
-        if (downloadId == null || !generatedZipCache.containsKey(downloadId)) {
-            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Download link invalid or expired.");
+        PendingDownload pendingDownload = (downloadId != null) ? pendingDownloads.remove(downloadId) : null; // Single use as well
+        if (pendingDownload != null && System.currentTimeMillis() - pendingDownload.createdAt <= CACHE_TTL_MILLIS) {
+            AdmissionTicket ticket;
+            try {
+                ticket = admissionController.enqueue(session.getRemoteIpAddress(),
+                        (long) pendingDownload.numTransactions * pendingDownload.numCopies);
+            } catch (AdmissionRejectedException e) {
+                pendingDownloads.put(downloadId, pendingDownload); // Keep the link usable for the retry
+                return tooManyRequests(e);
+            }
+            return streamPendingDownload(pendingDownload, ticket);
         }
 
-        byte[] zipBytes = generatedZipCache.remove(downloadId); // Retrieve and remove from cache (single use)
-        String actualFileName = generatedZipNames.remove(downloadId); // Retrieve and remove filename
+        if (downloadId == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Download link invalid or expired.");
+        }
 
-        if (zipBytes == null) {
-            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "File not found in cache or already downloaded.");
+        CachedDownload download = downloadCache.take(downloadId); // Retrieve and remove from cache (single use)
+        if (download == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "File not found in cache, expired or already downloaded.");
         }
+        String actualFileName = download.getFileName();
 
         // Use the actual filename from the cache if available, otherwise fallback to requested or a default.
         String fileNameToUse = (actualFileName != null && !actualFileName.isEmpty()) ? actualFileName : 
                                (requestedFileName != null && !requestedFileName.isEmpty() ? requestedFileName : "generated_files.zip");
 
-        Response response = newFixedLengthResponse(Response.Status.OK, "application/zip", new ByteArrayInputStream(zipBytes), zipBytes.length);
+        InputStream archiveInputStream;
+        try {
+            archiveInputStream = download.openStream(); // Closed by NanoHTTPD once sent, which deletes a spill file
+        } catch (IOException e) {
+            System.err.println("Error reading cached download " + downloadId + ": " + e.getMessage());
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Error reading generated file.");
+        }
+        String mimeType = ArchiveFormat.forFileName(fileNameToUse).getMimeType();
+        Response response = newFixedLengthResponse(Response.Status.OK, mimeType, archiveInputStream, download.getLength());
         response.addHeader("Content-Disposition", "attachment; filename=" + fileNameToUse);
         return response;
     }
 
+    /**
+     * Builds the 429 response for a generation that was not admitted.
+     *
+     * @param e The rejection, whose message tells the client why.
+     * @return A 429 response asking the client to retry later.
+     */
+    private Response tooManyRequests(AdmissionRejectedException e) {
+        System.out.println("Rejected generation: " + e.getMessage());
+        Response response = newFixedLengthResponse(Response.Status.TOO_MANY_REQUESTS, MIME_PLAINTEXT, e.getMessage() + " Try again later.");
+        response.addHeader("Retry-After", RETRY_AFTER_SECONDS);
+        return response;
+    }
+
+    /**
+     * Reports the download cache counters as JSON, along with the admission counters.
+     *
+     * @return A NanoHTTPD.Response with the cache statistics.
+     */
+    private Response handleCacheStatsRequest() {
+        String json = "{"
+                + "\"entries\":" + downloadCache.getEntryCount()
+                + ",\"residentBytes\":" + downloadCache.getResidentBytes()
+                + ",\"maxResidentBytes\":" + downloadCache.getMaxResidentBytes()
+                + ",\"spilledBytes\":" + downloadCache.getSpilledBytes()
+                + ",\"maxSpilledBytes\":" + downloadCache.getMaxSpilledBytes()
+                + ",\"hits\":" + downloadCache.getHits()
+                + ",\"misses\":" + downloadCache.getMisses()
+                + ",\"evictions\":" + downloadCache.getEvictions()
+                + ",\"expirations\":" + downloadCache.getExpirations()
+                + ",\"pendingStreams\":" + pendingDownloads.size()
+                + ",\"templates\":" + templateRegistry.getEntryCount()
+                + ",\"maxTemplates\":" + templateRegistry.getMaxEntries()
+                + ",\"templateHits\":" + templateRegistry.getHits()
+                + ",\"templateMisses\":" + templateRegistry.getMisses()
+                + ",\"templateEvictions\":" + templateRegistry.getEvictions()
+                + ",\"generationsRunning\":" + admissionController.getRunningCount()
+                + ",\"generationsQueued\":" + admissionController.getQueuedCount()
+                + ",\"generationsAdmitted\":" + admissionController.getAdmittedCount()
+                + ",\"generationsRejected\":" + admissionController.getRejectedCount()
+                + "}";
+        return newFixedLengthResponse(Response.Status.OK, "application/json", json);
+    }
+
+    /**
+     * Drops "stream" generations whose download was never requested within the cache TTL.
+     */
+    private void purgeExpiredPendingDownloads() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PendingDownload> entry : pendingDownloads.entrySet()) {
+            if (now - entry.getValue().createdAt > CACHE_TTL_MILLIS) {
+                pendingDownloads.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Generates and archives the files of a pending download while they are being sent.
+     * A download thread writes the archive into a pipe and NanoHTTPD sends whatever arrives on the other end
+     * as HTTP chunks, so the first bytes leave immediately and memory use does not depend on the output size.
+     * If the client goes away, NanoHTTPD closes the pipe and the download thread stops on its next write.
+     *
+     * The download thread waits for the admission ticket before generating; the response stays open meanwhile.
+     *
+     * @param pendingDownload The generation to run.
+     * @param ticket          The admission ticket of the generation, closed once it is done.
+     * @return A chunked NanoHTTPD.Response streaming the archive.
+     */
+    private Response streamPendingDownload(final PendingDownload pendingDownload, final AdmissionTicket ticket) {
+        BlockingPipe pipe = new BlockingPipe(STREAM_PIPE_SIZE);
+        final OutputStream pipeOut = pipe.getOutputStream();
+
+        downloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!ticket.awaitTurn()) {
+                        return; // Withdrawn: the response ends without an archive
+                    }
+                    try (ArchiveWriter archive = pendingDownload.archiveFormat.newWriter(
+                            new BufferedOutputStream(pipeOut, STREAM_PIPE_SIZE / 8),
+                            ARCHIVE_SETTINGS.withEntryClock(pendingDownload.compiledTemplate.getFixedClock()))) {
+                        xmlProcessorService.writeXmlFilesToArchive(pendingDownload.compiledTemplate,
+                                pendingDownload.numTransactions, pendingDownload.numBatches, pendingDownload.numCopies,
+                                pendingDownload.parallel, archive);
+                    }
+                } catch (Exception e) {
+                    // The headers are already sent, so the client can only notice a truncated archive.
+                    System.err.println("Error while streaming " + pendingDownload.archiveFileName + ": " + e.getMessage());
+                } finally {
+                    ticket.close();
+                    try {
+                        pipeOut.close(); // Ends the response in every case
+                    } catch (IOException e) {
+                        // Cannot happen, closing the pipe only signals the reader
+                    }
+                }
+            }
+        });
+
+        Response response = newChunkedResponse(Response.Status.OK, pendingDownload.archiveFormat.getMimeType(), pipe.getInputStream());
+        response.addHeader("Content-Disposition", "attachment; filename=" + pendingDownload.archiveFileName);
+        return response;
+    }
+
+    /**
+     * A generation waiting for its download ("stream" delivery).
+     */
+    private static class PendingDownload {
+        final CompiledTemplate compiledTemplate;
+        final int numTransactions;
+        final int numBatches;
+        final int numCopies;
+        final boolean parallel;
+        final ArchiveFormat archiveFormat;
+        final String archiveFileName;
+        final long createdAt = System.currentTimeMillis();
+
+        PendingDownload(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                        boolean parallel, ArchiveFormat archiveFormat, String archiveFileName) {
+            this.compiledTemplate = compiledTemplate;
+            this.numTransactions = numTransactions;
+            this.numBatches = numBatches;
+            this.numCopies = numCopies;
+            this.parallel = parallel;
+            this.archiveFormat = archiveFormat;
+            this.archiveFileName = archiveFileName;
+        }
+    }
 
     /**
      * Helper method to determine the MIME type based on the file extension.
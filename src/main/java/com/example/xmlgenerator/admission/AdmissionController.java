@@ -0,0 +1,231 @@
+package com.example.xmlgenerator.admission;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which generations may run, so that one client asking for a huge generation cannot starve everyone else.
+ *
+ * At most maxConcurrent generations run at the same time, at most maxQueued wait for a slot and each client may
+ * have at most maxPerClient generations running or waiting; anything beyond that is rejected right away instead
+ * of piling up in memory. Waiting generations are started in weighted fair queueing order: each one costs its
+ * estimated transaction volume, and its finish tag is the virtual time at which it would be done if every client
+ * got an equal share. The smallest finish tag runs first, so small interactive requests overtake bulk runs, while
+ * a bulk run still gets its turn once the virtual time has moved past it. A client's finish tags build on each
+ * other, so submitting many requests at once does not buy a larger share.
+ *
+ * Waiting uses a ReentrantLock rather than synchronized/wait, so a waiting virtual thread releases its carrier.
+ */
+public class AdmissionController {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final int maxPerClient;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition(); // Signalled whenever a ticket may have become the runnable head
+
+    // All fields below are guarded by 'lock'.
+    private final PriorityQueue<AdmissionTicket> waiting = new PriorityQueue<>(11, new Comparator<AdmissionTicket>() {
+        @Override
+        public int compare(AdmissionTicket a, AdmissionTicket b) {
+            int byFinishTag = Long.compare(a.getFinishTag(), b.getFinishTag());
+            return (byFinishTag != 0) ? byFinishTag : Long.compare(a.getSequence(), b.getSequence());
+        }
+    });
+    private final Map<String, ClientState> clients = new HashMap<>();
+    private int running;
+    private long virtualTime; // Finish tag of the latest generation started
+    private long sequence;
+    private long admitted;
+    private long rejected;
+
+    /**
+     * @param maxConcurrent Number of generations running at the same time.
+     * @param maxQueued     Number of generations waiting for a slot; further ones are rejected. With 0, a generation
+     *                      is only admitted if a slot is free.
+     * @param maxPerClient  Number of generations a single client may have running or waiting.
+     */
+    public AdmissionController(int maxConcurrent, int maxQueued, int maxPerClient) {
+        if (maxConcurrent < 1 || maxQueued < 0 || maxPerClient < 1) {
+            throw new IllegalArgumentException("Invalid admission limits: maxConcurrent=" + maxConcurrent
+                    + ", maxQueued=" + maxQueued + ", maxPerClient=" + maxPerClient);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxPerClient = maxPerClient;
+    }
+
+    /**
+     * Admits a generation into the waiting queue. The caller must call awaitTurn() on the ticket before generating
+     * and close it afterwards (also when generating fails or is abandoned).
+     *
+     * @param clientId              Identifies the client for its quota and fair share (e.g., the remote IP address).
+     * @param estimatedTransactions Estimated transaction volume of the generation (transactions x copies).
+     * @return The ticket of the admitted generation.
+     * @throws AdmissionRejectedException If the queue is full or the client has reached its quota.
+     */
+    public AdmissionTicket enqueue(String clientId, long estimatedTransactions) {
+        lock.lock();
+        try {
+            return enqueueLocked(clientId, estimatedTransactions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AdmissionTicket enqueueLocked(String clientId, long estimatedTransactions) {
+        ClientState client = clients.get(clientId);
+        if (client != null && client.active >= maxPerClient) {
+            rejected++;
+            throw new AdmissionRejectedException("Client " + clientId + " already has " + client.active
+                    + " generations running or queued (limit " + maxPerClient + ").");
+        }
+        // The waiting tickets include the ones about to take a free slot, which do not count against the queue:
+        // only tickets beyond the free slots actually wait.
+        if (running + waiting.size() >= maxConcurrent + maxQueued) {
+            rejected++;
+            throw new AdmissionRejectedException("No free generation slot and the queue is full (" + maxQueued + " waiting).");
+        }
+        if (client == null) {
+            purgeIdleClients();
+            client = new ClientState();
+            clients.put(clientId, client);
+        }
+
+        long cost = Math.max(1L, estimatedTransactions);
+        // A client cannot start before the current virtual time (no credit for being idle),
+        // nor before its own previous generations would be done.
+        long startTag = Math.max(virtualTime, client.lastFinishTag);
+        long finishTag = startTag + cost;
+        client.lastFinishTag = finishTag;
+        client.active++;
+        admitted++;
+
+        AdmissionTicket ticket = new AdmissionTicket(this, clientId, cost, finishTag, sequence++);
+        waiting.add(ticket);
+        changed.signalAll(); // A new head may be able to start
+        return ticket;
+    }
+
+    boolean awaitTurn(AdmissionTicket ticket) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!ticket.closed && !ticket.granted && !(running < maxConcurrent && waiting.peek() == ticket)) {
+                changed.await();
+            }
+            if (ticket.closed) {
+                return false;
+            }
+            if (!ticket.granted) {
+                waiting.poll();
+                ticket.granted = true;
+                running++;
+                virtualTime = Math.max(virtualTime, ticket.getFinishTag());
+                changed.signalAll(); // The next head may fit into a remaining slot
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(AdmissionTicket ticket) {
+        lock.lock();
+        try {
+            if (ticket.closed) {
+                return;
+            }
+            ticket.closed = true;
+            if (ticket.granted) {
+                running--;
+            } else {
+                waiting.remove(ticket);
+            }
+            ClientState client = clients.get(ticket.getClientId());
+            if (client != null) {
+                client.active--;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean withdrawIfWaiting(AdmissionTicket ticket) {
+        lock.lock();
+        try {
+            if (ticket.closed || ticket.granted) {
+                return false; // A granted ticket keeps its slot until its owner closes it
+            }
+            release(ticket);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forgets clients with nothing running or waiting whose finish tags the virtual time has passed. Caller holds 'lock'.
+    private void purgeIdleClients() {
+        Iterator<ClientState> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            ClientState client = iterator.next();
+            if (client.active == 0 && client.lastFinishTag <= virtualTime) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmittedCount() {
+        lock.lock();
+        try {
+            return admitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public int getMaxQueued() { return maxQueued; }
+    public int getMaxPerClient() { return maxPerClient; }
+
+    /**
+     * Per-client bookkeeping.
+     */
+    private static final class ClientState {
+        int active; // Generations running or waiting
+        long lastFinishTag; // Finish tag of the client's latest generation
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.xmlgenerator.admission;
+
+/**
+ * Thrown when a generation is not admitted because the waiting queue is full or the client has reached its quota.
+ * The client should retry later (HTTP 429).
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.xmlgenerator.admission;
+
+import java.io.Closeable;
+
+/**
+ * A generation admitted to the AdmissionController: waiting for its turn, then running until closed.
+ * Closing a ticket that is still waiting withdraws it from the queue; closing it twice does nothing.
+ */
+public class AdmissionTicket implements Closeable {
+
+    private final AdmissionController controller;
+    private final String clientId;
+    private final long cost;
+    private final long finishTag; // Virtual time at which this generation would finish under fair sharing
+    private final long sequence; // Arrival order, breaks ties between equal finish tags
+
+    // Guarded by the controller's lock
+    boolean granted;
+    boolean closed;
+
+    AdmissionTicket(AdmissionController controller, String clientId, long cost, long finishTag, long sequence) {
+        this.controller = controller;
+        this.clientId = clientId;
+        this.cost = cost;
+        this.finishTag = finishTag;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Blocks until this generation may run.
+     *
+     * @return true once it may run, false if the ticket was closed while waiting (e.g. the job was cancelled).
+     * @throws InterruptedException If the waiting thread is interrupted. The ticket must still be closed.
+     */
+    public boolean awaitTurn() throws InterruptedException {
+        return controller.awaitTurn(this);
+    }
+
+    /**
+     * Releases the slot of a running generation, or withdraws a waiting one.
+     */
+    @Override
+    public void close() {
+        controller.release(this);
+    }
+
+    /**
+     * Withdraws this generation from the queue if it has not been granted its turn yet. Unlike close(), this is safe
+     * to call from another thread than the one running the generation: a granted ticket is left alone, so its slot
+     * is only ever released by the running generation itself.
+     *
+     * @return true if the ticket was withdrawn, false if it was already granted or closed.
+     */
+    public boolean withdrawIfWaiting() {
+        return controller.withdrawIfWaiting(this);
+    }
+
+    public String getClientId() { return clientId; }
+    public long getCost() { return cost; }
+    long getFinishTag() { return finishTag; }
+    long getSequence() { return sequence; }
+}
@@ -0,0 +1,41 @@
+package com.example.xmlgenerator.amount;
+
+import java.math.BigDecimal;
+
+/**
+ * Every transaction carries the same amount, the one of the template transaction.
+ */
+public final class ConstantAmounts implements TransactionAmounts {
+
+    private final long unscaledAmount;
+    private final int scale;
+
+    /**
+     * @param amount The amount of every transaction.
+     * @throws ArithmeticException If the amount has too many digits to be held in minor units.
+     */
+    public ConstantAmounts(BigDecimal amount) {
+        this.unscaledAmount = MinorUnits.of(amount);
+        this.scale = amount.scale();
+    }
+
+    @Override
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public long getUnscaledAmount(int batchIndex, int transactionIndex) {
+        return unscaledAmount;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return MinorUnits.toPlainString(unscaledAmount, scale);
+    }
+}
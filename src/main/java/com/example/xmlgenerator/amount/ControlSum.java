@@ -0,0 +1,130 @@
+package com.example.xmlgenerator.amount;
+
+import java.math.BigDecimal;
+
+/**
+ * Accumulates a control sum (CtrlSum) in minor units.
+ *
+ * Adding is a long addition; a BigDecimal is only created if the sum no longer fits in a long, or for the final
+ * text. A sum nothing was added to is "0", like the BigDecimal.ZERO the engines started from before; once
+ * amounts are added it keeps their scale (3 x 100.50 is "301.50"). Not thread-safe: the parallel engine sums
+ * each chunk into its own instance on the pool and adds the partial sums up before writing the header.
+ */
+public final class ControlSum {
+
+    private final int scale;
+    private long unscaled;
+    private BigDecimal overflow; // The sum, once it no longer fits in a long
+    private boolean empty = true;
+
+    /**
+     * @param scale The scale of the amounts added to this sum.
+     */
+    public ControlSum(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Adds one amount.
+     *
+     * @param unscaledAmount The amount in minor units, at the scale of this sum.
+     */
+    public void add(long unscaledAmount) {
+        empty = false;
+        if (overflow == null) {
+            long sum = unscaled + unscaledAmount;
+            // Overflow if both operands have the same sign and the result has the other one
+            if (((unscaled ^ sum) & (unscaledAmount ^ sum)) >= 0) {
+                unscaled = sum;
+                return;
+            }
+            overflow = BigDecimal.valueOf(unscaled, scale);
+        }
+        overflow = overflow.add(BigDecimal.valueOf(unscaledAmount, scale));
+    }
+
+    /**
+     * Adds the same amount a number of times.
+     *
+     * @param unscaledAmount The amount in minor units, at the scale of this sum.
+     * @param count          How many times to add it; nothing is added for 0.
+     */
+    public void addMultiple(long unscaledAmount, long count) {
+        if (count == 0) {
+            return;
+        }
+        try {
+            add(Math.multiplyExact(unscaledAmount, count));
+        } catch (ArithmeticException e) {
+            empty = false;
+            BigDecimal product = BigDecimal.valueOf(unscaledAmount, scale).multiply(BigDecimal.valueOf(count));
+            overflow = (overflow != null ? overflow : BigDecimal.valueOf(unscaled, scale)).add(product);
+        }
+    }
+
+    /**
+     * Adds the amounts of a range of transactions of one batch.
+     *
+     * @param amounts    The amount source.
+     * @param batchIndex The index of the batch.
+     * @param from       The first transaction index (inclusive).
+     * @param to         The last transaction index (exclusive).
+     */
+    public void addRange(TransactionAmounts amounts, int batchIndex, int from, int to) {
+        if (amounts.isConstant()) {
+            addMultiple(amounts.getUnscaledAmount(batchIndex, from), to - from);
+            return;
+        }
+        for (int j = from; j < to; j++) {
+            add(amounts.getUnscaledAmount(batchIndex, j));
+        }
+    }
+
+    /**
+     * Adds another control sum, e.g. the partial sum of a chunk or the sum of a batch.
+     *
+     * @param other A sum of the same scale.
+     * @throws IllegalArgumentException If the scales differ.
+     */
+    public void add(ControlSum other) {
+        if (other.scale != scale) {
+            throw new IllegalArgumentException("Cannot add a sum of scale " + other.scale + " to a sum of scale " + scale);
+        }
+        if (other.empty) {
+            return;
+        }
+        if (other.overflow == null) {
+            add(other.unscaled);
+        } else {
+            empty = false;
+            overflow = (overflow != null ? overflow : BigDecimal.valueOf(unscaled, scale)).add(other.overflow);
+        }
+    }
+
+    /**
+     * @return The sum as a BigDecimal.
+     */
+    public BigDecimal toBigDecimal() {
+        if (empty) {
+            return BigDecimal.ZERO;
+        }
+        return overflow != null ? overflow : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * @return The sum as written to CtrlSum, e.g. "301.50".
+     */
+    public String toPlainString() {
+        if (empty) {
+            return "0";
+        }
+        return overflow != null ? overflow.toPlainString() : MinorUnits.toPlainString(unscaled, scale);
+    }
+
+    public int getScale() { return scale; }
+
+    @Override
+    public String toString() {
+        return toPlainString();
+    }
+}
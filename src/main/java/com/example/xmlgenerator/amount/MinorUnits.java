@@ -0,0 +1,59 @@
+package com.example.xmlgenerator.amount;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between decimal amounts and minor units: a long count of the smallest unit at a fixed scale
+ * (e.g., 12345 at scale 2 is 123.45). The generation engines only add longs; amounts and sums are turned into
+ * text at the very end.
+ */
+public final class MinorUnits {
+
+    private MinorUnits() {
+    }
+
+    /**
+     * Converts a decimal amount to minor units at its own scale.
+     *
+     * @param amount The amount.
+     * @return The unscaled value of the amount.
+     * @throws ArithmeticException If the unscaled value does not fit in a long.
+     */
+    public static long of(BigDecimal amount) {
+        return amount.unscaledValue().longValueExact();
+    }
+
+    /**
+     * Formats minor units the same way as BigDecimal.toPlainString(), without creating a BigDecimal
+     * for the common non-negative scales.
+     *
+     * @param unscaled The amount in minor units.
+     * @param scale    The number of decimal places.
+     * @return The plain decimal string, e.g. "123.45" or "-0.05".
+     */
+    public static String toPlainString(long unscaled, int scale) {
+        if (scale == 0) {
+            return Long.toString(unscaled);
+        }
+        if (scale < 0 || unscaled == Long.MIN_VALUE) {
+            return BigDecimal.valueOf(unscaled, scale).toPlainString(); // Rare: trailing zeros or no absolute value
+        }
+        String digits = Long.toString(Math.abs(unscaled));
+        StringBuilder sb = new StringBuilder(digits.length() + scale + 3);
+        if (unscaled < 0) {
+            sb.append('-');
+        }
+        if (digits.length() <= scale) {
+            // Less than one major unit: "0." followed by the leading zeros of the fraction
+            sb.append("0.");
+            for (int i = digits.length(); i < scale; i++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        } else {
+            int point = digits.length() - scale;
+            sb.append(digits, 0, point).append('.').append(digits, point, digits.length());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.xmlgenerator.amount;
+
+/**
+ * The amount of every generated transaction, in minor units at a fixed scale.
+ *
+ * An amount only depends on the position of the transaction, so the control sums of a batch can be computed
+ * before its transactions are written (the streaming engine writes CtrlSum first) and any range of transactions
+ * can be summed independently (the parallel engine sums the chunks of a document as ForkJoin tasks). Implementations must be
+ * safe for concurrent use.
+ */
+public interface TransactionAmounts {
+
+    /**
+     * @return The number of decimal places of the amounts.
+     */
+    int getScale();
+
+    /**
+     * @param batchIndex       The index of the batch within the document (0-based).
+     * @param transactionIndex The index of the transaction within its batch (0-based).
+     * @return The amount of the transaction in minor units.
+     */
+    long getUnscaledAmount(int batchIndex, int transactionIndex);
+
+    /**
+     * @return true if every transaction carries the template's amount. The engines then keep the amount text
+     *         of the template as it is and compute the sums by multiplication.
+     */
+    boolean isConstant();
+}
@@ -0,0 +1,125 @@
+package com.example.xmlgenerator.archive;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive formats of generated files, chosen per request.
+ * The archive file name keeps the usual naming (type, batch/transaction type, timestamp) with the format's extension.
+ */
+public enum ArchiveFormat {
+
+    /** ZIP, entries deflated or stored (see ZipCompression). */
+    ZIP("zip", ".zip", "application/zip"),
+    /** Uncompressed tar: the files one after another, the fastest to write. */
+    TAR("tar", ".tar", "application/x-tar"),
+    /** Gzip compressed tar, as expected by many SFTP loaders. */
+    TAR_GZ("tar.gz", ".tar.gz", "application/gzip"),
+    /** Zstandard compressed tar: much faster than gzip at a similar size. */
+    TAR_ZST("tar.zst", ".tar.zst", "application/zstd");
+
+    private final String name;
+    private final String extension;
+    private final String mimeType;
+
+    ArchiveFormat(String name, String extension, String mimeType) {
+        this.name = name;
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Looks up a format by name.
+     *
+     * @param name "zip", "tar", "tar.gz" (or "tgz") or "tar.zst".
+     * @return The format.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    public static ArchiveFormat fromName(String name) {
+        String normalized = name.trim().toLowerCase();
+        if ("tgz".equals(normalized)) {
+            return TAR_GZ;
+        }
+        for (ArchiveFormat format : values()) {
+            if (format.name.equals(normalized)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown archive format: " + name + " (expected zip, tar, tar.gz or tar.zst)");
+    }
+
+    /**
+     * Determines the format of an archive file from its extension.
+     *
+     * @param fileName The archive file name.
+     * @return The format, ZIP if the extension is not known.
+     */
+    public static ArchiveFormat forFileName(String fileName) {
+        if (fileName.endsWith(TAR_GZ.extension)) {
+            return TAR_GZ;
+        }
+        if (fileName.endsWith(TAR_ZST.extension)) {
+            return TAR_ZST;
+        }
+        if (fileName.endsWith(TAR.extension)) {
+            return TAR;
+        }
+        return ZIP;
+    }
+
+    /**
+     * Creates a writer for an archive of this format.
+     *
+     * @param out      The stream to write the archive to; closed with the writer.
+     * @param settings Compression levels and the spool sink.
+     * @return The archive writer.
+     * @throws IOException If the compressing stream cannot be created (e.g., zstd is not available on this platform).
+     */
+    public ArchiveWriter newWriter(OutputStream out, ArchiveSettings settings) throws IOException {
+        switch (this) {
+            case ZIP:
+                return new ZipArchiveWriter(out, settings.getZipCompression(), settings.getEntryClock());
+            case TAR:
+                return new TarArchiveWriter(out, settings.getSpoolSink(), settings.getEntryClock());
+            case TAR_GZ:
+                return new TarArchiveWriter(newGzipOutputStream(out, settings.getGzipLevel()), settings.getSpoolSink(),
+                        settings.getEntryClock());
+            case TAR_ZST:
+                return new TarArchiveWriter(newZstdOutputStream(out, settings.getZstdLevel()), settings.getSpoolSink(),
+                        settings.getEntryClock());
+            default:
+                throw new IllegalStateException("Unhandled archive format " + this);
+        }
+    }
+
+    private static OutputStream newGzipOutputStream(OutputStream out, final int level) throws IOException {
+        return new GZIPOutputStream(out, 64 * 1024) {
+            {
+                def.setLevel(level); // GZIPOutputStream has no constructor taking a level
+            }
+        };
+    }
+
+    private static OutputStream newZstdOutputStream(OutputStream out, int level) throws IOException {
+        try {
+            return new ZstdOutputStream(out, level);
+        } catch (LinkageError e) {
+            // zstd-jni bundles native libraries for the common platforms only
+            throw new IOException("zstd is not available on this platform: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return true if the entries benefit from being compressed while generated (see CompressingOutputSink).
+     */
+    public boolean compressesEntries() {
+        return this == ZIP;
+    }
+
+    public String getName() { return name; }
+    public String getExtension() { return extension; }
+    public String getMimeType() { return mimeType; }
+}
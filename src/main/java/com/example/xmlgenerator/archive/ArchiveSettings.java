@@ -0,0 +1,80 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.OutputSink;
+
+import java.time.Clock;
+
+/**
+ * Compression levels of the archive formats, where tar entries of unknown size are spooled,
+ * and the clock giving the modification time of the entries.
+ */
+public final class ArchiveSettings {
+
+    private final ZipCompression zipCompression;
+    private final int gzipLevel;
+    private final int zstdLevel;
+    private final OutputSink spoolSink;
+    private final Clock entryClock;
+
+    /**
+     * @param zipCompression Compression of ZIP entries.
+     * @param gzipLevel      Compression level of tar.gz archives, 1 (fastest) to 9 (smallest).
+     * @param zstdLevel      Compression level of tar.zst archives, 1 (fastest) to 22 (smallest).
+     * @param spoolSink      Where tar entries of unknown size are held until they are complete.
+     */
+    public ArchiveSettings(ZipCompression zipCompression, int gzipLevel, int zstdLevel, OutputSink spoolSink) {
+        this(zipCompression, gzipLevel, zstdLevel, spoolSink, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param zipCompression Compression of ZIP entries.
+     * @param gzipLevel      Compression level of tar.gz archives, 1 (fastest) to 9 (smallest).
+     * @param zstdLevel      Compression level of tar.zst archives, 1 (fastest) to 22 (smallest).
+     * @param spoolSink      Where tar entries of unknown size are held until they are complete.
+     * @param entryClock     The clock the modification time of the entries is read from; ZIP entries use its zone.
+     */
+    public ArchiveSettings(ZipCompression zipCompression, int gzipLevel, int zstdLevel, OutputSink spoolSink, Clock entryClock) {
+        if (gzipLevel < 1 || gzipLevel > 9) {
+            throw new IllegalArgumentException("gzip level must be between 1 and 9: " + gzipLevel);
+        }
+        if (zstdLevel < 1 || zstdLevel > 22) {
+            throw new IllegalArgumentException("zstd level must be between 1 and 22: " + zstdLevel);
+        }
+        this.zipCompression = zipCompression;
+        this.gzipLevel = gzipLevel;
+        this.zstdLevel = zstdLevel;
+        this.spoolSink = spoolSink;
+        this.entryClock = entryClock;
+    }
+
+    /**
+     * Reads the settings from the system properties xmlgenerator.zip.compression (stored, default or 0-9;
+     * default: default), xmlgenerator.gzip.level (default 6) and xmlgenerator.zstd.level (default 3).
+     *
+     * @param spoolSink Where tar entries of unknown size are held until they are complete.
+     * @return The settings.
+     * @throws IllegalArgumentException If a property has an invalid value.
+     */
+    public static ArchiveSettings fromSystemProperties(OutputSink spoolSink) {
+        return new ArchiveSettings(
+                ZipCompression.parse(System.getProperty("xmlgenerator.zip.compression", "default")),
+                Integer.getInteger("xmlgenerator.gzip.level", 6),
+                Integer.getInteger("xmlgenerator.zstd.level", 3),
+                spoolSink);
+    }
+
+    /**
+     * @param fixedClock A fixed clock for the entry times (e.g. of a seeded run, so that its archives are
+     *                   byte-identical), or null.
+     * @return These settings with the given entry clock, or these settings if it is null.
+     */
+    public ArchiveSettings withEntryClock(Clock fixedClock) {
+        return (fixedClock != null) ? new ArchiveSettings(zipCompression, gzipLevel, zstdLevel, spoolSink, fixedClock) : this;
+    }
+
+    public ZipCompression getZipCompression() { return zipCompression; }
+    public int getGzipLevel() { return gzipLevel; }
+    public int getZstdLevel() { return zstdLevel; }
+    public OutputSink getSpoolSink() { return spoolSink; }
+    public Clock getEntryClock() { return entryClock; }
+}
@@ -0,0 +1,51 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes generated files into an archive stream (see ArchiveFormat for the available formats).
+ * Entries are written one after another; a writer is used by one thread at a time. Entry names are unique:
+ * a name that was already added is refused, as extracting the archive would silently keep only one of them.
+ */
+public interface ArchiveWriter extends Closeable {
+
+    /**
+     * Adds a finished file.
+     *
+     * @param name    The entry name.
+     * @param content The entry content.
+     * @throws IOException If the name was already added, the content cannot be read or the archive cannot be written.
+     */
+    void addEntry(String name, GeneratedContent content) throws IOException;
+
+    /**
+     * Starts an entry whose size is not known yet, e.g. a file generated straight into the archive.
+     * Closing the returned stream completes the entry (it does not close the archive); only one entry can be
+     * open at a time.
+     *
+     * @param name The entry name.
+     * @return The stream receiving the entry content.
+     * @throws IOException If the name was already added or the archive cannot be written.
+     */
+    OutputStream openEntry(String name) throws IOException;
+
+    /**
+     * Completes the archive, including an entry that is still open. The stream is flushed but not closed;
+     * a compressing stream of the format (tar.gz, tar.zst) only writes its trailer when the writer is closed.
+     *
+     * @throws IOException If the archive cannot be written.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Finishes the archive and closes the stream.
+     *
+     * @throws IOException If the archive cannot be written.
+     */
+    @Override
+    void close() throws IOException;
+}
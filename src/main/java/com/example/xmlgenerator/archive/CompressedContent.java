@@ -0,0 +1,114 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Content that was compressed for a ZIP entry while it was generated (see CompressingOutputSink).
+ * Besides the compressed bytes it carries everything the ZIP headers need: method, CRC-32 and both sizes,
+ * so ZipArchiveWriter can copy it into an archive as it is. Read as GeneratedContent, it is the original content.
+ */
+public final class CompressedContent implements GeneratedContent {
+
+    private final int method;
+    private final long crc;
+    private final long length;
+    private final GeneratedContent compressed;
+
+    /**
+     * @param method     ZipEntry.STORED or ZipEntry.DEFLATED.
+     * @param crc        The CRC-32 of the original content.
+     * @param length     The length of the original content.
+     * @param compressed The raw (headerless) deflate data, or the original content if stored.
+     */
+    CompressedContent(int method, long crc, long length, GeneratedContent compressed) {
+        this.method = method;
+        this.crc = crc;
+        this.length = length;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return ZipEntry.STORED or ZipEntry.DEFLATED.
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The CRC-32 of the original content.
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * @return The length of the original content.
+     */
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return The length of the compressed data.
+     */
+    public long getCompressedLength() {
+        return compressed.getLength();
+    }
+
+    /**
+     * Copies the compressed data, as it goes into a ZIP entry, to a stream, which is not closed.
+     *
+     * @param out The destination stream.
+     * @throws IOException If the data cannot be read or the stream cannot be written.
+     */
+    public void writeCompressedTo(OutputStream out) throws IOException {
+        compressed.writeTo(out);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        InputStream in = compressed.openStream();
+        if (method == ZipEntry.STORED) {
+            return in;
+        }
+        // Raw deflate data needs one extra dummy byte at the end for the Inflater (as in ZipFile)
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(new SequenceInputStream(in, new ByteArrayInputStream(new byte[1])), inflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end(); // Not done by InflaterInputStream for a caller supplied Inflater
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (method == ZipEntry.STORED) {
+            compressed.writeTo(out);
+            return;
+        }
+        try (InputStream in = openStream()) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    @Override
+    public void discard() {
+        compressed.discard();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Output sink compressing each generated file for a ZIP entry while it is written, before handing the bytes
+ * to another sink. As the generation tasks write their files in parallel, the files are also deflated in
+ * parallel; ZipArchiveWriter then only copies the finished entries into the archive.
+ * The content handles of this sink are CompressedContent.
+ */
+public class CompressingOutputSink implements OutputSink {
+
+    // Collects the many small writes of the XML writer, so the CRC and the Deflater see large chunks.
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputSink delegate;
+    private final ZipCompression compression;
+
+    /**
+     * @param delegate    The sink receiving the compressed data.
+     * @param compression The compression of the entries.
+     */
+    public CompressingOutputSink(OutputSink delegate, ZipCompression compression) {
+        this.delegate = delegate;
+        this.compression = compression;
+    }
+
+    @Override
+    public SinkOutputStream open(String fileName) throws IOException {
+        return new CompressingSinkOutputStream(delegate.open(fileName));
+    }
+
+    private final class CompressingSinkOutputStream extends SinkOutputStream {
+        private final SinkOutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater; // null if stored
+        private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+        private final byte[] output;
+        private int inputCount;
+        private long length;
+
+        CompressingSinkOutputStream(SinkOutputStream out) {
+            this.out = out;
+            if (compression.isStored()) {
+                this.deflater = null;
+                this.output = null;
+            } else {
+                this.deflater = new Deflater(compression.getLevel(), true); // Raw deflate data, as in ZIP entries
+                this.output = new byte[INPUT_BUFFER_SIZE];
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (inputCount == input.length) {
+                processInput();
+            }
+            input[inputCount++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= input.length) {
+                // Large chunks go through directly
+                processInput();
+                process(b, off, len);
+                return;
+            }
+            if (len > input.length - inputCount) {
+                processInput();
+            }
+            System.arraycopy(b, off, input, inputCount, len);
+            inputCount += len;
+        }
+
+        private void processInput() throws IOException {
+            if (inputCount > 0) {
+                process(input, 0, inputCount);
+                inputCount = 0;
+            }
+        }
+
+        private void process(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            length += len;
+            if (deflater == null) {
+                out.write(b, off, len);
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drainDeflater();
+            }
+        }
+
+        private void drainDeflater() throws IOException {
+            int compressed = deflater.deflate(output, 0, output.length);
+            if (compressed > 0) {
+                out.write(output, 0, compressed);
+            }
+        }
+
+        @Override
+        protected GeneratedContent complete() throws IOException {
+            try {
+                processInput();
+                if (deflater != null) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        drainDeflater();
+                    }
+                }
+                GeneratedContent compressed = out.finish();
+                return new CompressedContent(deflater == null ? ZipEntry.STORED : ZipEntry.DEFLATED, crc.getValue(), length, compressed);
+            } finally {
+                if (deflater != null) {
+                    deflater.end(); // Frees the native memory right away
+                }
+                out.close();
+            }
+        }
+
+        @Override
+        protected void abandon() {
+            if (deflater != null) {
+                deflater.end();
+            }
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes a POSIX (ustar) tar archive, entry by entry, to a stream; compressed by the stream it writes to
+ * for tar.gz and tar.zst (see ArchiveFormat).
+ *
+ * Each tar header carries the size of its entry, so entries of unknown size (openEntry) are first spooled to a
+ * sink (usually a temporary file) and added once complete. Entries above 8 GB use the base-256 size encoding
+ * of GNU tar and star.
+ */
+public class TarArchiveWriter implements ArchiveWriter {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE; // Default blocking factor of tar
+    private static final long MAX_OCTAL_SIZE = 077777777777L; // 11 octal digits
+    private static final byte[] ZERO_BLOCK = new byte[BLOCK_SIZE];
+
+    private final OutputStream out;
+    private final OutputSink spoolSink;
+    private final long modificationTime; // Of all entries, in seconds since the epoch
+    private final Set<String> entryNames = new HashSet<>(); // Names added so far, including an open entry
+    private long position; // Bytes written so far
+    private SpoolOutputStream openEntry; // Entry being spooled, if any
+    private boolean finished;
+
+    /**
+     * @param out       The stream to write the archive to.
+     * @param spoolSink Where entries of unknown size are held until they are complete.
+     */
+    public TarArchiveWriter(OutputStream out, OutputSink spoolSink) {
+        this(out, spoolSink, Clock.systemUTC());
+    }
+
+    /**
+     * @param out       The stream to write the archive to.
+     * @param spoolSink Where entries of unknown size are held until they are complete.
+     * @param clock     The clock the modification time of the entries is read from, once.
+     */
+    public TarArchiveWriter(OutputStream out, OutputSink spoolSink, Clock clock) {
+        this.out = out;
+        this.spoolSink = spoolSink;
+        this.modificationTime = Math.floorDiv(clock.millis(), 1000L);
+    }
+
+    @Override
+    public void addEntry(String name, GeneratedContent content) throws IOException {
+        if (finished) {
+            throw new IOException("Archive already finished");
+        }
+        if (openEntry != null) {
+            throw new IOException("Previous entry not closed");
+        }
+        if (!entryNames.add(name)) {
+            throw new IOException("Duplicate entry name: " + name);
+        }
+        writeEntry(name, content);
+    }
+
+    private void writeEntry(String name, GeneratedContent content) throws IOException {
+        long size = content.getLength();
+        writeBlock(header(name, size));
+        content.writeTo(out);
+        position += size;
+        int padding = (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+        out.write(ZERO_BLOCK, 0, padding);
+        position += padding;
+    }
+
+    @Override
+    public OutputStream openEntry(String name) throws IOException {
+        if (finished) {
+            throw new IOException("Archive already finished");
+        }
+        if (openEntry != null) {
+            throw new IOException("Previous entry not closed");
+        }
+        if (!entryNames.add(name)) {
+            throw new IOException("Duplicate entry name: " + name);
+        }
+        openEntry = new SpoolOutputStream(name, spoolSink.open(name));
+        return openEntry;
+    }
+
+    private byte[] header(String name, long size) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IOException("Entry name longer than 100 bytes: " + name); // The generated names are much shorter
+        }
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644); // Mode
+        putOctal(header, 108, 8, 0); // Owner
+        putOctal(header, 116, 8, 0); // Group
+        if (size <= MAX_OCTAL_SIZE) {
+            putOctal(header, 124, 12, size);
+        } else {
+            // Base-256: high bit of the first byte set, then the size as a big-endian number
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        putOctal(header, 136, 12, modificationTime);
+        header[156] = '0'; // Regular file
+        putAscii(header, 257, "ustar\0");
+        putAscii(header, 263, "00");
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum); // 6 digits, NUL; the eighth byte stays a space
+        return header;
+    }
+
+    // Zero-padded octal digits followed by a NUL, filling the field
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        int end = offset + length - 1;
+        header[end] = 0;
+        for (int i = end - 1; i >= offset; i--) {
+            header[i] = (byte) ('0' + (value & 7));
+            value >>>= 3;
+        }
+    }
+
+    private static void putAscii(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private void writeBlock(byte[] block) throws IOException {
+        out.write(block);
+        position += block.length;
+    }
+
+    /**
+     * Writes the end of the archive: two zero blocks, padded to a full record. An open entry is completed first.
+     * The stream is flushed but not closed.
+     *
+     * @throws IOException If the archive cannot be written.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (openEntry != null) {
+            openEntry.close();
+        }
+        finished = true;
+        writeBlock(ZERO_BLOCK);
+        writeBlock(ZERO_BLOCK);
+        while (position % RECORD_SIZE != 0) {
+            writeBlock(ZERO_BLOCK);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close(); // Also finishes a compressing stream
+        }
+    }
+
+    /**
+     * Spools an entry of unknown size and adds it to the archive when closed.
+     */
+    private final class SpoolOutputStream extends FilterOutputStream {
+        private final String name;
+        private final SinkOutputStream spool;
+        private boolean closed;
+
+        SpoolOutputStream(String name, SinkOutputStream spool) {
+            super(spool);
+            this.name = name;
+            this.spool = spool;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            spool.write(b, off, len); // Not byte by byte as FilterOutputStream would
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            openEntry = null;
+            try {
+                GeneratedContent content = spool.finish();
+                try {
+                    writeEntry(name, content);
+                } finally {
+                    content.discard();
+                }
+            } finally {
+                spool.close(); // Releases the spooled data if finishing failed
+            }
+        }
+    }
+}
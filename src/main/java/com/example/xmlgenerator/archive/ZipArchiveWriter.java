@@ -0,0 +1,417 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a ZIP archive.
+ *
+ * Finished entries are copied as they are: content compressed while it was generated (CompressedContent, e.g.
+ * deflated in parallel by the generation tasks) brings its CRC-32 and sizes, which go straight into the local
+ * header, so adding it is a plain copy. Other finished content is added as a stored entry. Entries of unknown
+ * size (openEntry) are deflated while they are written and followed by a data descriptor, like ZipOutputStream
+ * does. ZIP64 records are written when sizes, offsets or the entry count need them.
+ */
+public class ZipArchiveWriter implements ArchiveWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int UTF8_FLAG = 0x0800; // Entry names are UTF-8
+    private static final int DATA_DESCRIPTOR_FLAG = 0x0008; // CRC-32 and sizes follow the data
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL; // 32 bit field value meaning "see the ZIP64 record"
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final OutputStream out;
+    private final ZipCompression compression;
+    private final Clock clock; // Source of the entry times
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<String> entryNames = new HashSet<>(); // Names added so far, including an open entry
+    private long position; // Bytes written so far
+    private EntryOutputStream openEntry; // Entry being written through openEntry, if any
+    private boolean finished;
+
+    /**
+     * Creates a writer deflating entries of unknown size with the default level.
+     *
+     * @param out The stream to write the archive to.
+     */
+    public ZipArchiveWriter(OutputStream out) {
+        this(out, ZipCompression.DEFAULT);
+    }
+
+    /**
+     * @param out         The stream to write the archive to.
+     * @param compression The compression of entries of unknown size. They are always deflated, as stored entries
+     *                    need their CRC-32 up front: stored becomes deflate level 0, which only frames the data.
+     */
+    public ZipArchiveWriter(OutputStream out, ZipCompression compression) {
+        this(out, compression, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param out         The stream to write the archive to.
+     * @param compression The compression of entries of unknown size (see above).
+     * @param clock       The clock the modification time of the entries is read from, in its zone.
+     */
+    public ZipArchiveWriter(OutputStream out, ZipCompression compression, Clock clock) {
+        this.out = out;
+        this.compression = compression;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a finished entry. CompressedContent is copied as it is; other content is added uncompressed.
+     *
+     * @param name    The entry name.
+     * @param content The entry content.
+     * @throws IOException If the content cannot be read or the archive cannot be written.
+     */
+    @Override
+    public void addEntry(String name, GeneratedContent content) throws IOException {
+        checkWritable(name);
+        Entry entry;
+        if (content instanceof CompressedContent) {
+            CompressedContent compressed = (CompressedContent) content;
+            entry = new Entry(name, UTF8_FLAG, compressed.getMethod(), compressed.getCrc(), compressed.getLength(),
+                    compressed.getCompressedLength(), position, Entry.toDosTime(LocalDateTime.now(clock)));
+            writeLocalHeader(entry);
+            compressed.writeCompressedTo(out);
+        } else {
+            // The CRC must be in the header: one pass to compute it, one to copy the content
+            entry = new Entry(name, UTF8_FLAG, ZipEntry.STORED, crcOf(content), content.getLength(), content.getLength(), position,
+                    Entry.toDosTime(LocalDateTime.now(clock)));
+            writeLocalHeader(entry);
+            content.writeTo(out);
+        }
+        position += entry.compressedSize;
+        entries.add(entry);
+    }
+
+    /**
+     * Starts an entry of unknown size, deflated while it is written. Closing the returned stream completes the
+     * entry (it does not close the archive); only one entry can be open at a time.
+     *
+     * @param name The entry name.
+     * @return The stream receiving the entry content.
+     * @throws IOException If the archive cannot be written.
+     */
+    @Override
+    public OutputStream openEntry(String name) throws IOException {
+        checkWritable(name);
+        // CRC-32 and sizes are not known yet: zero in the local header, written in the data descriptor
+        Entry header = new Entry(name, UTF8_FLAG | DATA_DESCRIPTOR_FLAG, ZipEntry.DEFLATED, 0, 0, 0, position,
+                Entry.toDosTime(LocalDateTime.now(clock)));
+        writeLocalHeader(header);
+        openEntry = new EntryOutputStream(header);
+        return openEntry;
+    }
+
+    private void checkWritable(String name) throws IOException {
+        if (finished) {
+            throw new IOException("Archive already finished");
+        }
+        if (openEntry != null) {
+            throw new IOException("Previous entry not closed");
+        }
+        if (!entryNames.add(name)) {
+            throw new IOException("Duplicate entry name: " + name);
+        }
+    }
+
+    private static long crcOf(GeneratedContent content) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = content.openStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        ByteBuffer header = newBuffer(30 + entry.name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) entry.versionNeeded(zip64));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(entry.name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        write(header);
+    }
+
+    /**
+     * Writes the central directory, which completes the archive. An open entry is completed first.
+     * The stream is flushed but not closed.
+     *
+     * @throws IOException If the archive cannot be written.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (openEntry != null) {
+            openEntry.close();
+        }
+        finished = true;
+        long centralDirectoryOffset = position;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralDirectorySize = position - centralDirectoryOffset;
+
+        boolean zip64 = entries.size() >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = position;
+            ByteBuffer zip64End = newBuffer(56 + 20);
+            zip64End.putInt(ZIP64_END_SIGNATURE);
+            zip64End.putLong(44); // Size of the rest of the record
+            zip64End.putShort((short) 45);
+            zip64End.putShort((short) 45);
+            zip64End.putInt(0); // This disk
+            zip64End.putInt(0); // Disk of the central directory
+            zip64End.putLong(entries.size());
+            zip64End.putLong(entries.size());
+            zip64End.putLong(centralDirectorySize);
+            zip64End.putLong(centralDirectoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0); // Disk of the ZIP64 end record
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1); // Number of disks
+            write(zip64End);
+        }
+        ByteBuffer end = newBuffer(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0); // This disk
+        end.putShort((short) 0); // Disk of the central directory
+        end.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        end.putShort((short) 0); // Comment length
+        write(end);
+        out.flush();
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        // Only the fields that do not fit go into the ZIP64 extra field, in this order
+        boolean sizeInExtra = entry.size >= ZIP64_MAGIC;
+        boolean compressedSizeInExtra = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetInExtra = entry.offset >= ZIP64_MAGIC;
+        int extraDataLength = (sizeInExtra ? 8 : 0) + (compressedSizeInExtra ? 8 : 0) + (offsetInExtra ? 8 : 0);
+        int extraLength = extraDataLength > 0 ? 4 + extraDataLength : 0;
+        int version = entry.versionNeeded(extraLength > 0);
+
+        ByteBuffer header = newBuffer(46 + entry.name.length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) version); // Version made by
+        header.putShort((short) version); // Version needed
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (compressedSizeInExtra ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (sizeInExtra ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0); // Comment length
+        header.putShort((short) 0); // Disk number
+        header.putShort((short) 0); // Internal attributes
+        header.putInt(0); // External attributes
+        header.putInt((int) (offsetInExtra ? ZIP64_MAGIC : entry.offset));
+        header.put(entry.name);
+        if (extraLength > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) extraDataLength);
+            if (sizeInExtra) {
+                header.putLong(entry.size);
+            }
+            if (compressedSizeInExtra) {
+                header.putLong(entry.compressedSize);
+            }
+            if (offsetInExtra) {
+                header.putLong(entry.offset);
+            }
+        }
+        write(header);
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        position += buffer.position();
+    }
+
+    /**
+     * Finishes the archive and closes the stream.
+     *
+     * @throws IOException If the archive cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Stream of an entry of unknown size: deflates and checksums the content on the way to the archive, and
+     * writes the data descriptor when closed.
+     */
+    private final class EntryOutputStream extends OutputStream {
+        private final Entry header;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater = new Deflater(compression.getLevel(), true); // Raw deflate data
+        private final byte[] buffer = new byte[64 * 1024];
+        private long size;
+        private long compressedSize;
+        private boolean closed;
+
+        EntryOutputStream(Entry header) {
+            this.header = header;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Entry already closed");
+            }
+            crc.update(b, off, len);
+            size += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        private void deflate() throws IOException {
+            int compressed = deflater.deflate(buffer, 0, buffer.length);
+            if (compressed > 0) {
+                out.write(buffer, 0, compressed);
+                compressedSize += compressed;
+                position += compressed;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+            } finally {
+                deflater.end();
+            }
+            // The descriptor has 8 byte sizes when they do not fit in 4 bytes (as written by ZipOutputStream)
+            boolean zip64 = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+            ByteBuffer descriptor = newBuffer(zip64 ? 24 : 16);
+            descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+            descriptor.putInt((int) crc.getValue());
+            if (zip64) {
+                descriptor.putLong(compressedSize);
+                descriptor.putLong(size);
+            } else {
+                descriptor.putInt((int) compressedSize);
+                descriptor.putInt((int) size);
+            }
+            ZipArchiveWriter.this.write(descriptor);
+            entries.add(new Entry(header.nameString, header.flags, header.method, crc.getValue(), size, compressedSize, header.offset,
+                    header.dosTime));
+            openEntry = null;
+        }
+    }
+
+    /**
+     * What the central directory needs to know about a written entry.
+     */
+    private static final class Entry {
+        final String nameString;
+        final byte[] name;
+        final int flags;
+        final int method;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset; // Of the local header
+        final int dosTime;
+
+        Entry(String name, int flags, int method, long crc, long size, long compressedSize, long offset, int dosTime) {
+            this.nameString = name;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.dosTime = dosTime;
+        }
+
+        int versionNeeded(boolean zip64) {
+            if (zip64) {
+                return 45;
+            }
+            return method == ZipEntry.DEFLATED ? 20 : 10;
+        }
+
+        // MS-DOS date (high 16 bits) and time (low 16 bits), with a 2 second resolution
+        static int toDosTime(LocalDateTime time) {
+            return (time.getYear() - 1980) << 25
+                    | time.getMonthValue() << 21
+                    | time.getDayOfMonth() << 16
+                    | time.getHour() << 11
+                    | time.getMinute() << 5
+                    | time.getSecond() >> 1;
+        }
+    }
+}
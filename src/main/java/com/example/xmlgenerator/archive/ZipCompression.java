@@ -0,0 +1,64 @@
+package com.example.xmlgenerator.archive;
+
+/**
+ * Compression of ZIP entries: stored (no compression, fastest) or deflated with a level from 1 (fastest)
+ * to 9 (smallest).
+ */
+public final class ZipCompression {
+
+    /** Entries are stored uncompressed. */
+    public static final ZipCompression STORED = new ZipCompression(0);
+    /** Deflate with the default level of java.util.zip (6). */
+    public static final ZipCompression DEFAULT = new ZipCompression(6);
+
+    private final int level; // 0 means stored
+
+    private ZipCompression(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Parses a compression setting.
+     *
+     * @param value "stored", "default" or a deflate level from 0 (same as stored) to 9.
+     * @return The compression.
+     * @throws IllegalArgumentException If the value is not a known setting.
+     */
+    public static ZipCompression parse(String value) {
+        String normalized = value.trim().toLowerCase();
+        if ("stored".equals(normalized)) {
+            return STORED;
+        }
+        if ("default".equals(normalized)) {
+            return DEFAULT;
+        }
+        try {
+            int level = Integer.parseInt(normalized);
+            if (level >= 0 && level <= 9) {
+                return level == 0 ? STORED : new ZipCompression(level);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid ZIP compression: " + value + " (expected stored, default or 0-9)");
+    }
+
+    /**
+     * @return true if entries are stored uncompressed.
+     */
+    public boolean isStored() {
+        return level == 0;
+    }
+
+    /**
+     * @return The deflate level (0 for stored entries).
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return isStored() ? "stored" : "deflate level " + level;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.xmlgenerator.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A generated file held by the DownloadCache, either in memory or spilled to a file on disk.
+ */
+public class CachedDownload {
+    private final String fileName;
+    private final long length;
+    private final byte[] content; // In-memory content, or null if spilled
+    private final File spillFile; // File holding the content, or null if in memory
+    private final long expiresAt; // System.currentTimeMillis() after which the entry is dropped
+
+    CachedDownload(String fileName, byte[] content, File spillFile, long length, long expiresAt) {
+        this.fileName = fileName;
+        this.content = content;
+        this.spillFile = spillFile;
+        this.length = length;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Opens the content for reading. For a spilled entry the file is deleted when the stream is closed,
+     * so each entry can only be read once after it has been taken from the cache.
+     *
+     * @return An InputStream over the content.
+     * @throws IOException If the spill file cannot be opened.
+     */
+    public InputStream openStream() throws IOException {
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        return new FileInputStream(spillFile) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    discard();
+                }
+            }
+        };
+    }
+
+    /**
+     * Releases the disk space of a spilled entry. Does nothing for an in-memory entry.
+     */
+    void discard() {
+        if (spillFile != null && spillFile.exists() && !spillFile.delete()) {
+            System.err.println("Warning: Could not delete cache spill file " + spillFile);
+        }
+    }
+
+    /**
+     * @return The number of heap bytes the entry holds (0 once spilled to disk).
+     */
+    long getResidentBytes() {
+        return (content != null) ? content.length : 0;
+    }
+
+    boolean isSpilled() { return spillFile != null; }
+    boolean isExpired(long now) { return now >= expiresAt; }
+
+    public String getFileName() { return fileName; }
+    public long getLength() { return length; }
+}
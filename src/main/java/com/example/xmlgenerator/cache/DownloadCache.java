@@ -0,0 +1,261 @@
+package com.example.xmlgenerator.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache for generated files waiting to be downloaded.
+ *
+ * Entries are single use: they are removed when taken. Entries that are never downloaded (e.g. an abandoned
+ * browser tab) are dropped after the TTL by a background sweeper. The heap held by all entries is limited to
+ * a byte capacity; when a new entry does not fit, the least recently used entries are evicted. Entries above
+ * the spill threshold are written to a file instead of being kept on the heap. The disk held by spilled entries
+ * has its own capacity, enforced the same way: the least recently used spilled entries are evicted and their
+ * files deleted.
+ */
+public class DownloadCache {
+
+    private final long maxResidentBytes;
+    private final long maxSpilledBytes;
+    private final long ttlMillis;
+    private final long spillThresholdBytes;
+    private final File spillDirectory;
+
+    // Access-ordered, so iteration starts with the least recently used entry. Guarded by 'this'.
+    private final LinkedHashMap<String, CachedDownload> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes; // Heap bytes of all in-memory entries. Guarded by 'this'.
+    private long spilledBytes; // Disk bytes of all spilled entries. Guarded by 'this'.
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates the cache and starts its sweeper thread.
+     *
+     * @param maxResidentBytes    Maximum number of heap bytes held by in-memory entries.
+     * @param maxSpilledBytes     Maximum number of disk bytes held by spilled entries. A spilled entry just added is
+     *                            kept even if it is larger on its own, so that it can still be downloaded.
+     * @param ttlMillis           Time after which an entry that was not downloaded is dropped.
+     * @param spillThresholdBytes Entries larger than this are written to disk instead of being kept on the heap.
+     * @param spillDirectory      Directory for spilled entries. Created if it does not exist.
+     */
+    public DownloadCache(long maxResidentBytes, long maxSpilledBytes, long ttlMillis, long spillThresholdBytes, File spillDirectory) {
+        this.maxResidentBytes = maxResidentBytes;
+        this.maxSpilledBytes = maxSpilledBytes;
+        this.ttlMillis = ttlMillis;
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = spillDirectory;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "download-cache-sweeper");
+                thread.setDaemon(true); // Must not keep the JVM alive
+                return thread;
+            }
+        });
+        // Sweep often enough that an entry never outlives its TTL by more than half of it (at most a minute).
+        long sweepInterval = Math.max(1000L, Math.min(ttlMillis / 2, 60000L));
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweepExpired();
+            }
+        }, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a generated file to the cache, spilling it to disk if it is above the spill threshold
+     * or larger than the whole cache.
+     *
+     * @param id       The download ID.
+     * @param fileName The file name to offer the client.
+     * @param content  The file content.
+     */
+    public void put(String id, String fileName, byte[] content) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        CachedDownload download = null;
+        if (content.length > spillThresholdBytes || content.length > maxResidentBytes) {
+            download = spill(id, fileName, content, expiresAt);
+        }
+        if (download == null) {
+            download = new CachedDownload(fileName, content, null, content.length, expiresAt);
+        }
+
+        synchronized (this) {
+            CachedDownload previous = entries.put(id, download);
+            if (previous != null) {
+                release(previous);
+            }
+            account(download, 1);
+            evictToCapacity(id);
+        }
+    }
+
+    /**
+     * Adds a generated file that was written straight to disk (see createSpillFile).
+     * The cache takes over the file and deletes it once downloaded, expired or replaced.
+     *
+     * @param id       The download ID.
+     * @param fileName The file name to offer the client.
+     * @param file     The file holding the content.
+     */
+    public void putFile(String id, String fileName, File file) {
+        CachedDownload download = new CachedDownload(fileName, null, file, file.length(), System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            CachedDownload previous = entries.put(id, download);
+            if (previous != null) {
+                release(previous);
+            }
+            account(download, 1);
+            evictToCapacity(id);
+        }
+    }
+
+    /**
+     * Creates a new empty file in the spill directory, for content that is too large to build on the heap.
+     * Hand it over with putFile once written, or delete it if the content is not needed.
+     *
+     * @param id The download ID the file will be stored under.
+     * @return The new file.
+     * @throws IOException If the file cannot be created.
+     */
+    public File createSpillFile(String id) throws IOException {
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IOException("Could not create " + spillDirectory);
+        }
+        return File.createTempFile("download-" + id + "-", ".bin", spillDirectory);
+    }
+
+    private CachedDownload spill(String id, String fileName, byte[] content, long expiresAt) {
+        try {
+            File spillFile = createSpillFile(id);
+            try (OutputStream out = new FileOutputStream(spillFile)) {
+                out.write(content);
+            }
+            return new CachedDownload(fileName, null, spillFile, content.length, expiresAt);
+        } catch (IOException e) {
+            // Keeping the entry on the heap is still better than losing it; the capacity limit applies as usual.
+            System.err.println("Warning: Could not spill download " + id + " to disk, keeping it in memory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes and returns a cached download (downloads are single use).
+     *
+     * @param id The download ID.
+     * @return The cached download, or null if it is unknown, expired, evicted or already taken.
+     */
+    public CachedDownload take(String id) {
+        CachedDownload download;
+        synchronized (this) {
+            download = entries.remove(id);
+            if (download != null) {
+                account(download, -1);
+            }
+        }
+        if (download == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (download.isExpired(System.currentTimeMillis())) {
+            // Expired but not swept yet
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            download.discard();
+            return null;
+        }
+        hits.incrementAndGet();
+        return download;
+    }
+
+    /**
+     * Drops all expired entries. Called periodically by the sweeper thread.
+     */
+    public void sweepExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<CachedDownload> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedDownload download = iterator.next();
+                if (download.isExpired(now)) {
+                    iterator.remove();
+                    release(download);
+                    expirations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Evicts the least recently used in-memory entries until the heap capacity is respected, and the least recently
+    // used spilled entries until the disk capacity is respected. A spilled entry just added is kept. Caller holds 'this'.
+    private void evictToCapacity(String addedId) {
+        Iterator<Map.Entry<String, CachedDownload>> iterator = entries.entrySet().iterator();
+        while ((residentBytes > maxResidentBytes || spilledBytes > maxSpilledBytes) && iterator.hasNext()) {
+            Map.Entry<String, CachedDownload> entry = iterator.next();
+            CachedDownload download = entry.getValue();
+            boolean overCapacity = download.isSpilled() ? spilledBytes > maxSpilledBytes : residentBytes > maxResidentBytes;
+            if (!overCapacity || (download.isSpilled() && entry.getKey().equals(addedId))) {
+                continue; // Only entries of the exceeded capacity make room
+            }
+            iterator.remove();
+            release(download);
+            evictions.incrementAndGet();
+            System.out.println("Evicted " + (download.isSpilled() ? "spilled " : "") + "download " + entry.getKey()
+                    + " (" + download.getLength() + " bytes) from the cache.");
+        }
+    }
+
+    // Caller holds 'this'.
+    private void release(CachedDownload download) {
+        account(download, -1);
+        download.discard();
+    }
+
+    // Caller holds 'this'.
+    private void account(CachedDownload download, int sign) {
+        if (download.isSpilled()) {
+            spilledBytes += sign * download.getLength();
+        } else {
+            residentBytes += sign * download.getResidentBytes();
+        }
+    }
+
+    /**
+     * Stops the sweeper and drops all entries, deleting their spill files.
+     */
+    public void close() {
+        sweeper.shutdownNow();
+        synchronized (this) {
+            for (CachedDownload download : entries.values()) {
+                release(download);
+            }
+            entries.clear();
+        }
+    }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+    public synchronized long getResidentBytes() { return residentBytes; }
+    public synchronized long getSpilledBytes() { return spilledBytes; }
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getExpirations() { return expirations.get(); }
+    public long getMaxResidentBytes() { return maxResidentBytes; }
+    public long getMaxSpilledBytes() { return maxSpilledBytes; }
+}
@@ -0,0 +1,362 @@
+package com.example.xmlgenerator.cli;
+
+import com.example.xmlgenerator.archive.ArchiveFormat;
+import com.example.xmlgenerator.archive.ArchiveSettings;
+import com.example.xmlgenerator.archive.ArchiveWriter;
+import com.example.xmlgenerator.archive.CompressingOutputSink;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.OutputSinks;
+import com.example.xmlgenerator.output.SinkOutputStream;
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.GeneratedFile;
+import com.example.xmlgenerator.service.GenerationResult;
+import com.example.xmlgenerator.service.XmlProcessorService;
+import com.example.xmlgenerator.service.StreamingXmlGenerator;
+import com.example.xmlgenerator.variation.Variation;
+import com.example.xmlgenerator.variation.VariationSpec;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless "generate" command for scripts and CI pipelines: generates the files of one or more templates
+ * without starting the web server, writing them straight to a directory or as an archive stream to stdout.
+ *
+ * Usage: java -jar xml-generator.jar generate [options] template.xml...
+ * Progress and the final throughput report go to stderr, so stdout only carries the archive stream when requested.
+ * For many short runs, -XX:TieredStopAtLevel=1 trims the JVM startup further.
+ */
+public final class GenerateCommand {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String USAGE = "Usage: generate [options] <template.xml>...\n"
+            + "  -t, --transactions <n>  Transactions per file (default 1)\n"
+            + "  -b, --batches <n>       Batches per file (default 1)\n"
+            + "  -c, --copies <n>        Copies per template (default 1)\n"
+            + "  -e, --engine <name>     dom, streaming (default) or parallel\n"
+            + "  -o, --output <dir|->    Output directory (default: current directory), or - for an archive stream on stdout\n"
+            + "  -a, --archive <format>  Archive format of the stdout stream: zip (default), tar, tar.gz or tar.zst\n"
+            + "  -s, --sink <name>       How files are written to the output directory: channel (default) or mapped,\n"
+            + "                          memory-mapped, for very large files\n"
+            + "  -V, --vary <spec>       Vary the transactions, e.g. \"seed=42; amount=uniform(1.00,2500.00); iban=on\"\n"
+            + "                          (settings: seed, clock, amount, currency, name, iban, bic, countries, pool);\n"
+            + "                          with a seed the output is byte-identical from run to run\n"
+            + "                          @file reads the spec from a file\n"
+            + "  -h, --help              Show this help";
+
+    private final List<File> templates = new ArrayList<>();
+    private int numTransactions = 1;
+    private int numBatches = 1;
+    private int numCopies = 1;
+    private String engine = "streaming";
+    private String output = ".";
+    private String sink = "channel";
+    private ArchiveFormat archiveFormat = ArchiveFormat.ZIP;
+    private VariationSpec variationSpec; // null: plain copies of the template transaction
+    private int failedCopies; // Copies the DOM engine could not generate (the other engines stop at the first failure)
+
+    private GenerateCommand() {
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param args The command line arguments following "generate".
+     * @return The process exit code: 0 on success, 1 if generating failed (also if only some files are missing),
+     * 2 for invalid arguments.
+     */
+    public static int run(String[] args) {
+        GenerateCommand command = new GenerateCommand();
+        try {
+            if (!command.parseArguments(args)) {
+                System.err.println(USAGE);
+                return 0; // --help
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        try {
+            command.execute();
+            if (command.failedCopies > 0) {
+                System.err.println("Error: " + command.failedCopies + " file(s) could not be generated, see above.");
+                return 1;
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error: Generation failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    // Returns false if only the help was requested.
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-t":
+                case "--transactions":
+                    numTransactions = parsePositive(arg, valueOf(args, ++i, arg));
+                    break;
+                case "-b":
+                case "--batches":
+                    numBatches = parsePositive(arg, valueOf(args, ++i, arg));
+                    break;
+                case "-c":
+                case "--copies":
+                    numCopies = parsePositive(arg, valueOf(args, ++i, arg));
+                    break;
+                case "-e":
+                case "--engine":
+                    engine = valueOf(args, ++i, arg);
+                    if (!"dom".equals(engine) && !"streaming".equals(engine) && !"parallel".equals(engine)) {
+                        throw new IllegalArgumentException("Unknown engine: " + engine);
+                    }
+                    break;
+                case "-o":
+                case "--output":
+                    output = valueOf(args, ++i, arg);
+                    break;
+                case "-a":
+                case "--archive":
+                    archiveFormat = ArchiveFormat.fromName(valueOf(args, ++i, arg));
+                    break;
+                case "-s":
+                case "--sink":
+                    sink = valueOf(args, ++i, arg);
+                    if (!"channel".equals(sink) && !"mapped".equals(sink)) {
+                        throw new IllegalArgumentException("Unknown sink: " + sink);
+                    }
+                    break;
+                case "-V":
+                case "--vary":
+                    variationSpec = VariationSpec.parse(readSpec(valueOf(args, ++i, arg)), true);
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    File template = new File(arg);
+                    if (!template.isFile()) {
+                        throw new IllegalArgumentException("Template not found: " + arg);
+                    }
+                    templates.add(template);
+            }
+        }
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("No template given.");
+        }
+        if (numBatches > numTransactions) {
+            throw new IllegalArgumentException("Number of batches (" + numBatches + ") exceeds the number of transactions (" + numTransactions + ").");
+        }
+        return true;
+    }
+
+    private static String valueOf(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    // A spec given as @file is read from the file
+    private static String readSpec(String value) {
+        if (!value.startsWith("@")) {
+            return value;
+        }
+        File file = new File(value.substring(1));
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read variation spec " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1: " + value);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private void execute() throws Exception {
+        boolean toStdout = "-".equals(output);
+        OutputStream stdout = null;
+        if (toStdout) {
+            // The service logs to System.out; keep stdout for the archive stream only.
+            stdout = new FileOutputStream(FileDescriptor.out);
+            System.setOut(System.err);
+        }
+        File outputDirectory = new File(output);
+        if (!toStdout && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create output directory " + outputDirectory);
+        }
+
+        long startNanos = System.nanoTime();
+        XmlProcessorService service = new XmlProcessorService();
+        CountingOutputStream archiveOut = null;
+        ArchiveWriter archive = null;
+        ArchiveSettings archiveSettings = null;
+        if (toStdout) {
+            // Tar entries of unknown size are spooled to temporary files until their size is known
+            // A seeded variation also fixes the entry times, so that the archive is byte-identical from run to run
+            archiveSettings = ArchiveSettings.fromSystemProperties(
+                    OutputSinks.create("channel", new File(System.getProperty("java.io.tmpdir")), true))
+                    .withEntryClock(Variation.clockOf(variationSpec));
+            archiveOut = new CountingOutputStream(new BufferedOutputStream(stdout, OUTPUT_BUFFER_SIZE));
+            archive = archiveFormat.newWriter(archiveOut, archiveSettings);
+        }
+
+        int filesWritten = 0;
+        long bytesWritten = 0;
+        try {
+            if (toStdout) {
+                for (int t = 0; t < templates.size(); t++) {
+                    filesWritten += writeToArchive(service, compile(service, t), archive, archiveSettings).size();
+                }
+            } else {
+                OutputSink outputSink = OutputSinks.create(sink, outputDirectory, false);
+                for (int t = 0; t < templates.size(); t++) {
+                    for (GeneratedFile generatedFile : writeToDirectory(service, compile(service, t), outputSink)) {
+                        filesWritten++;
+                        bytesWritten += generatedFile.getLength();
+                    }
+                }
+            }
+            if (archive != null) {
+                archive.close(); // Also writes the trailer of a compressed tar stream
+                bytesWritten = archiveOut.getCount();
+            }
+        } finally {
+            service.shutdown();
+        }
+
+        long elapsedMillis = Math.max(1L, (System.nanoTime() - startNanos) / 1000000L);
+        // From the files actually written: copies that failed are missing
+        long totalTransactions = (long) numTransactions * filesWritten;
+        System.err.println(String.format(Locale.ROOT,
+                "Generated %d file(s), %d transactions, %.1f MB%s in %d ms: %.0f transactions/s, %.1f MB/s",
+                filesWritten, totalTransactions, bytesWritten / 1048576.0, toStdout ? " (" + archiveFormat.getName() + ")" : "", elapsedMillis,
+                totalTransactions * 1000.0 / elapsedMillis, bytesWritten / 1048576.0 * 1000.0 / elapsedMillis));
+    }
+
+    // Writes the copies of one template as files of the output directory, through the output sink.
+    private List<GeneratedFile> writeToDirectory(XmlProcessorService service, CompiledTemplate compiledTemplate,
+                                                 OutputSink outputSink) throws Exception {
+        if ("dom".equals(engine)) {
+            GenerationResult result = service.generateXmlFiles(compiledTemplate, numTransactions, numBatches, numCopies, outputSink);
+            failedCopies += result.getFailedCopies();
+            return result.getFiles();
+        }
+
+        List<GeneratedFile> generatedFiles = new ArrayList<>();
+        String batchTransactionType = service.getBatchTransactionType(numTransactions, numBatches, 1);
+        for (int i = 0; i < numCopies; i++) {
+            String fileName = service.newXmlFileName(compiledTemplate, batchTransactionType, i + 1);
+            // The sinks buffer the tiny writes of the XML writer themselves
+            SinkOutputStream out = outputSink.open(fileName);
+            try {
+                writeCopy(service, new StreamingXmlGenerator(compiledTemplate, i), out);
+                generatedFiles.add(new GeneratedFile(fileName, out.finish()));
+            } finally {
+                out.close(); // Deletes a partial file
+            }
+        }
+        return generatedFiles;
+    }
+
+    // Adds the copies of one template to the archive stream and returns their names.
+    private List<String> writeToArchive(XmlProcessorService service, CompiledTemplate compiledTemplate, ArchiveWriter archive,
+                                        ArchiveSettings archiveSettings) throws Exception {
+        List<String> fileNames = new ArrayList<>();
+        if ("dom".equals(engine)) {
+            // ZIP entries are deflated by the generation tasks, the archive writer only copies them
+            OutputSink sink = HeapOutputSink.getInstance();
+            if (archiveFormat.compressesEntries()) {
+                sink = new CompressingOutputSink(sink, archiveSettings.getZipCompression());
+            }
+            GenerationResult result = service.generateXmlFiles(compiledTemplate, numTransactions, numBatches, numCopies, sink);
+            failedCopies += result.getFailedCopies();
+            for (GeneratedFile generatedFile : result.getFiles()) {
+                archive.addEntry(generatedFile.getFileName(), generatedFile.getContent());
+                fileNames.add(generatedFile.getFileName());
+            }
+            return fileNames;
+        }
+
+        String batchTransactionType = service.getBatchTransactionType(numTransactions, numBatches, 1);
+        for (int i = 0; i < numCopies; i++) {
+            String fileName = service.newXmlFileName(compiledTemplate, batchTransactionType, i + 1);
+            // The XML writer issues many tiny writes, which are very slow to deflate one by one.
+            try (OutputStream entryOut = new BufferedOutputStream(archive.openEntry(fileName), OUTPUT_BUFFER_SIZE)) {
+                writeCopy(service, new StreamingXmlGenerator(compiledTemplate, i), entryOut);
+            } // Closing completes the entry
+            fileNames.add(fileName);
+        }
+        return fileNames;
+    }
+
+    private void writeCopy(XmlProcessorService service, StreamingXmlGenerator generator, OutputStream out) throws Exception {
+        if ("parallel".equals(engine)) {
+            service.writeParallelCopy(generator, out, numTransactions, numBatches);
+        } else {
+            service.writeStreamingCopy(generator, out, numTransactions, numBatches);
+        }
+    }
+
+    // With several templates, each one is numbered, which keeps the file names of their copies apart
+    private CompiledTemplate compile(XmlProcessorService service, int templateIndex) throws Exception {
+        try (InputStream in = new FileInputStream(templates.get(templateIndex))) {
+            return service.compileTemplate(in).withVariation(variationSpec, templates.size() > 1 ? templateIndex + 1 : 0);
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() { return count; }
+    }
+}
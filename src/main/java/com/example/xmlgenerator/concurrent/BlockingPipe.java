@@ -0,0 +1,155 @@
+package com.example.xmlgenerator.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded in-memory pipe between one writing thread and one reading thread.
+ *
+ * Replaces PipedInputStream/PipedOutputStream, which wait inside synchronized methods (pinning a virtual thread
+ * to its carrier on Java 21) and only wake a waiting reader on flush or once a second. Here the reader is woken
+ * as soon as data arrives and the writer as soon as there is room. Closing the input side makes further writes
+ * fail, so the writer stops when the consumer goes away; closing the output side signals end of stream.
+ */
+public class BlockingPipe {
+
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Guarded by 'lock'
+    private int readPosition;
+    private int count;
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    /**
+     * @param capacity Number of bytes the pipe holds before the writer blocks.
+     */
+    public BlockingPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() { return inputStream; }
+    public OutputStream getOutputStream() { return outputStream; }
+
+    private final class PipeOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    if (writerClosed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    while (count == buffer.length && !readerClosed) {
+                        await(notFull);
+                    }
+                    if (readerClosed) {
+                        throw new IOException("Pipe reader closed"); // The consumer went away
+                    }
+                    // Copy as much as fits contiguously after the last written byte
+                    int writePosition = (readPosition + count) % buffer.length;
+                    int chunk = Math.min(len, Math.min(buffer.length - count, buffer.length - writePosition));
+                    System.arraycopy(b, off, buffer, writePosition, chunk);
+                    count += chunk;
+                    off += chunk;
+                    len -= chunk;
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class PipeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) == -1) ? -1 : (single[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                if (readerClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                while (count == 0 && !writerClosed) {
+                    await(notEmpty);
+                }
+                if (count == 0) {
+                    return -1; // Writer closed and everything read
+                }
+                int chunk = Math.min(len, Math.min(count, buffer.length - readPosition));
+                System.arraycopy(buffer, readPosition, b, off, chunk);
+                readPosition = (readPosition + chunk) % buffer.length;
+                count -= chunk;
+                notFull.signal();
+                return chunk;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                count = 0;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Caller holds 'lock'.
+    private static void await(Condition condition) throws InterruptedIOException {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on the pipe");
+        }
+    }
+}
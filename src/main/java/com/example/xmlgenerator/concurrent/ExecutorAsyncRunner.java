@@ -0,0 +1,48 @@
+package com.example.xmlgenerator.concurrent;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs each NanoHTTPD connection as a task of an executor (e.g., one virtual thread per connection)
+ * instead of NanoHTTPD's default of starting a new platform thread for it.
+ */
+public class ExecutorAsyncRunner implements NanoHTTPD.AsyncRunner {
+
+    private final ExecutorService executor;
+    private final List<NanoHTTPD.ClientHandler> running = Collections.synchronizedList(new ArrayList<NanoHTTPD.ClientHandler>());
+
+    /**
+     * @param executor The executor running the connections. Shutting it down is up to the caller.
+     */
+    public ExecutorAsyncRunner(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler clientHandler) {
+        running.add(clientHandler);
+        executor.execute(clientHandler);
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        running.remove(clientHandler);
+    }
+
+    @Override
+    public void closeAll() {
+        // Copy first: closing a handler calls closed(), which modifies the list
+        List<NanoHTTPD.ClientHandler> handlers;
+        synchronized (running) {
+            handlers = new ArrayList<>(running);
+        }
+        for (NanoHTTPD.ClientHandler handler : handlers) {
+            handler.close();
+        }
+    }
+}
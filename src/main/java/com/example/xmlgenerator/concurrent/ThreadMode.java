@@ -0,0 +1,109 @@
+package com.example.xmlgenerator.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of threads used for the HTTP connections, which mostly block on I/O: spooling uploads, waiting for an
+ * admission slot or for generated files, and sending downloads. CPU-bound rendering always stays on the service's
+ * pools sized to the number of cores, and the streamed ZIP writers stay on platform threads.
+ *
+ * Virtual threads exist from Java 21 on. The application is built for Java 8, so they are looked up by reflection;
+ * on an older JVM only platform threads are available. Select the mode with -Dxmlgenerator.threads=auto|platform|virtual
+ * (default auto: virtual threads when the JVM has them).
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    // Thread.ofVirtual(), Thread.Builder.name(String, long), Thread.Builder.factory() and
+    // Executors.newThreadPerTaskExecutor(ThreadFactory), or null before Java 21.
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            ofVirtual = null; // Before Java 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads (Java 21+).
+     */
+    public static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Reads the mode from the xmlgenerator.threads system property.
+     *
+     * @return The configured mode, falling back to PLATFORM if virtual threads are not supported.
+     * @throws IllegalArgumentException If the property has an unknown value.
+     */
+    public static ThreadMode fromSystemProperties() {
+        String value = System.getProperty("xmlgenerator.threads", "auto").trim().toLowerCase();
+        switch (value) {
+            case "auto":
+                return virtualThreadsSupported() ? VIRTUAL : PLATFORM;
+            case "platform":
+                return PLATFORM;
+            case "virtual":
+                if (!virtualThreadsSupported()) {
+                    System.err.println("Warning: Virtual threads need Java 21 or later (running " + System.getProperty("java.version")
+                            + "), using platform threads.");
+                    return PLATFORM;
+                }
+                return VIRTUAL;
+            default:
+                throw new IllegalArgumentException("Unknown xmlgenerator.threads value: " + value + " (expected auto, platform or virtual)");
+        }
+    }
+
+    /**
+     * Creates an executor starting a new thread for each task, for work that mostly blocks.
+     *
+     * @param namePrefix Prefix of the thread names; a running number is appended.
+     * @return A virtual-thread-per-task executor in VIRTUAL mode, otherwise a cached pool of platform threads.
+     * @throws IllegalStateException If VIRTUAL is used on a JVM without virtual threads.
+     */
+    public ExecutorService newThreadPerTaskExecutor(final String namePrefix) {
+        if (this == VIRTUAL) {
+            if (!virtualThreadsSupported()) {
+                throw new IllegalStateException("Virtual threads need Java 21 or later (running " + System.getProperty("java.version") + ")");
+            }
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+                ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create a virtual thread executor: " + e.getMessage(), e);
+            }
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            }
+        });
+    }
+}
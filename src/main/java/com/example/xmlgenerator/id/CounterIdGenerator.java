@@ -0,0 +1,39 @@
+package com.example.xmlgenerator.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node ID, JVM start time and a lock-free counter: "N" + node (2) + start millis (8) + counter (4+),
+ * all in base 36, e.g. "NEDMVBD0CZG0001".
+ *
+ * The start time makes IDs differ across restarts of the same node; the counter makes them differ within
+ * one JVM. Uniqueness across instances relies on distinct node IDs.
+ */
+public class CounterIdGenerator implements IdGenerator {
+
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * @param nodeId The node ID of this instance (0 to IdGenerators.MAX_NODE_ID).
+     */
+    public CounterIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > IdGenerators.MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID out of range: " + nodeId);
+        }
+        StringBuilder sb = new StringBuilder(11);
+        sb.append('N');
+        IdGenerators.appendBase36(sb, nodeId, 2);
+        IdGenerators.appendBase36(sb, System.currentTimeMillis(), 8);
+        this.prefix = sb.toString();
+    }
+
+    @Override
+    public String nextId() {
+        long value = counter.incrementAndGet();
+        StringBuilder sb = new StringBuilder(prefix.length() + 6);
+        sb.append(prefix);
+        IdGenerators.appendBase36(sb, value, 4);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.xmlgenerator.id;
+
+/**
+ * Source of message IDs (MsgId). Batch IDs and transaction IDs (PmtInfId, EndToEndId, InstrId, TxId)
+ * are derived from the message ID, so they are unique whenever the message IDs are.
+ *
+ * Implementations must be thread-safe and must never return the same ID twice, also across JVM restarts
+ * and across server instances with different node IDs. IDs must stay short enough to leave room for the
+ * derived suffixes within the 35 characters of an ISO 20022 Max35Text field (at most 21 characters).
+ * The built-in generators start their IDs with N, R or S; D is used by the seeded message IDs of a variation
+ * (see TransactionVariation.getMessageId), which repeat across runs by design.
+ * Select an implementation with -Dxmlgenerator.idGenerator (see IdGenerators).
+ */
+public interface IdGenerator {
+
+    /**
+     * @return A new unique ID made of the characters 0-9 and A-Z.
+     */
+    String nextId();
+}
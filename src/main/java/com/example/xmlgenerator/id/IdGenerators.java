@@ -0,0 +1,114 @@
+package com.example.xmlgenerator.id;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+
+/**
+ * Factory for the configured IdGenerator.
+ *
+ * System properties:
+ * - xmlgenerator.idGenerator: "counter" (default), "snowflake", "random",
+ *   or the class name of a custom IdGenerator with a public no-argument constructor.
+ * - xmlgenerator.nodeId: ID of this server instance, 0 to 1023. Instances generating files for the same
+ *   receiver must use different node IDs. Defaults to a hash of the host name and process ID.
+ */
+public final class IdGenerators {
+
+    public static final int MAX_NODE_ID = 1023; // 10 bits
+
+    private IdGenerators() {
+    }
+
+    /**
+     * Creates the IdGenerator selected by the system properties.
+     *
+     * @return The configured IdGenerator.
+     */
+    public static IdGenerator fromSystemProperties() {
+        return create(System.getProperty("xmlgenerator.idGenerator", "counter"), nodeIdFromSystemProperties());
+    }
+
+    /**
+     * Creates an IdGenerator by name.
+     *
+     * @param name   "counter", "snowflake", "random" or the class name of a custom IdGenerator.
+     * @param nodeId The node ID of this instance (0 to MAX_NODE_ID).
+     * @return The IdGenerator.
+     */
+    public static IdGenerator create(String name, int nodeId) {
+        switch (name) {
+            case "counter":
+                return new CounterIdGenerator(nodeId);
+            case "snowflake":
+                return new SnowflakeIdGenerator(nodeId);
+            case "random":
+                return new RandomIdGenerator();
+            default:
+                try {
+                    return (IdGenerator) Class.forName(name).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown ID generator: " + name, e);
+                }
+        }
+    }
+
+    /**
+     * @return The node ID from -Dxmlgenerator.nodeId, or one derived from the host name and process ID.
+     */
+    public static int nodeIdFromSystemProperties() {
+        String configured = System.getProperty("xmlgenerator.nodeId");
+        if (configured != null) {
+            int nodeId = Integer.parseInt(configured.trim());
+            if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+                throw new IllegalArgumentException("xmlgenerator.nodeId must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+            }
+            return nodeId;
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        int nodeId = ((host + "/" + processName(host)).hashCode() & 0x7fffffff) % (MAX_NODE_ID + 1);
+        System.out.println("INFO: No xmlgenerator.nodeId set, using derived node ID " + nodeId + ". Set it explicitly when running several instances.");
+        return nodeId;
+    }
+
+    /**
+     * @param host The host name.
+     * @return "pid@host", as reported by the RuntimeMXBean.
+     */
+    private static String processName(String host) {
+        // ProcessHandle (Java 9+) is much cheaper than starting the management classes (~50 ms), which matters
+        // for the command line. Looked up by reflection, the application is built for Java 8.
+        try {
+            Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            Object current = processHandle.getMethod("current").invoke(null);
+            return processHandle.getMethod("pid").invoke(current) + "@" + host;
+        } catch (ReflectiveOperationException e) {
+            return ManagementFactory.getRuntimeMXBean().getName(); // Java 8
+        }
+    }
+
+    /**
+     * Appends a non-negative number in upper case base 36, left padded with zeros to a minimum width.
+     *
+     * @param sb       The builder to append to.
+     * @param value    The number (treated as unsigned).
+     * @param minWidth The minimum number of digits.
+     */
+    static void appendBase36(StringBuilder sb, long value, int minWidth) {
+        char[] digits = new char[13]; // 2^64 needs 13 base 36 digits
+        int pos = digits.length;
+        do {
+            int digit = (int) Long.remainderUnsigned(value, 36);
+            digits[--pos] = (char) (digit < 10 ? '0' + digit : 'A' + digit - 10);
+            value = Long.divideUnsigned(value, 36);
+        } while (value != 0);
+        for (int i = digits.length - pos; i < minWidth; i++) {
+            sb.append('0');
+        }
+        sb.append(digits, pos, digits.length - pos);
+    }
+}
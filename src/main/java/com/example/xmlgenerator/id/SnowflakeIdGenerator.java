@@ -0,0 +1,56 @@
+package com.example.xmlgenerator.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style IDs: a 64-bit number made of 41 bits of milliseconds since 2020-01-01 UTC, 10 bits of
+ * node ID and 12 bits of sequence, rendered in base 36 (13 characters, "S" prefix). IDs sort by time.
+ *
+ * The time and sequence are packed into one AtomicLong and advanced with compare-and-set, so the generator
+ * is lock-free. When more than 4096 IDs are requested within a millisecond, the sequence carries into the
+ * next millisecond instead of waiting; the IDs stay unique and only run ahead of the clock for a moment.
+ * Across restarts, uniqueness relies on the clock not going backwards by more than the restart time.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    private static final long EPOCH_MILLIS = 1577836800000L; // 2020-01-01T00:00:00Z
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+
+    private final long nodeId;
+    private final AtomicLong lastTimeAndSequence = new AtomicLong(); // (millis since EPOCH << SEQUENCE_BITS) | sequence
+
+    /**
+     * @param nodeId The node ID of this instance (0 to IdGenerators.MAX_NODE_ID).
+     */
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > IdGenerators.MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID out of range: " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nextId() {
+        long timeAndSequence = nextTimeAndSequence();
+        long millis = timeAndSequence >>> SEQUENCE_BITS;
+        long sequence = timeAndSequence & ((1L << SEQUENCE_BITS) - 1);
+        long id = (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+
+        StringBuilder sb = new StringBuilder(14);
+        sb.append('S');
+        IdGenerators.appendBase36(sb, id, 13);
+        return sb.toString();
+    }
+
+    private long nextTimeAndSequence() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        while (true) {
+            long last = lastTimeAndSequence.get();
+            long next = Math.max(now, last + 1); // New millisecond, or next sequence number (carrying if needed)
+            if (lastTimeAndSequence.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.xmlgenerator.jobs;
+
+import com.example.xmlgenerator.admission.AdmissionTicket;
+import com.example.xmlgenerator.archive.ArchiveFormat;
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.GenerationCancelledException;
+import com.example.xmlgenerator.service.ProgressListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An asynchronous generation: its parameters, its state and its progress.
+ * Progress fields are updated by the generating threads and read by status requests, so they are atomic or volatile.
+ */
+public class GenerationJob implements ProgressListener {
+
+    private final String id;
+    private final CompiledTemplate compiledTemplate;
+    private final int numTransactions;
+    private final int numBatches;
+    private final int numCopies;
+    private final boolean parallel;
+    private final ArchiveFormat archiveFormat;
+    private final String archiveFileName;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile AdmissionTicket ticket;
+    private final AtomicLong transactionsRendered = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    GenerationJob(String id, CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                  boolean parallel, ArchiveFormat archiveFormat, String archiveFileName) {
+        this.id = id;
+        this.compiledTemplate = compiledTemplate;
+        this.numTransactions = numTransactions;
+        this.numBatches = numBatches;
+        this.numCopies = numCopies;
+        this.parallel = parallel;
+        this.archiveFormat = archiveFormat;
+        this.archiveFileName = archiveFileName;
+    }
+
+    /**
+     * Counts rendered transactions and aborts the generation once cancellation was requested.
+     */
+    @Override
+    public void transactionsWritten(int count) {
+        if (cancelRequested) {
+            throw new GenerationCancelledException("Job " + id + " was cancelled.");
+        }
+        transactionsRendered.addAndGet(count);
+    }
+
+    /**
+     * Estimates the remaining time from the rendering rate so far.
+     *
+     * @return The estimated remaining milliseconds, or -1 if unknown (not started or nothing rendered yet).
+     */
+    public long getEtaMillis() {
+        if (state != JobState.RUNNING) {
+            return state.isFinished() ? 0 : -1;
+        }
+        long rendered = transactionsRendered.get();
+        long elapsed = System.currentTimeMillis() - startedAt;
+        if (rendered == 0 || elapsed <= 0) {
+            return -1;
+        }
+        long remaining = getTotalTransactions() - rendered;
+        return Math.max(0, (long) (remaining * ((double) elapsed / rendered)));
+    }
+
+    /**
+     * @return Milliseconds spent running so far (or in total once finished), 0 while queued.
+     */
+    public long getElapsedMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+
+    void markRunning() {
+        startedAt = System.currentTimeMillis();
+        state = JobState.RUNNING;
+    }
+
+    void markFinished(JobState finalState, String error) {
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+        if (startedAt == 0) {
+            startedAt = finishedAt; // Cancelled while queued
+        }
+        this.state = finalState;
+    }
+
+    void requestCancel() { cancelRequested = true; }
+    boolean isCancelRequested() { return cancelRequested; }
+    void setTicket(AdmissionTicket ticket) { this.ticket = ticket; }
+    AdmissionTicket getTicket() { return ticket; }
+    void addBytesWritten(long count) { bytesWritten.addAndGet(count); }
+
+    public String getId() { return id; }
+    public CompiledTemplate getCompiledTemplate() { return compiledTemplate; }
+    public int getNumTransactions() { return numTransactions; }
+    public int getNumBatches() { return numBatches; }
+    public int getNumCopies() { return numCopies; }
+    public boolean isParallel() { return parallel; }
+    public ArchiveFormat getArchiveFormat() { return archiveFormat; }
+    public String getArchiveFileName() { return archiveFileName; }
+    public long getCreatedAt() { return createdAt; }
+    public JobState getState() { return state; }
+    public String getError() { return error; }
+    public long getTotalTransactions() { return (long) numTransactions * numCopies; }
+    public long getTransactionsRendered() { return transactionsRendered.get(); }
+    public long getBytesWritten() { return bytesWritten.get(); }
+    public long getFinishedAt() { return finishedAt; }
+}
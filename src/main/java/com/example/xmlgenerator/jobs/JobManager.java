@@ -0,0 +1,186 @@
+package com.example.xmlgenerator.jobs;
+
+import com.example.xmlgenerator.admission.AdmissionController;
+import com.example.xmlgenerator.admission.AdmissionRejectedException;
+import com.example.xmlgenerator.admission.AdmissionTicket;
+import com.example.xmlgenerator.archive.ArchiveFormat;
+import com.example.xmlgenerator.archive.ArchiveSettings;
+import com.example.xmlgenerator.archive.ArchiveWriter;
+import com.example.xmlgenerator.cache.DownloadCache;
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.GenerationCancelledException;
+import com.example.xmlgenerator.service.XmlProcessorService;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs generation jobs in the background, so HTTP requests only submit work and poll for its progress instead of
+ * holding a connection open for the whole generation. Jobs are admitted, queued and started by the shared
+ * AdmissionController, like every other generation; a job's thread just waits for its turn.
+ *
+ * Jobs are written with the streaming engine straight into an archive file in the download cache's spill directory;
+ * the finished file is handed to the cache under the job ID. Finished jobs are forgotten after the retention time.
+ */
+public class JobManager {
+
+    private final XmlProcessorService xmlProcessorService;
+    private final DownloadCache downloadCache;
+    private final long retentionMillis;
+    private final AdmissionController admissionController;
+    private final ArchiveSettings archiveSettings;
+    private final ExecutorService executor;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param xmlProcessorService The service generating the files.
+     * @param downloadCache       The cache receiving the finished archives.
+     * @param admissionController Limits and orders the jobs together with the other generations.
+     * @param retentionMillis     Time a finished job stays visible to status requests.
+     * @param archiveSettings     Compression levels of the archives.
+     */
+    public JobManager(XmlProcessorService xmlProcessorService, DownloadCache downloadCache,
+                      AdmissionController admissionController, long retentionMillis, ArchiveSettings archiveSettings) {
+        this.xmlProcessorService = xmlProcessorService;
+        this.downloadCache = downloadCache;
+        this.admissionController = admissionController;
+        this.retentionMillis = retentionMillis;
+        this.archiveSettings = archiveSettings;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        // Unbounded here: the admission controller limits the jobs, and their threads mostly wait for a turn.
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "generation-job-" + threadNumber.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * Queues a new generation job.
+     *
+     * @param clientId         Identifies the submitting client for the admission quota (e.g., the remote IP address).
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param parallel         Whether to render each copy across all cores.
+     * @param archiveFormat    The format of the resulting archive.
+     * @param archiveFileName  The file name of the resulting archive.
+     * @return The queued job.
+     * @throws AdmissionRejectedException If the queue is full or the client has reached its quota.
+     */
+    public GenerationJob submit(String clientId, CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                boolean parallel, ArchiveFormat archiveFormat, String archiveFileName) {
+        purgeFinishedJobs();
+        final GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), compiledTemplate,
+                numTransactions, numBatches, numCopies, parallel, archiveFormat, archiveFileName);
+        job.setTicket(admissionController.enqueue(clientId, job.getTotalTransactions()));
+        jobs.put(job.getId(), job);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runJob(job);
+            }
+        });
+        System.out.println("Queued job " + job.getId() + " (" + job.getTotalTransactions() + " transactions).");
+        return job;
+    }
+
+    private void runJob(final GenerationJob job) {
+        AdmissionTicket ticket = job.getTicket();
+        File file = null;
+        try {
+            if (!ticket.awaitTurn() || job.isCancelRequested()) {
+                job.markFinished(JobState.CANCELLED, null); // Cancelled while queued
+                return;
+            }
+            job.markRunning();
+            file = downloadCache.createSpillFile(job.getId());
+            OutputStream countingOut = new FilterOutputStream(new FileOutputStream(file)) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    job.addBytesWritten(len);
+                }
+            };
+            try (ArchiveWriter archive = job.getArchiveFormat().newWriter(new BufferedOutputStream(countingOut, 64 * 1024),
+                    archiveSettings.withEntryClock(job.getCompiledTemplate().getFixedClock()))) {
+                xmlProcessorService.writeXmlFilesToArchive(job.getCompiledTemplate(), job.getNumTransactions(),
+                        job.getNumBatches(), job.getNumCopies(), job.isParallel(), archive, job);
+            }
+            downloadCache.putFile(job.getId(), job.getArchiveFileName(), file);
+            file = null; // Owned by the cache now
+            job.markFinished(JobState.COMPLETED, null);
+            System.out.println("Job " + job.getId() + " completed in " + job.getElapsedMillis() + " ms.");
+        } catch (GenerationCancelledException | InterruptedException e) {
+            job.markFinished(JobState.CANCELLED, null);
+            System.out.println("Job " + job.getId() + " cancelled.");
+        } catch (Exception e) {
+            job.markFinished(JobState.FAILED, e.getMessage());
+            System.err.println("Job " + job.getId() + " failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            ticket.close();
+            if (file != null && file.exists() && !file.delete()) {
+                System.err.println("Warning: Could not delete partial job output " + file);
+            }
+        }
+    }
+
+    /**
+     * @param id The job ID.
+     * @return The job, or null if it is unknown or was forgotten after its retention time.
+     */
+    public GenerationJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancels a job. A queued job is withdrawn from the admission queue, a running job stops at its next progress report.
+     *
+     * @param id The job ID.
+     * @return The job, or null if it is unknown.
+     */
+    public GenerationJob cancel(String id) {
+        GenerationJob job = jobs.get(id);
+        if (job == null || job.getState().isFinished()) {
+            return job;
+        }
+        job.requestCancel();
+        // Frees the queue slot right away if the job is still waiting; the job's thread then marks it cancelled.
+        // A job granted its turn in the meantime keeps its slot until its own thread sees the flag and closes it.
+        job.getTicket().withdrawIfWaiting();
+        return job;
+    }
+
+    private void purgeFinishedJobs() {
+        long now = System.currentTimeMillis();
+        for (GenerationJob job : jobs.values()) {
+            if (job.getState().isFinished() && now - job.getFinishedAt() > retentionMillis) {
+                jobs.remove(job.getId(), job);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting jobs and cancels the running and queued ones.
+     */
+    public void shutdown() {
+        for (GenerationJob job : jobs.values()) {
+            cancel(job.getId());
+        }
+        executor.shutdownNow(); // Interrupts jobs still waiting for their turn
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.xmlgenerator.jobs;
+
+/**
+ * Lifecycle of a generation job.
+ */
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * @return true once the job will not change anymore.
+     */
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.xmlgenerator.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes each generated file through a FileChannel, collecting the many small writes of the XML writer in a large
+ * direct buffer, so the file system sees few large writes and the bytes are not copied through a heap buffer first.
+ */
+public class FileChannelOutputSink extends FileOutputSink {
+
+    /** Default size of the direct buffer of each open file. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final int bufferSize;
+
+    /**
+     * @param directory  The directory to write the files to.
+     * @param temporary  true for uniquely named temporary files deleted on discard, false to keep the file names.
+     * @param bufferSize The size of the direct buffer of each open file.
+     */
+    public FileChannelOutputSink(File directory, boolean temporary, int bufferSize) {
+        super(directory, temporary);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public SinkOutputStream open(String fileName) throws IOException {
+        File file = newFile(fileName);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0); // An existing file of the same name is overwritten
+        return new ChannelSinkOutputStream(file, randomAccessFile.getChannel());
+    }
+
+    private final class ChannelSinkOutputStream extends SinkOutputStream {
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        private long length;
+
+        ChannelSinkOutputStream(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            length += len;
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int chunk = Math.min(len, buffer.remaining());
+                buffer.put(b, off, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        private void drain() throws IOException {
+            // Called through Buffer: ByteBuffer.flip()/clear() only exist since Java 9 and fail on a Java 8 runtime
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        @Override
+        protected GeneratedContent complete() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+            return contentOf(file, length);
+        }
+
+        @Override
+        protected void abandon() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Deleted below anyway
+            }
+            deleteQuietly(file);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.xmlgenerator.output;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base of the sinks writing each generated file to a file in a directory.
+ *
+ * Output files either keep the generated file name (e.g., the command line writing to an output directory) or are
+ * temporary files with a unique name, deleted when their content is discarded (e.g., the server building a ZIP).
+ * A sink keeping the names refuses to write a name twice, so that one generated file never silently replaces
+ * another one of the same run.
+ */
+public abstract class FileOutputSink implements OutputSink {
+
+    private final File directory;
+    private final boolean temporary;
+    private final Set<String> fileNames = ConcurrentHashMap.newKeySet(); // Names written so far (file names kept)
+
+    /**
+     * @param directory The directory to write the files to. Created if it does not exist.
+     * @param temporary true for uniquely named temporary files deleted on discard, false to keep the file names.
+     */
+    protected FileOutputSink(File directory, boolean temporary) {
+        this.directory = directory;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Creates the file for a new generated file.
+     *
+     * @param fileName The name of the generated file.
+     * @return The file to write.
+     * @throws IOException If the directory or the file cannot be created, or the name was already written by this sink.
+     */
+    protected File newFile(String fileName) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create output directory " + directory);
+        }
+        if (temporary) {
+            String baseName = fileName.endsWith(".xml") ? fileName.substring(0, fileName.length() - 4) : fileName;
+            String prefix = baseName + "-";
+            return File.createTempFile(prefix.length() >= 3 ? prefix : "xml-" + prefix, ".xml", directory); // At least 3 characters
+        }
+        if (!fileNames.add(fileName)) {
+            throw new IOException("Output file " + fileName + " was already written in this run, not overwriting it");
+        }
+        return new File(directory, fileName);
+    }
+
+    /**
+     * Wraps a written file into its content handle.
+     *
+     * @param file   The written file.
+     * @param length The number of bytes written.
+     * @return The content handle.
+     */
+    protected GeneratedContent contentOf(File file, long length) {
+        return new FileContent(file, length, temporary);
+    }
+
+    /**
+     * Deletes a file that was not completely written.
+     *
+     * @param file The file.
+     */
+    protected static void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            System.err.println("Warning: Could not delete incomplete output file " + file);
+        }
+    }
+
+    /**
+     * Content held in a file.
+     */
+    static final class FileContent implements GeneratedContent {
+        private final File file;
+        private final long length;
+        private final boolean deleteOnDiscard;
+
+        FileContent(File file, long length, boolean deleteOnDiscard) {
+            this.file = file;
+            this.length = length;
+            this.deleteOnDiscard = deleteOnDiscard;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            Files.copy(file.toPath(), out);
+        }
+
+        @Override
+        public void discard() {
+            if (deleteOnDiscard) {
+                deleteQuietly(file);
+            }
+        }
+
+        File getFile() { return file; }
+    }
+}
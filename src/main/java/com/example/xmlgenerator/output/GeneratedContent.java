@@ -0,0 +1,38 @@
+package com.example.xmlgenerator.output;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Handle to the content of a generated file, wherever an OutputSink put it (heap or disk).
+ * Content on disk is not limited to 2 GB and does not occupy the heap.
+ */
+public interface GeneratedContent {
+
+    /**
+     * @return The content length in bytes.
+     */
+    long getLength();
+
+    /**
+     * Opens the content for reading.
+     *
+     * @return An InputStream over the content. The caller closes it.
+     * @throws IOException If the content cannot be read.
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Copies the whole content to a stream, which is not closed.
+     *
+     * @param out The destination stream.
+     * @throws IOException If the content cannot be read or the stream cannot be written.
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Releases the content (e.g., deletes a temporary file). The content cannot be read afterwards.
+     */
+    void discard();
+}
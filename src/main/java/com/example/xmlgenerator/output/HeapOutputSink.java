@@ -0,0 +1,100 @@
+package com.example.xmlgenerator.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Keeps each generated file in a byte array on the heap (limited to 2 GB per file).
+ */
+public class HeapOutputSink implements OutputSink {
+
+    private static final HeapOutputSink INSTANCE = new HeapOutputSink();
+
+    /**
+     * @return The shared instance (the sink has no state).
+     */
+    public static HeapOutputSink getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public SinkOutputStream open(String fileName) {
+        return new HeapSinkOutputStream();
+    }
+
+    private static final class HeapSinkOutputStream extends SinkOutputStream {
+        private byte[] buffer = new byte[8192];
+        private int count;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required < 0) {
+                throw new OutOfMemoryError("Generated file exceeds 2 GB, use a file based output sink");
+            }
+            if (required > buffer.length) {
+                // Double, but stay below the maximum array size
+                int newLength = (int) Math.min(Integer.MAX_VALUE - 8L, Math.max(required, buffer.length * 2L));
+                buffer = Arrays.copyOf(buffer, newLength);
+            }
+        }
+
+        @Override
+        protected GeneratedContent complete() {
+            // Handed over without copying; at most half of the array is slack.
+            return new HeapContent(buffer, count);
+        }
+
+        @Override
+        protected void abandon() {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Content held in (part of) a byte array.
+     */
+    static final class HeapContent implements GeneratedContent {
+        private final byte[] bytes;
+        private final int length;
+
+        HeapContent(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes, 0, length);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        @Override
+        public void discard() {
+            // Reclaimed by the garbage collector
+        }
+    }
+}
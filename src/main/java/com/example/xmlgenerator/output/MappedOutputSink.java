@@ -0,0 +1,154 @@
+package com.example.xmlgenerator.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes each generated file through memory-mapped regions, for very large files (e.g., multi-gigabyte pain.001
+ * files for volume tests): writes are plain memory copies and the operating system writes the pages back in the
+ * background. The file is mapped region by region, growing as needed, and truncated to its length when finished.
+ *
+ * Mapped regions are unmapped explicitly where the JVM allows it, otherwise when they are garbage collected.
+ */
+public class MappedOutputSink extends FileOutputSink {
+
+    /** Default size of each mapped region. */
+    public static final long DEFAULT_REGION_SIZE = 64L * 1024 * 1024;
+
+    private final long regionSize;
+
+    /**
+     * @param directory  The directory to write the files to.
+     * @param temporary  true for uniquely named temporary files deleted on discard, false to keep the file names.
+     * @param regionSize The size of each mapped region.
+     */
+    public MappedOutputSink(File directory, boolean temporary, long regionSize) {
+        super(directory, temporary);
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public SinkOutputStream open(String fileName) throws IOException {
+        File file = newFile(fileName);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0); // An existing file of the same name is overwritten
+        return new MappedSinkOutputStream(file, randomAccessFile.getChannel());
+    }
+
+    private final class MappedSinkOutputStream extends SinkOutputStream {
+        private final File file;
+        private final FileChannel channel;
+        private MappedByteBuffer region;
+        private long regionStart;
+        private long length;
+
+        MappedSinkOutputStream(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (region == null || !region.hasRemaining()) {
+                mapNextRegion();
+            }
+            region.put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            length += len;
+            while (len > 0) {
+                if (region == null || !region.hasRemaining()) {
+                    mapNextRegion();
+                }
+                int chunk = Math.min(len, region.remaining());
+                region.put(b, off, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        private void mapNextRegion() throws IOException {
+            if (region != null) {
+                regionStart += region.capacity();
+                unmap(region);
+            }
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize); // Grows the file
+        }
+
+        @Override
+        protected GeneratedContent complete() throws IOException {
+            try {
+                if (region != null) {
+                    unmap(region);
+                    region = null;
+                }
+                channel.truncate(length); // Drop the unused rest of the last region
+            } finally {
+                channel.close();
+            }
+            return contentOf(file, length);
+        }
+
+        @Override
+        protected void abandon() {
+            if (region != null) {
+                unmap(region);
+                region = null;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Deleted below anyway
+            }
+            deleteQuietly(file);
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner (Java 9+), or null on Java 8
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null; // Java 8 or not permitted
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    // Releases a mapped region right away instead of waiting for the garbage collector, which matters when many
+    // regions of a multi-gigabyte file are mapped one after another. The region must not be used afterwards.
+    private static void unmap(MappedByteBuffer region) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, region);
+            } else {
+                // Java 8: ((sun.nio.ch.DirectBuffer) region).cleaner().clean()
+                Method cleanerMethod = region.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(region);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Unmapped once garbage collected
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.xmlgenerator.output;
+
+import java.io.IOException;
+
+/**
+ * Destination of generated files: decides where the bytes of each file go while it is being written.
+ * Implementations: HeapOutputSink (byte arrays, the original behavior), FileChannelOutputSink (files written
+ * through large direct buffers) and MappedOutputSink (memory-mapped files, for very large outputs).
+ * Sinks are thread-safe; each open stream is used by one thread at a time.
+ */
+public interface OutputSink {
+
+    /**
+     * Opens a stream for a new generated file.
+     *
+     * @param fileName The name of the generated file.
+     * @return The stream to write the file to.
+     * @throws IOException If the destination cannot be created.
+     */
+    SinkOutputStream open(String fileName) throws IOException;
+}
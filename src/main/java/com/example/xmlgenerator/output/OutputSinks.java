@@ -0,0 +1,34 @@
+package com.example.xmlgenerator.output;
+
+import java.io.File;
+
+/**
+ * Creates output sinks by name, for configuration through system properties and command line options.
+ */
+public final class OutputSinks {
+
+    private OutputSinks() {
+    }
+
+    /**
+     * Creates an output sink.
+     *
+     * @param name      "heap", "channel" or "mapped".
+     * @param directory The directory of the file based sinks (not used by "heap").
+     * @param temporary true for uniquely named temporary files deleted on discard, false to keep the file names.
+     * @return The sink.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    public static OutputSink create(String name, File directory, boolean temporary) {
+        switch (name.trim().toLowerCase()) {
+            case "heap":
+                return HeapOutputSink.getInstance();
+            case "channel":
+                return new FileChannelOutputSink(directory, temporary, FileChannelOutputSink.DEFAULT_BUFFER_SIZE);
+            case "mapped":
+                return new MappedOutputSink(directory, temporary, MappedOutputSink.DEFAULT_REGION_SIZE);
+            default:
+                throw new IllegalArgumentException("Unknown output sink: " + name + " (expected heap, channel or mapped)");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.xmlgenerator.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream receiving one generated file for an OutputSink.
+ *
+ * Call finish() once everything is written to obtain the content handle. Closing a stream that was not finished
+ * abandons it and releases what was written (e.g., after a failed generation), so the usual pattern is:
+ * <pre>
+ * SinkOutputStream out = sink.open(fileName);
+ * try {
+ *     ...write...
+ *     content = out.finish();
+ * } finally {
+ *     out.close();
+ * }
+ * </pre>
+ */
+public abstract class SinkOutputStream extends OutputStream {
+
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Completes the file and returns its content handle. The stream cannot be written afterwards.
+     *
+     * @return The content handle.
+     * @throws IOException If the content cannot be completed.
+     */
+    public final GeneratedContent finish() throws IOException {
+        if (finished || closed) {
+            throw new IOException("Output already finished or closed");
+        }
+        GeneratedContent content = complete();
+        finished = true;
+        return content;
+    }
+
+    /**
+     * Abandons the file if it was not finished; does nothing otherwise.
+     */
+    @Override
+    public final void close() {
+        if (!finished && !closed) {
+            abandon();
+        }
+        closed = true;
+    }
+
+    // Flushes and closes the underlying resources and returns the content handle.
+    protected abstract GeneratedContent complete() throws IOException;
+
+    // Releases the underlying resources and whatever was written. Must not throw.
+    protected abstract void abandon();
+}
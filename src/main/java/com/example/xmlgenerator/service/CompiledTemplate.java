@@ -0,0 +1,422 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.amount.ConstantAmounts;
+import com.example.xmlgenerator.amount.TransactionAmounts;
+import com.example.xmlgenerator.variation.TransactionVariation;
+import com.example.xmlgenerator.variation.Variation;
+import com.example.xmlgenerator.variation.VariationSpec;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable generation plan for one template.
+ * The template is parsed and analysed once: the message type, the batch and transaction anchor nodes and
+ * the paths to every mutable field are resolved here, so each generated copy only has to follow the paths
+ * instead of re-detecting the type and re-scanning the document by tag name.
+ *
+ * The prototype document only keeps the first batch and its first transaction; it must never be modified
+ * after compilation so that it can be cloned and read by several generation threads at once.
+ */
+public class CompiledTemplate {
+
+    /**
+     * Where a field path starts from.
+     */
+    public enum Scope { DOCUMENT, BATCH, TRANSACTION }
+
+    /**
+     * The mutable fields of a template, declared in the order the generation engines update them,
+     * so that a later update wins when two fields resolve to the same node.
+     */
+    public enum Field {
+        CRE_DT_TM(Scope.DOCUMENT),
+        REQD_EXCTN_DT(Scope.DOCUMENT),
+        INTR_BK_STTLM_DT(Scope.DOCUMENT),
+        MSG_ID(Scope.DOCUMENT),
+        BATCH_ID(Scope.BATCH),
+        TX_ID_1(Scope.TRANSACTION),
+        TX_ID_2(Scope.TRANSACTION),
+        TX_ID_3(Scope.TRANSACTION),
+        AMOUNT(Scope.TRANSACTION),
+        COUNTERPARTY_NAME(Scope.TRANSACTION),
+        COUNTERPARTY_IBAN(Scope.TRANSACTION),
+        COUNTERPARTY_BIC(Scope.TRANSACTION),
+        BATCH_NB_OF_TXS(Scope.BATCH),
+        BATCH_CTRL_SUM(Scope.BATCH),
+        GROUP_NB_OF_TXS(Scope.DOCUMENT),
+        GROUP_CTRL_SUM(Scope.DOCUMENT),
+        GROUP_TTL_INTR_BK_STTLM_AMT(Scope.DOCUMENT);
+
+        private final Scope scope;
+
+        Field(Scope scope) {
+            this.scope = scope;
+        }
+
+        public Scope getScope() {
+            return scope;
+        }
+    }
+
+    private final Document prototype;
+    private final String fileTypeShortcode;
+    private final MessageDescriptor descriptor;
+    private final int[] batchPath; // Path from the document to the first batch element
+    private final int[] transactionPath; // Path from the batch element to its first transaction, or null
+    private final int[] groupHeaderPath; // Path from the document to the GrpHdr element
+    private final boolean singleBatchElement; // Whether the batch element holds the GrpHdr (PACS.008)
+    private final Map<Field, int[]> fieldPaths = new EnumMap<>(Field.class); // Paths relative to the field's scope
+    private final TransactionAmounts transactionAmounts; // Amount of the prototype transaction, or null if it has none
+    private final Variation variation; // Varied transaction values, or null if every transaction is a plain copy
+    private final TimestampFormatter timestampFormatter; // Dates of the variation's fixed clock, or null for the current time
+    private final int templateNumber; // 1-based number of the template among several of one run, 0 if it is the only one
+
+    /**
+     * Compiles a parsed template.
+     * The document is taken over by the compiled template and pruned to a single batch and transaction.
+     *
+     * @param template          The parsed and normalized template document.
+     * @param fileTypeShortcode The file type shortcode of the template (e.g., "PAIN1V3").
+     */
+    public CompiledTemplate(Document template, String fileTypeShortcode) {
+        this.prototype = template;
+        this.fileTypeShortcode = fileTypeShortcode;
+        this.descriptor = MessageDescriptor.forFileType(fileTypeShortcode);
+
+        // Find the first batch element, which serves as the template for new batches,
+        // and remove all the others.
+        NodeList batchList = template.getElementsByTagName(descriptor.getBatchTagName());
+        if (batchList.getLength() == 0) {
+            throw new RuntimeException("No '" + descriptor.getBatchTagName() + "' (batch) element found in the template. Cannot generate batches.");
+        }
+        Element batch = (Element) batchList.item(0);
+        removeAllButFirst(batchList);
+
+        // Same for the transaction elements within the first batch.
+        NodeList txList = batch.getElementsByTagName(descriptor.getTransactionTagName());
+        Element transaction = (txList.getLength() > 0) ? (Element) txList.item(0) : null;
+        if (transaction == null && !descriptor.isExperimental()) { // CAMT might not have this structure
+            System.err.println("Warning: No '" + descriptor.getTransactionTagName() + "' (transaction) element found in '" + descriptor.getBatchTagName() + "'. Cannot generate transactions within batches.");
+        }
+        removeAllButFirst(txList);
+
+        Element groupHeader = (Element) template.getElementsByTagName("GrpHdr").item(0);
+        if (groupHeader == null) {
+            throw new RuntimeException("No GrpHdr element found in the template.");
+        }
+
+        this.batchPath = pathOf(template, batch);
+        this.transactionPath = (transaction != null) ? pathOf(batch, transaction) : null;
+        this.groupHeaderPath = pathOf(template, groupHeader);
+        this.singleBatchElement = isAncestor(batch, groupHeader);
+
+        Element root = template.getDocumentElement();
+        bindField(Field.CRE_DT_TM, template, root, "CreDtTm", true);
+        bindField(Field.REQD_EXCTN_DT, template, root, "ReqdExctnDt", false);
+        // Settlement date of all transactions of a PACS.008 (it is not allowed in the transactions then)
+        bindField(Field.INTR_BK_STTLM_DT, template, groupHeader, "IntrBkSttlmDt", false);
+        bindField(Field.MSG_ID, template, root, "MsgId", true);
+        if (descriptor.getBatchIdTagName() != null) {
+            bindField(Field.BATCH_ID, batch, batch, descriptor.getBatchIdTagName(), true);
+        }
+        if (transaction != null) {
+            bindField(Field.TX_ID_1, transaction, transaction, descriptor.getTransactionIdTagName1(), false);
+            if (descriptor.getTransactionIdTagName2() != null) {
+                bindField(Field.TX_ID_2, transaction, transaction, descriptor.getTransactionIdTagName2(), false);
+            }
+            if (descriptor.getTransactionIdTagName3() != null) { // For PACS.008 TxId
+                bindField(Field.TX_ID_3, transaction, transaction, descriptor.getTransactionIdTagName3(), false);
+            }
+            bindField(Field.AMOUNT, transaction, transaction, descriptor.getAmountTagName(), false);
+            bindCounterpartyField(Field.COUNTERPARTY_NAME, transaction, "", "Nm");
+            bindCounterpartyField(Field.COUNTERPARTY_IBAN, transaction, "Acct", "IBAN");
+            // BICFI from pain.001.001.09 and pacs.008.001.08 on, BIC before
+            if (!bindCounterpartyField(Field.COUNTERPARTY_BIC, transaction, "Agt", "BICFI")) {
+                bindCounterpartyField(Field.COUNTERPARTY_BIC, transaction, "Agt", "BIC");
+            }
+        }
+        // For PACS messages, counts and sums are only kept in the GrpHdr, not in the 'batch' element itself.
+        if (descriptor.hasBatchTotals()) {
+            bindField(Field.BATCH_NB_OF_TXS, batch, batch, descriptor.getBatchNbOfTxsTagName(), false);
+            bindField(Field.BATCH_CTRL_SUM, batch, batch, descriptor.getBatchCtrlSumTagName(), false);
+        }
+        bindField(Field.GROUP_NB_OF_TXS, template, groupHeader, "NbOfTxs", false);
+        bindField(Field.GROUP_CTRL_SUM, template, groupHeader, "CtrlSum", false);
+        bindField(Field.GROUP_TTL_INTR_BK_STTLM_AMT, template, groupHeader, "TtlIntrBkSttlmAmt", false);
+
+        this.transactionAmounts = parseTransactionAmount(transaction);
+        this.variation = null;
+        this.timestampFormatter = null;
+        this.templateNumber = 0;
+
+        // Touch every node once so that later concurrent reads do not lazily initialise DOM state.
+        warmUp(template);
+    }
+
+    /**
+     * Copy of a compiled template with a variation (or none) and a template number; the prototype and the field
+     * paths are shared.
+     */
+    private CompiledTemplate(CompiledTemplate base, Variation variation, int templateNumber) {
+        this.prototype = base.prototype;
+        this.fileTypeShortcode = base.fileTypeShortcode;
+        this.descriptor = base.descriptor;
+        this.batchPath = base.batchPath;
+        this.transactionPath = base.transactionPath;
+        this.groupHeaderPath = base.groupHeaderPath;
+        this.singleBatchElement = base.singleBatchElement;
+        this.fieldPaths.putAll(base.fieldPaths);
+        this.transactionAmounts = base.transactionAmounts;
+        this.variation = variation;
+        this.timestampFormatter = (variation != null && variation.getClock() != null) ? new TimestampFormatter(variation.getClock()) : null;
+        this.templateNumber = templateNumber;
+        if (variation != null && variation.variesCurrencies() && fieldPaths.containsKey(Field.GROUP_TTL_INTR_BK_STTLM_AMT)) {
+            System.out.println("INFO: TtlIntrBkSttlmAmt is left out of the GrpHdr, the transactions have different currencies.");
+        }
+    }
+
+    /**
+     * Returns this template with its transactions varied as configured. The variation (and its counterparty pool)
+     * is prepared here once; the returned template can be shared by all generation threads like this one.
+     *
+     * @param spec The variation spec, or null for no variation.
+     * @return A template generating varied transactions, or this template if the spec is null.
+     * @throws IllegalArgumentException If the variation cannot be prepared (e.g., an unreadable name dictionary).
+     */
+    public CompiledTemplate withVariation(VariationSpec spec) {
+        return withVariation(spec, 0);
+    }
+
+    /**
+     * Same as withVariation above, for one of several templates generated in the same run. The template number
+     * goes into the file names, so that the copies of the different templates do not get the same name
+     * (e.g., in a seeded run, where the names only depend on the clock and the copy number), and salts the
+     * seeded message IDs and transaction values, which would otherwise be the same for every template.
+     *
+     * @param spec           The variation spec, or null for no variation.
+     * @param templateNumber The 1-based number of the template in the run, or 0 if it is the only template.
+     * @return A template generating varied transactions, or this template if there is neither a spec nor a number.
+     * @throws IllegalArgumentException If the variation cannot be prepared (e.g., an unreadable name dictionary).
+     */
+    public CompiledTemplate withVariation(VariationSpec spec, int templateNumber) {
+        if (templateNumber < 0) {
+            throw new IllegalArgumentException("Template number must not be negative: " + templateNumber);
+        }
+        if (spec == null && templateNumber == 0) {
+            return this;
+        }
+        return new CompiledTemplate(this, (spec != null) ? Variation.create(spec, templateNumber) : null, templateNumber);
+    }
+
+    private static boolean isAncestor(Node ancestor, Node node) {
+        for (Node current = node.getParentNode(); current != null; current = current.getParentNode()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeAllButFirst(NodeList nodeList) {
+        // Iterate backwards to avoid issues with the NodeList changing during removal.
+        for (int i = nodeList.getLength() - 1; i >= 1; i--) {
+            Node node = nodeList.item(i);
+            node.getParentNode().removeChild(node);
+        }
+    }
+
+    /**
+     * Binds a field to the first element with the given tag name within the search element.
+     *
+     * @param field    The field to bind.
+     * @param base     The node the field path starts from (matching the field's scope).
+     * @param search   The element to search within.
+     * @param tagName  The tag name of the field element.
+     * @param required Whether to log a warning if the element is not found.
+     */
+    private void bindField(Field field, Node base, Element search, String tagName, boolean required) {
+        NodeList nodeList = search.getElementsByTagName(tagName);
+        if (nodeList.getLength() > 0) {
+            fieldPaths.put(field, pathOf(base, nodeList.item(0)));
+        } else if (required) {
+            System.err.println("Warning: Element with tag '" + tagName + "' not found in document.");
+        }
+    }
+
+    /**
+     * Binds a field of the transaction's counterparty (e.g., the IBAN in CdtrAcct).
+     *
+     * @param field       The field to bind.
+     * @param transaction The template transaction.
+     * @param suffix      Appended to the counterparty tag name to get the element to search (e.g., "Acct").
+     * @param tagName     The tag name of the field element within it.
+     * @return true if the field was found.
+     */
+    private boolean bindCounterpartyField(Field field, Element transaction, String suffix, String tagName) {
+        Node party = transaction.getElementsByTagName(descriptor.getCounterpartyTagName() + suffix).item(0);
+        if (party == null) {
+            return false;
+        }
+        bindField(field, transaction, (Element) party, tagName, false);
+        return fieldPaths.containsKey(field);
+    }
+
+    /**
+     * Parses the amount of the template transaction once. Every copy of the transaction carries this amount,
+     * so the engines no longer parse it per generated transaction.
+     *
+     * @param transaction The template transaction, or null.
+     * @return The amount of every generated transaction, or null if there is none or it is not a number.
+     */
+    private TransactionAmounts parseTransactionAmount(Element transaction) {
+        int[] amountPath = fieldPaths.get(Field.AMOUNT);
+        if (transaction == null || amountPath == null) {
+            return null;
+        }
+        String amountText = resolve(transaction, amountPath).getTextContent();
+        try {
+            return new ConstantAmounts(new BigDecimal(amountText));
+        } catch (ArithmeticException | NumberFormatException e) {
+            System.err.println("Warning: Could not parse transaction amount for sum calculation: " + amountText + ". Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes the child index path from an ancestor to a node.
+     *
+     * @param ancestor The node the path starts from.
+     * @param node     A descendant of the ancestor.
+     * @return The child indexes to follow from the ancestor to reach the node.
+     */
+    static int[] pathOf(Node ancestor, Node node) {
+        List<Integer> reversed = new ArrayList<>();
+        for (Node current = node; current != ancestor; current = current.getParentNode()) {
+            int index = 0;
+            for (Node sibling = current.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                index++;
+            }
+            reversed.add(index);
+        }
+        int[] path = new int[reversed.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = reversed.get(path.length - 1 - i);
+        }
+        return path;
+    }
+
+    /**
+     * Follows a child index path from a node. Works on the prototype as well as on any clone of it.
+     *
+     * @param base The node the path starts from.
+     * @param path The child indexes to follow.
+     * @return The node at the end of the path.
+     */
+    public static Node resolve(Node base, int[] path) {
+        Node current = base;
+        for (int index : path) {
+            current = current.getFirstChild();
+            for (int i = 0; i < index; i++) {
+                current = current.getNextSibling();
+            }
+        }
+        return current;
+    }
+
+    private static void warmUp(Node node) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                attributes.item(i).getNodeValue();
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            warmUp(child);
+        }
+    }
+
+    /**
+     * @return A deep copy of the prototype document that can be modified freely.
+     */
+    public Document newDocument() {
+        return (Document) prototype.cloneNode(true);
+    }
+
+    /**
+     * Resolves a field within a document, batch or transaction node matching the field's scope.
+     *
+     * @param field The field to resolve.
+     * @param base  The document, batch or transaction node (prototype or clone).
+     * @return The field node, or null if the template does not contain the field.
+     */
+    public Node resolveField(Field field, Node base) {
+        int[] path = fieldPaths.get(field);
+        return (path != null) ? resolve(base, path) : null;
+    }
+
+    /**
+     * @param copyIndex The index of the generated copy, starting at 0.
+     * @return The varied values of the transactions of that copy, or null if the template has no variation.
+     */
+    public TransactionVariation variationForCopy(int copyIndex) {
+        return (variation != null) ? variation.forCopy(copyIndex) : null;
+    }
+
+    /**
+     * @param transactionVariation The variation of the generated copy, or null.
+     * @return The amounts of the copy's transactions: the varied ones if the amounts vary and the template has an
+     * amount, the template amount otherwise (null if the template has none).
+     */
+    public TransactionAmounts getTransactionAmounts(TransactionVariation transactionVariation) {
+        if (transactionVariation != null && transactionVariation.variesAmounts() && fieldPaths.containsKey(Field.AMOUNT)) {
+            return transactionVariation;
+        }
+        return transactionAmounts;
+    }
+
+    /**
+     * @return true if the batch element is the message element holding the GrpHdr (PACS.008, whose transactions
+     * follow the GrpHdr directly). It is then written once, with the transactions of all batches one after another,
+     * instead of being replicated with a GrpHdr per batch.
+     */
+    public boolean isSingleBatchElement() {
+        return singleBatchElement;
+    }
+
+    /**
+     * @param transactionVariation The variation of the generated copy, or null.
+     * @return true if the GrpHdr's TtlIntrBkSttlmAmt (PACS.008) is left out: it is only allowed when every
+     * transaction has its currency, which is no longer the case when the currencies vary.
+     */
+    public boolean omitsTotalInterbankSettlementAmount(TransactionVariation transactionVariation) {
+        return transactionVariation != null && transactionVariation.variesCurrencies();
+    }
+
+    public Document getPrototype() { return prototype; }
+    public String getFileTypeShortcode() { return fileTypeShortcode; }
+    public MessageDescriptor getDescriptor() { return descriptor; }
+    public TransactionAmounts getTransactionAmounts() { return transactionAmounts; }
+    public Variation getVariation() { return variation; }
+    /** @return The formatter of the variation's fixed clock, or null if the dates are the current time. */
+    public TimestampFormatter getTimestampFormatter() { return timestampFormatter; }
+    /** @return The variation's fixed clock, or null if the dates are the current time. */
+    public Clock getFixedClock() { return (variation != null) ? variation.getClock() : null; }
+    /** @return The 1-based number of the template among several generated in one run, 0 if it is the only one. */
+    public int getTemplateNumber() { return templateNumber; }
+    public boolean hasField(Field field) { return fieldPaths.containsKey(field); }
+    public boolean hasTransaction() { return transactionPath != null; }
+
+    public Element getBatch(Document doc) { return (Element) resolve(doc, batchPath); }
+    public Element getGroupHeader(Document doc) { return (Element) resolve(doc, groupHeaderPath); }
+    public Element getTransaction(Element batch) { return (transactionPath != null) ? (Element) resolve(batch, transactionPath) : null; }
+}
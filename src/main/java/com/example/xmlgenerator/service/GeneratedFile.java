@@ -1,23 +1,49 @@
-
-package com.example.xmlgenerator.service;
-
-/**
- * Helper class to hold the generated XML file's name and its content as a byte array.
- */
-public class GeneratedFile { // Made public for access from XmlGeneratorApplication
-    private final String fileName;
-    private final byte[] content;
-
-    public GeneratedFile(String fileName, byte[] content) {
-        this.fileName = fileName;
-        this.content = content;
-    }
-
-    public String getFileName() {
-        return fileName;
-    }
-
-    public byte[] getContent() {
-        return content;
-    }
-}
\ No newline at end of file
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Helper class to hold the generated XML file's name and a handle to its content.
+ * Where the content lives (heap or disk) depends on the OutputSink the file was generated into.
+ */
+public class GeneratedFile { // Made public for access from XmlGeneratorApplication
+    private final String fileName;
+    private final GeneratedContent content;
+
+    public GeneratedFile(String fileName, GeneratedContent content) {
+        this.fileName = fileName;
+        this.content = content;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public GeneratedContent getContent() {
+        return content;
+    }
+
+    public long getLength() {
+        return content.getLength();
+    }
+
+    /**
+     * Copies the content to a stream (e.g., a ZIP entry), which is not closed.
+     *
+     * @param out The destination stream.
+     * @throws IOException If the content cannot be read or the stream cannot be written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        content.writeTo(out);
+    }
+
+    /**
+     * Releases the content once it is no longer needed (deletes a temporary file).
+     */
+    public void discard() {
+        content.discard();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.xmlgenerator.service;
+
+/**
+ * Thrown by a ProgressListener to abort a generation that was cancelled.
+ */
+public class GenerationCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GenerationCancelledException(String message) {
+        super(message);
+    }
+}
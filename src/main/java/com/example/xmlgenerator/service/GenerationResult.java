@@ -1,21 +1,29 @@
-
-package com.example.xmlgenerator.service;
-import java.util.List;
-/**
- * Helper class to hold the result of the XML generation, including files and metadata.
- */
-public class GenerationResult { // Made public for access from XmlGeneratorApplication
-    private final List<GeneratedFile> files;
-    private final String fileTypeShortcode;
-    private final String batchTransactionType;
-
-    public GenerationResult(List<GeneratedFile> files, String fileTypeShortcode, String batchTransactionType) {
-        this.files = files;
-        this.fileTypeShortcode = fileTypeShortcode;
-        this.batchTransactionType = batchTransactionType;
-    }
-
-    public List<GeneratedFile> getFiles() { return files; }
-    public String getFileTypeShortcode() { return fileTypeShortcode; }
-    public String getBatchTransactionType() { return batchTransactionType; }
+
+package com.example.xmlgenerator.service;
+import java.util.List;
+/**
+ * Helper class to hold the result of the XML generation, including files and metadata.
+ */
+public class GenerationResult { // Made public for access from XmlGeneratorApplication
+    private final List<GeneratedFile> files;
+    private final String fileTypeShortcode;
+    private final String batchTransactionType;
+    private final int failedCopies; // Copies that could not be generated; their files are missing from the list
+
+    public GenerationResult(List<GeneratedFile> files, String fileTypeShortcode, String batchTransactionType) {
+        this(files, fileTypeShortcode, batchTransactionType, 0);
+    }
+
+    public GenerationResult(List<GeneratedFile> files, String fileTypeShortcode, String batchTransactionType, int failedCopies) {
+        this.files = files;
+        this.fileTypeShortcode = fileTypeShortcode;
+        this.batchTransactionType = batchTransactionType;
+        this.failedCopies = failedCopies;
+    }
+
+    public List<GeneratedFile> getFiles() { return files; }
+    public String getFileTypeShortcode() { return fileTypeShortcode; }
+    public String getBatchTransactionType() { return batchTransactionType; }
+    /** @return The number of copies that failed (logged when they did); 0 if every requested copy is in getFiles. */
+    public int getFailedCopies() { return failedCopies; }
 }
\ No newline at end of file
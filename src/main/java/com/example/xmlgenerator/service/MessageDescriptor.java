@@ -0,0 +1,89 @@
+package com.example.xmlgenerator.service;
+
+/**
+ * Helper class describing the tag names used for one ISO 20022 message type:
+ * the batch and transaction elements, the ID fields and the amount/sum fields.
+ * Shared by the DOM and the streaming generation engines so both resolve exactly the same nodes.
+ * The descriptors of the supported message types are defined in the MessageTypeRegistry.
+ */
+public class MessageDescriptor {
+    private final String fileTypeShortcode;
+    private final String batchTagName;
+    private final String transactionTagName;
+    private final String batchIdTagName; // Tag name for batch ID (e.g., PmtInfId, RvslPmtInfId)
+    private final String batchNbOfTxsTagName; // Tag name for batch transaction count (e.g., NbOfTxs, OrgnlNbOfTxs)
+    private final String batchCtrlSumTagName; // Tag name for batch control sum (e.g., CtrlSum, OrgnlCtrlSum)
+    private final String transactionIdTagName1;
+    private final String transactionIdTagName2;
+    private final String transactionIdTagName3; // TxId in pacs.008
+    private final String amountTagName;
+    private final String counterpartyTagName; // Party whose name, account and agent are varied (Cdtr or Dbtr)
+    private final boolean batchTotals; // Whether the batch element holds a count and sum besides the GrpHdr
+    private final boolean experimental;
+
+    public MessageDescriptor(String fileTypeShortcode, String batchTagName, String transactionTagName,
+                             String batchIdTagName, String batchNbOfTxsTagName, String batchCtrlSumTagName,
+                             String transactionIdTagName1, String transactionIdTagName2, String transactionIdTagName3,
+                             String amountTagName, String counterpartyTagName, boolean batchTotals, boolean experimental) {
+        this.fileTypeShortcode = fileTypeShortcode;
+        this.batchTagName = batchTagName;
+        this.transactionTagName = transactionTagName;
+        this.batchIdTagName = batchIdTagName;
+        this.batchNbOfTxsTagName = batchNbOfTxsTagName;
+        this.batchCtrlSumTagName = batchCtrlSumTagName;
+        this.transactionIdTagName1 = transactionIdTagName1;
+        this.transactionIdTagName2 = transactionIdTagName2;
+        this.transactionIdTagName3 = transactionIdTagName3;
+        this.amountTagName = amountTagName;
+        this.counterpartyTagName = counterpartyTagName;
+        this.batchTotals = batchTotals;
+        this.experimental = experimental;
+    }
+
+    /**
+     * Resolves the tag names for the given file type shortcode from the MessageTypeRegistry.
+     * Unknown types fall back to the PAIN.001 tag names with a warning.
+     *
+     * @param fileTypeShortcode The shortcode returned by getFileTypeAndVersionShortcode (e.g., "PAIN1V3").
+     * @return The MessageDescriptor for the file type.
+     */
+    public static MessageDescriptor forFileType(String fileTypeShortcode) {
+        return MessageTypeRegistry.getInstance().forFileType(fileTypeShortcode);
+    }
+
+    /**
+     * @return The same tag names for another file type (e.g., an unknown one using the default tag names).
+     */
+    MessageDescriptor withFileTypeShortcode(String otherFileTypeShortcode) {
+        return new MessageDescriptor(otherFileTypeShortcode, batchTagName, transactionTagName, batchIdTagName,
+                batchNbOfTxsTagName, batchCtrlSumTagName, transactionIdTagName1, transactionIdTagName2,
+                transactionIdTagName3, amountTagName, counterpartyTagName, batchTotals, experimental);
+    }
+
+    /**
+     * @return true if each batch element holds its own count and sum (PAIN), false if they are only kept in
+     * the GrpHdr (PACS).
+     */
+    public boolean hasBatchTotals() {
+        return batchTotals;
+    }
+
+    /**
+     * @return true if the generation might not fit the message type (e.g., CAMT.053).
+     */
+    public boolean isExperimental() {
+        return experimental;
+    }
+
+    public String getFileTypeShortcode() { return fileTypeShortcode; }
+    public String getBatchTagName() { return batchTagName; }
+    public String getTransactionTagName() { return transactionTagName; }
+    public String getBatchIdTagName() { return batchIdTagName; }
+    public String getBatchNbOfTxsTagName() { return batchNbOfTxsTagName; }
+    public String getBatchCtrlSumTagName() { return batchCtrlSumTagName; }
+    public String getTransactionIdTagName1() { return transactionIdTagName1; }
+    public String getTransactionIdTagName2() { return transactionIdTagName2; }
+    public String getTransactionIdTagName3() { return transactionIdTagName3; }
+    public String getAmountTagName() { return amountTagName; }
+    public String getCounterpartyTagName() { return counterpartyTagName; }
+}
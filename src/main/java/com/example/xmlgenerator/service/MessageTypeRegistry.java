@@ -0,0 +1,215 @@
+package com.example.xmlgenerator.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The supported ISO 20022 message types and their tag names, loaded from the resource messages/message-types.txt
+ * (see there for the format) and from the file set by -Dxmlgenerator.messageTypes, whose lines add to or replace
+ * the built-in ones. A new message version is supported by adding a line, without a code change.
+ *
+ * The registry is read once; detection (by namespace or message element) and descriptor lookups are map lookups.
+ * Each template then compiles its descriptor into field paths (see CompiledTemplate).
+ */
+public final class MessageTypeRegistry {
+
+    private static final String RESOURCE = "/messages/message-types.txt";
+    private static final String ISO20022_NAMESPACE_PREFIX = "urn:iso:std:iso:20022:tech:xsd:";
+    private static final String NONE = "-";
+    private static final int COLUMNS = 14;
+    // Tag names used for templates of an unknown message type
+    private static final String DEFAULT_FILE_TYPE = "PAIN1V3";
+
+    private static volatile MessageTypeRegistry instance; // Loaded on first use
+
+    private final Map<String, MessageDescriptor> descriptorsByFileType = new LinkedHashMap<>();
+    private final Map<String, String> fileTypesByNamespace = new HashMap<>();
+    private final Map<String, String> fileTypesByElement = new HashMap<>();
+
+    private MessageTypeRegistry() {
+    }
+
+    /**
+     * @return The registry of the built-in message types and those of -Dxmlgenerator.messageTypes.
+     * @throws IllegalStateException If the message types cannot be read or are invalid (on first use).
+     */
+    public static MessageTypeRegistry getInstance() {
+        MessageTypeRegistry registry = instance;
+        if (registry == null) {
+            synchronized (MessageTypeRegistry.class) {
+                registry = instance;
+                if (registry == null) {
+                    registry = load(System.getProperty("xmlgenerator.messageTypes"));
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    private static MessageTypeRegistry load(String file) {
+        MessageTypeRegistry registry = new MessageTypeRegistry();
+        try (InputStream in = MessageTypeRegistry.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + RESOURCE);
+            }
+            registry.read(in, RESOURCE);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not read message types " + RESOURCE + ": " + e.getMessage(), e);
+        }
+        if (file != null && !file.trim().isEmpty()) {
+            try (InputStream in = new FileInputStream(new File(file.trim()))) {
+                registry.read(in, file);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalStateException("Could not read message types " + file + ": " + e.getMessage(), e);
+            }
+            System.out.println("Message types: " + registry.descriptorsByFileType.keySet());
+        }
+        if (!registry.descriptorsByFileType.containsKey(DEFAULT_FILE_TYPE)) {
+            throw new IllegalStateException("The message types do not define the default " + DEFAULT_FILE_TYPE);
+        }
+        return registry;
+    }
+
+    // Adds the message types of a file; a message type defined again replaces the previous definition.
+    private void read(InputStream in, String source) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\\s+");
+            if (columns.length != COLUMNS) {
+                throw new IllegalArgumentException("Line " + lineNumber + " of " + source + " has " + columns.length
+                        + " columns instead of " + COLUMNS + ": " + line);
+            }
+            String fileType = shortcodeOfMessage(columns[0]);
+            if (fileType == null) {
+                throw new IllegalArgumentException("Line " + lineNumber + " of " + source
+                        + ": not a message identifier (e.g., pain.001.001.03): " + columns[0]);
+            }
+            boolean batchTotals = parseChoice(columns[12], "batch", "group", "totals", lineNumber, source);
+            boolean experimental = parseChoice(columns[13], "experimental", "supported", "status", lineNumber, source);
+            descriptorsByFileType.put(fileType, new MessageDescriptor(fileType, columns[2], columns[3],
+                    tagName(columns[4]), columns[5], columns[6], columns[7], tagName(columns[8]), tagName(columns[9]),
+                    columns[10], columns[11], batchTotals, experimental));
+            fileTypesByNamespace.put(ISO20022_NAMESPACE_PREFIX + columns[0], fileType);
+            if (!fileTypesByElement.containsKey(columns[1])) {
+                fileTypesByElement.put(columns[1], fileType);
+            }
+        }
+    }
+
+    private static String tagName(String column) {
+        return NONE.equals(column) ? null : column;
+    }
+
+    // true for the first value, false for the second one
+    private static boolean parseChoice(String column, String whenTrue, String whenFalse, String name, int lineNumber, String source) {
+        if (whenTrue.equals(column) || whenFalse.equals(column)) {
+            return whenTrue.equals(column);
+        }
+        throw new IllegalArgumentException("Line " + lineNumber + " of " + source + ": " + name + " must be "
+                + whenTrue + " or " + whenFalse + ": " + column);
+    }
+
+    /**
+     * Resolves the tag names for the given file type shortcode.
+     * Unknown types fall back to the PAIN.001 tag names with a warning.
+     *
+     * @param fileTypeShortcode The file type shortcode of the template (e.g., "PAIN1V3").
+     * @return The MessageDescriptor for the file type.
+     */
+    public MessageDescriptor forFileType(String fileTypeShortcode) {
+        MessageDescriptor descriptor = descriptorsByFileType.get(fileTypeShortcode);
+        if (descriptor == null) {
+            System.err.println("Warning: Unknown XML file type: " + fileTypeShortcode + ". Using default PAIN.001 tag names. This might lead to errors.");
+            return descriptorsByFileType.get(DEFAULT_FILE_TYPE).withFileTypeShortcode(fileTypeShortcode);
+        }
+        if (descriptor.isExperimental()) {
+            System.err.println("Warning: " + fileTypeShortcode + " template processing is highly specific and current logic might not apply.");
+        }
+        return descriptor;
+    }
+
+    /**
+     * @param namespaceUri The namespace of a message element (e.g., urn:iso:std:iso:20022:tech:xsd:pain.001.001.03).
+     * @return The file type shortcode (e.g., "PAIN1V3"); for a namespace that is not registered, the shortcode
+     * decoded from its last segment, or null if that is no message identifier.
+     */
+    public String fileTypeOfNamespace(String namespaceUri) {
+        String fileType = fileTypesByNamespace.get(namespaceUri);
+        if (fileType != null) {
+            return fileType;
+        }
+        // Example namespace: urn:iso:std:iso:20022:tech:xsd:pain.001.001.05
+        return shortcodeOfMessage(namespaceUri.substring(namespaceUri.lastIndexOf(':') + 1));
+    }
+
+    /**
+     * @param localName The name of a message element without a namespace (e.g., CstmrCdtTrfInitn).
+     * @return The file type shortcode of the first registered message type with this element, or null.
+     */
+    public String fileTypeOfElement(String localName) {
+        return fileTypesByElement.get(localName);
+    }
+
+    /**
+     * @return The registered file type shortcodes, in the order they were defined.
+     */
+    public Set<String> getFileTypes() {
+        return Collections.unmodifiableSet(descriptorsByFileType.keySet());
+    }
+
+    /**
+     * Decodes a message identifier type.major.variant.version (e.g., pain.001.001.03) into its shortcode (PAIN1V3).
+     *
+     * @return The shortcode, or null if the identifier does not have this form.
+     */
+    static String shortcodeOfMessage(String message) {
+        int first = message.indexOf('.');
+        int second = message.indexOf('.', first + 1);
+        int third = message.indexOf('.', second + 1);
+        if (first <= 0 || second < 0 || third < 0) {
+            return null;
+        }
+        int end = message.indexOf('.', third + 1); // Further segments are ignored
+        int major = parseNumber(message, first + 1, second);
+        int version = parseNumber(message, third + 1, (end < 0) ? message.length() : end);
+        if (major < 0 || version < 0) {
+            return null;
+        }
+        return message.substring(0, first).toUpperCase(Locale.ROOT) + major + "V" + version;
+    }
+
+    // The decimal number between from and to, or -1 if it is not one (or is too long to be a message number).
+    private static int parseNumber(String text, int from, int to) {
+        if (from >= to || to - from > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
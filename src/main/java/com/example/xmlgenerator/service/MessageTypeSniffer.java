@@ -0,0 +1,186 @@
+package com.example.xmlgenerator.service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detects the message type of a template from its first few KB, before the template is parsed into a DOM.
+ *
+ * The message type is given by the element below the Document root, e.g. CstmrCdtTrfInitn in the namespace
+ * urn:iso:std:iso:20022:tech:xsd:pain.001.001.03 (PAIN1V3). The sniffer reads up to that element with StAX and
+ * resolves its namespace through the MessageTypeRegistry; other ISO 20022 namespaces are decoded from their last
+ * segment (type.major.variant.version), and the element name is the fallback without a namespace.
+ * Uploads that are not XML, have no message element, or are neither a known message nor below a Document root
+ * are rejected without parsing them in full.
+ */
+public final class MessageTypeSniffer {
+
+    /** Maximum number of bytes read to find the message element. */
+    public static final int SNIFF_LIMIT = 8 * 1024;
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final String ISO20022_ROOT = "Document";
+
+    // Shared input factory. Reader creation is synchronized as factories are not guaranteed to be thread-safe.
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        // Templates have no DTD; uploads must not make the sniffer fetch or expand anything
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private MessageTypeSniffer() {
+    }
+
+    /**
+     * Reads the beginning of a template up to its message element, at most SNIFF_LIMIT bytes.
+     * To parse the template afterwards, mark the stream before and reset it after (e.g. a BufferedInputStream).
+     *
+     * @param in The template.
+     * @return The file type shortcode (e.g., "PAIN1V3", or UNKNOWN for an unrecognized message), or null if the
+     * message element is not within the first SNIFF_LIMIT bytes.
+     * @throws IllegalArgumentException If the template is not well-formed XML, has no message element, or is an
+     *                                  unknown message below another root element than Document.
+     * @throws IOException              If the template cannot be read.
+     */
+    public static String sniff(InputStream in) throws IOException {
+        LimitedInputStream limited = new LimitedInputStream(in, SNIFF_LIMIT);
+        XMLStreamReader reader;
+        try {
+            synchronized (INPUT_FACTORY) {
+                reader = INPUT_FACTORY.createXMLStreamReader(limited);
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("The template is not XML: " + e.getMessage());
+        }
+        try {
+            String rootName = null;
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        rootName = reader.getLocalName();
+                    } else {
+                        String shortcode = shortcodeOf(reader.getNamespaceURI(), reader.getLocalName());
+                        if (UNKNOWN.equals(shortcode) && !ISO20022_ROOT.equals(rootName)) {
+                            throw new IllegalArgumentException("The template is not an ISO 20022 message (root element "
+                                    + rootName + ", expected " + ISO20022_ROOT + ").");
+                        }
+                        return shortcode;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+                    break;
+                }
+            }
+            if (limited.isLimitReached()) {
+                return null;
+            }
+            throw new IllegalArgumentException((rootName == null) ? "The template has no root element."
+                    : "The template has no message element below its root element " + rootName + ".");
+        } catch (XMLStreamException e) {
+            if (limited.isLimitReached()) {
+                return null; // Cut off by the limit, not necessarily malformed
+            }
+            throw new IllegalArgumentException("The template is not well-formed XML: " + e.getMessage());
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Nothing held beyond the stream, which the caller owns
+            }
+        }
+    }
+
+    /**
+     * Resolves the message type of a message element.
+     *
+     * @param namespaceUri The namespace of the message element, or null.
+     * @param localName    The name of the message element (e.g., CstmrCdtTrfInitn).
+     * @return The file type shortcode (e.g., "PAIN1V3"), or UNKNOWN.
+     */
+    public static String shortcodeOf(String namespaceUri, String localName) {
+        MessageTypeRegistry registry = MessageTypeRegistry.getInstance();
+        String shortcode = (namespaceUri != null && !namespaceUri.isEmpty()) ? registry.fileTypeOfNamespace(namespaceUri) : null;
+        if (shortcode == null) {
+            // Fallback if the namespace is missing or not an ISO 20022 one, infer from the element name
+            shortcode = registry.fileTypeOfElement(localName);
+        }
+        return (shortcode != null) ? shortcode : UNKNOWN;
+    }
+
+    /**
+     * Ends the stream after a number of bytes and tells whether that happened.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private int remaining;
+        private boolean limitReached;
+
+        LimitedInputStream(InputStream in, int limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                limitReached = true;
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                limitReached = true;
+                return -1;
+            }
+            int read = in.read(b, off, Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            return 0; // The parser does not skip; not skipping keeps the limit exact
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the underlying stream
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        boolean isLimitReached() {
+            return limitReached;
+        }
+    }
+}
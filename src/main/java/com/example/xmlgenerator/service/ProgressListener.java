@@ -0,0 +1,25 @@
+package com.example.xmlgenerator.service;
+
+/**
+ * Receives progress from the streaming engine while a document is written.
+ * Implementations must be thread-safe: in parallel mode, chunks report from several pool threads.
+ * A listener may abort the generation by throwing a GenerationCancelledException.
+ */
+public interface ProgressListener {
+
+    /**
+     * A listener that ignores all progress.
+     */
+    ProgressListener NONE = new ProgressListener() {
+        @Override
+        public void transactionsWritten(int count) {
+        }
+    };
+
+    /**
+     * Called after a group of transactions was rendered.
+     *
+     * @param count The number of transactions rendered since the previous call.
+     */
+    void transactionsWritten(int count);
+}
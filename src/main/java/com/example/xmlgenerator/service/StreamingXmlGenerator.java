@@ -0,0 +1,802 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.amount.ControlSum;
+import com.example.xmlgenerator.amount.TransactionAmounts;
+import com.example.xmlgenerator.service.CompiledTemplate.Field;
+import com.example.xmlgenerator.variation.TransactionVariation;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Streaming generation engine.
+ * The batch and transaction fragments of a compiled template are captured once; every copy is then
+ * written straight to an OutputStream through an XMLStreamWriter, so the output is never built as a DOM
+ * and memory stays flat regardless of the number of transactions.
+ * The NbOfTxs/CtrlSum/ID values written are the same as the ones produced by the DOM path in XmlProcessorService.
+ * A generator writes the copy it was created for: with a variation, each copy has its own transaction values.
+ * A single large document can also be split across a ForkJoin pool with writeParallel, which only holds the
+ * chunks in flight, so its memory stays bounded as well.
+ * When the batch element holds the GrpHdr (PACS.008), it is written once and the transactions of all batches
+ * follow each other in it, so a message of millions of transactions keeps a single GrpHdr.
+ */
+public class StreamingXmlGenerator {
+
+    // Indentation used for every nesting level, matching the DOM path's 4-space indent.
+    private static final String INDENT = "    ";
+
+    // Maximum number of transactions rendered as one chunk in parallel mode.
+    private static final int TRANSACTIONS_PER_CHUNK = 10000;
+
+    // Chunks rendered or held per pool thread ahead of the one being written in parallel mode.
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+
+    // Number of transactions between two progress reports.
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    // Shared output factory. Writer creation is synchronized as factories are not guaranteed to be thread-safe.
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final Document template; // The compiled prototype, never modified so it can be shared by all copies.
+    private final MessageDescriptor descriptor;
+    private final Element batchFragment; // First batch element, written once per batch
+    private final Element transactionFragment; // First transaction element of the batch fragment, written once per transaction
+    private final Map<Node, Field> fields = new IdentityHashMap<>();
+    private final TransactionVariation variation; // Varied values of the copy's transactions, or null
+    private final TimestampFormatter timestampFormatter; // Fixed clock of a seeded variation, or null
+    private final TransactionAmounts amounts; // Amount of every transaction, or null if the fragment has none
+    private final int amountScale;
+    private final Element currencyElement; // Amount element whose Ccy attribute varies, or null
+    private final int transactionDepth; // Nesting depth of the transaction fragment, used to indent rendered chunks
+    private final boolean singleBatchElement; // Whether the batch fragment is written once for all batches
+    private final Node omittedElement; // Template element left out of the output, or null
+
+    /**
+     * Captures the batch and transaction fragments of a compiled template and binds every mutable field to its node.
+     * Writes the first copy (see the constructor below).
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     */
+    public StreamingXmlGenerator(CompiledTemplate compiledTemplate) {
+        this(compiledTemplate, 0);
+    }
+
+    /**
+     * Same as the constructor above, for one copy of the output. Without a variation all copies are the same,
+     * apart from their IDs and timestamps, and a generator can write any number of them.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param copyIndex        The index of the copy, which selects its varied transaction values.
+     */
+    public StreamingXmlGenerator(CompiledTemplate compiledTemplate, int copyIndex) {
+        this.template = compiledTemplate.getPrototype();
+        this.descriptor = compiledTemplate.getDescriptor();
+        this.batchFragment = compiledTemplate.getBatch(template);
+        this.transactionFragment = compiledTemplate.getTransaction(batchFragment);
+        this.variation = compiledTemplate.variationForCopy(copyIndex);
+        this.timestampFormatter = compiledTemplate.getTimestampFormatter();
+        this.amounts = compiledTemplate.getTransactionAmounts(variation);
+        this.amountScale = (amounts != null) ? amounts.getScale() : 0;
+        this.currencyElement = (variation != null && variation.variesCurrencies() && transactionFragment != null)
+                ? (Element) compiledTemplate.resolveField(Field.AMOUNT, transactionFragment) : null;
+        int depth = -1; // The document element is at depth 0
+        for (Node node = transactionFragment; node != null && node != template; node = node.getParentNode()) {
+            depth++;
+        }
+        this.transactionDepth = depth;
+        this.singleBatchElement = compiledTemplate.isSingleBatchElement();
+        this.omittedElement = compiledTemplate.omitsTotalInterbankSettlementAmount(variation)
+                ? compiledTemplate.resolveField(Field.GROUP_TTL_INTR_BK_STTLM_AMT, template) : null;
+
+        // Fields are declared in update order, so a later field wins when two resolve to the same node.
+        for (Field field : Field.values()) {
+            Node base;
+            switch (field.getScope()) {
+                case BATCH:
+                    base = batchFragment;
+                    break;
+                case TRANSACTION:
+                    base = transactionFragment;
+                    break;
+                default:
+                    base = template;
+                    break;
+            }
+            Node node = (base != null) ? compiledTemplate.resolveField(field, base) : null;
+            if (node != null && !keepsTemplateText(field)) {
+                fields.put(node, field);
+            }
+        }
+    }
+
+    /**
+     * @return true if the field is written as it is in the template, so it does not need binding:
+     * a constant amount, or a counterparty field that does not vary.
+     */
+    private boolean keepsTemplateText(Field field) {
+        switch (field) {
+            case AMOUNT:
+                return amounts == null || amounts.isConstant();
+            case COUNTERPARTY_NAME:
+                return variation == null || !variation.variesNames();
+            case COUNTERPARTY_IBAN:
+                return variation == null || !variation.variesIbans();
+            case COUNTERPARTY_BIC:
+                return variation == null || !variation.variesBics();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The varied values of the copy's transactions, or null if the template has no variation.
+     */
+    TransactionVariation getVariation() {
+        return variation;
+    }
+
+    /**
+     * @return The formatter of the variation's fixed clock, or null if the copy is dated with the current time.
+     */
+    TimestampFormatter getTimestampFormatter() {
+        return timestampFormatter;
+    }
+
+    /**
+     * Writes one generated XML document to the given stream.
+     * The stream is flushed but not closed.
+     *
+     * @param out             The stream to write the UTF-8 encoded XML to.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param newMsgId        The message ID of this document; batch and transaction IDs are derived from it.
+     * @param currentDate     The value for ReqdExctnDt (yyyy-MM-dd).
+     * @param currentDateTime The value for CreDtTm (yyyy-MM-dd'T'HH:mm:ss).
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public void write(OutputStream out, int numTransactions, int numBatches, String newMsgId,
+                      String currentDate, String currentDateTime) throws XMLStreamException {
+        write(out, numTransactions, numBatches, newMsgId, currentDate, currentDateTime, ProgressListener.NONE);
+    }
+
+    /**
+     * Writes one generated XML document to the given stream, reporting the rendered transactions.
+     * The stream is flushed but not closed.
+     *
+     * @param out             The stream to write the UTF-8 encoded XML to.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param newMsgId        The message ID of this document; batch and transaction IDs are derived from it.
+     * @param currentDate     The value for ReqdExctnDt (yyyy-MM-dd).
+     * @param currentDateTime The value for CreDtTm (yyyy-MM-dd'T'HH:mm:ss).
+     * @param progress        Notified every PROGRESS_INTERVAL transactions; may abort the generation.
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public void write(OutputStream out, int numTransactions, int numBatches, String newMsgId,
+                      String currentDate, String currentDateTime, ProgressListener progress) throws XMLStreamException {
+        RenderState state = new RenderState(numTransactions, numBatches, newMsgId, currentDate, currentDateTime);
+        state.progress = progress;
+        // The amount of every transaction is known without rendering it, so all counts and sums are known up front.
+        ControlSum[] batchCtrlSums = new ControlSum[numBatches];
+        for (int i = 0; i < numBatches; i++) {
+            batchCtrlSums[i] = controlSum(i, 0, state.batchTxnCounts[i]);
+        }
+        state.setControlSums(batchCtrlSums);
+        writeDocument(out, state);
+    }
+
+    /**
+     * Writes one generated XML document to the given stream, rendering its transactions on a ForkJoin pool.
+     * Batches, and large batches split into transaction ranges, are rendered as independent chunks into their
+     * own byte segments. The control sums are first summed per chunk on the pool and added up per batch, so
+     * the document is written from the start while the chunks are rendered, and each chunk is copied to the stream as soon as it and the ones
+     * before it are done. At most CHUNKS_IN_FLIGHT_PER_THREAD chunks per pool thread are rendered or waiting
+     * at a time, so memory does not grow with the document.
+     * The stream is flushed but not closed.
+     *
+     * @param out             The stream to write the UTF-8 encoded XML to.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param newMsgId        The message ID of this document; batch and transaction IDs are derived from it.
+     * @param currentDate     The value for ReqdExctnDt (yyyy-MM-dd).
+     * @param currentDateTime The value for CreDtTm (yyyy-MM-dd'T'HH:mm:ss).
+     * @param pool            The pool to render the chunks on.
+     * @throws XMLStreamException If the XML cannot be written.
+     * @throws IOException        If a rendered segment cannot be written to the stream.
+     */
+    public void writeParallel(OutputStream out, int numTransactions, int numBatches, String newMsgId,
+                              String currentDate, String currentDateTime, ForkJoinPool pool) throws XMLStreamException, IOException {
+        writeParallel(out, numTransactions, numBatches, newMsgId, currentDate, currentDateTime, pool, ProgressListener.NONE);
+    }
+
+    /**
+     * Same as writeParallel above, reporting the rendered transactions.
+     * The listener is called from the pool threads as chunks progress.
+     *
+     * @param out             The stream to write the UTF-8 encoded XML to.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param newMsgId        The message ID of this document; batch and transaction IDs are derived from it.
+     * @param currentDate     The value for ReqdExctnDt (yyyy-MM-dd).
+     * @param currentDateTime The value for CreDtTm (yyyy-MM-dd'T'HH:mm:ss).
+     * @param pool            The pool to render the chunks on.
+     * @param progress        Notified every PROGRESS_INTERVAL transactions; may abort the generation.
+     * @throws XMLStreamException If the XML cannot be written.
+     * @throws IOException        If a rendered segment cannot be written to the stream.
+     */
+    public void writeParallel(OutputStream out, int numTransactions, int numBatches, String newMsgId,
+                              String currentDate, String currentDateTime, ForkJoinPool pool,
+                              ProgressListener progress) throws XMLStreamException, IOException {
+        RenderState state = new RenderState(numTransactions, numBatches, newMsgId, currentDate, currentDateTime);
+        state.progress = progress;
+
+        // Split every batch into chunks of at most TRANSACTIONS_PER_CHUNK transactions, in document order.
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < numBatches; i++) {
+            for (int from = 0; from < state.batchTxnCounts[i]; from += TRANSACTIONS_PER_CHUNK) {
+                chunks.add(new Chunk(i, from, Math.min(from + TRANSACTIONS_PER_CHUNK, state.batchTxnCounts[i])));
+            }
+        }
+        state.setControlSums(parallelControlSums(chunks, numBatches, state.batchTxnCounts, pool));
+
+        ChunkPipeline pipeline = (transactionFragment != null) ? new ChunkPipeline(chunks, state, pool) : null;
+        state.chunks = pipeline;
+        state.out = out;
+        try {
+            writeDocument(out, state);
+        } finally {
+            if (pipeline != null) {
+                pipeline.cancel(); // Chunks still in flight after a failure
+            }
+        }
+    }
+
+    /**
+     * Computes the batch control sums before the header is written. Varied amounts are summed per chunk on the
+     * pool and the partial sums are added up per batch; constant amounts only need one multiplication per batch.
+     */
+    private ControlSum[] parallelControlSums(List<Chunk> chunks, int numBatches, int[] batchTxnCounts, ForkJoinPool pool) {
+        ControlSum[] batchCtrlSums = new ControlSum[numBatches];
+        if (amounts == null || amounts.isConstant()) {
+            for (int i = 0; i < numBatches; i++) {
+                batchCtrlSums[i] = controlSum(i, 0, batchTxnCounts[i]);
+            }
+            return batchCtrlSums;
+        }
+        for (int i = 0; i < numBatches; i++) {
+            batchCtrlSums[i] = new ControlSum(amountScale);
+        }
+        if (!chunks.isEmpty()) {
+            pool.invoke(new SumChunksTask(chunks, 0, chunks.size()));
+        }
+        for (Chunk chunk : chunks) {
+            batchCtrlSums[chunk.batchIndex].add(chunk.ctrlSum);
+            chunk.ctrlSum = null;
+        }
+        return batchCtrlSums;
+    }
+
+    /**
+     * Writes the whole document around the batch and transaction fragments.
+     */
+    private void writeDocument(OutputStream out, RenderState state) throws XMLStreamException {
+        XMLStreamWriter writer = createWriter(out);
+        writer.writeStartDocument("UTF-8", "1.0");
+        for (Node child = template.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeNode(writer, child, 0, state);
+        }
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close(); // Does not close the underlying stream
+    }
+
+    private static XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException {
+        synchronized (OUTPUT_FACTORY) {
+            return OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        }
+    }
+
+    /**
+     * Renders a range of transactions of one batch into a byte segment, with the same indentation
+     * as if they were written in place.
+     */
+    private void renderChunk(Chunk chunk, RenderState documentState) throws XMLStreamException {
+        RenderState state = new RenderState(documentState.numTransactions, documentState.numBatches,
+                documentState.newMsgId, documentState.currentDate, documentState.currentDateTime);
+        state.batchIndex = chunk.batchIndex;
+        state.batchIdPrefix = state.newMsgId + "B" + (chunk.batchIndex + 1);
+
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        XMLStreamWriter writer = createWriter(segment);
+        for (int j = chunk.from; j < chunk.to; j++) {
+            state.transactionIndex = j;
+            state.transactionId = state.batchIdPrefix + "T" + (j + 1);
+            writeElement(writer, transactionFragment, transactionDepth, state);
+            reportProgress(documentState.progress, j - chunk.from + 1, chunk.to - chunk.from);
+        }
+        writer.flush();
+        writer.close();
+
+        chunk.segment = segment.toByteArray();
+    }
+
+    /**
+     * Writes a template node and its subtree. The batch and transaction fragments are expanded
+     * into the requested number of batches and transactions.
+     */
+    private void writeNode(XMLStreamWriter writer, Node node, int depth, RenderState state) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                if (node == omittedElement) {
+                    break;
+                } else if (node == batchFragment) {
+                    writeBatches(writer, depth, state);
+                } else if (node == transactionFragment) {
+                    writeTransactions(writer, depth, state);
+                } else {
+                    writeElement(writer, (Element) node, depth, state);
+                }
+                break;
+            case Node.TEXT_NODE:
+                String text = node.getNodeValue();
+                // Whitespace between elements is replaced by our own indentation.
+                if (!text.trim().isEmpty()) {
+                    writer.writeCharacters(text);
+                }
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writeIndent(writer, depth);
+                writer.writeComment(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writeIndent(writer, depth);
+                writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                break;
+            default:
+                // Document type and entity nodes are not carried over to the output.
+                break;
+        }
+    }
+
+    private void writeBatches(XMLStreamWriter writer, int depth, RenderState state) throws XMLStreamException {
+        // A batch element holding the GrpHdr is written once; writeTransactions adds the transactions of every batch
+        int batchElements = singleBatchElement ? 1 : state.numBatches;
+        for (int i = 0; i < batchElements; i++) {
+            selectBatch(state, i);
+            writeElement(writer, batchFragment, depth, state);
+        }
+        state.batchIndex = -1;
+    }
+
+    private void selectBatch(RenderState state, int batchIndex) {
+        state.batchIndex = batchIndex;
+        state.batchTxnCount = state.batchTxnCounts[batchIndex];
+        state.batchIdPrefix = state.newMsgId + "B" + (batchIndex + 1);
+    }
+
+    private void writeTransactions(XMLStreamWriter writer, int depth, RenderState state) throws XMLStreamException {
+        if (!singleBatchElement || state.numTransactions == 0) {
+            writeBatchTransactions(writer, depth, state);
+            return;
+        }
+        // The transactions of all batches, one batch after another; empty batches have none
+        for (int i = 0; i < state.numBatches; i++) {
+            if (state.batchTxnCounts[i] > 0) {
+                selectBatch(state, i);
+                writeBatchTransactions(writer, depth, state);
+            }
+        }
+        selectBatch(state, 0); // The rest of the batch element
+    }
+
+    private void writeBatchTransactions(XMLStreamWriter writer, int depth, RenderState state) throws XMLStreamException {
+        if (state.batchTxnCount == 0) {
+            // The DOM path clones batches from the first one, so an empty batch keeps
+            // the first transaction of the first batch (or the template one if that batch is empty too).
+            state.transactionId = state.numTransactions > 0 ? state.newMsgId + "B1T1" : null;
+            writeElement(writer, transactionFragment, depth, state);
+            state.transactionId = null;
+            return;
+        }
+        if (state.chunks != null) {
+            // Transactions are rendered in parallel: close any pending start tag and copy the rendered chunks.
+            writer.writeCharacters("");
+            writer.flush();
+            try {
+                state.chunks.writeBatch(state.batchIndex, state.out);
+            } catch (IOException e) {
+                throw new XMLStreamException("Could not write rendered transactions: " + e.getMessage(), e);
+            }
+            return;
+        }
+        for (int j = 0; j < state.batchTxnCount; j++) {
+            state.transactionIndex = j;
+            state.transactionId = state.batchIdPrefix + "T" + (j + 1);
+            writeElement(writer, transactionFragment, depth, state);
+            reportProgress(state.progress, j + 1, state.batchTxnCount);
+        }
+        state.transactionIndex = -1;
+        state.transactionId = null;
+    }
+
+    /**
+     * Reports progress every PROGRESS_INTERVAL transactions of a run, and at its end.
+     *
+     * @param progress The listener to notify.
+     * @param written  The number of transactions of the run written so far.
+     * @param total    The total number of transactions of the run.
+     */
+    private static void reportProgress(ProgressListener progress, int written, int total) {
+        if (written % PROGRESS_INTERVAL == 0) {
+            progress.transactionsWritten(PROGRESS_INTERVAL);
+        } else if (written == total) {
+            progress.transactionsWritten(written % PROGRESS_INTERVAL);
+        }
+    }
+
+    private void writeElement(XMLStreamWriter writer, Element element, int depth, RenderState state) throws XMLStreamException {
+        writeIndent(writer, depth);
+
+        String value = resolveFieldValue(element, state);
+        if (value != null) {
+            // Same as setTextContent in the DOM path: the field's content is replaced by the value.
+            writeStartTag(writer, element, false, state);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+            return;
+        }
+
+        if (!element.hasChildNodes()) {
+            writeStartTag(writer, element, true, state);
+            return;
+        }
+
+        writeStartTag(writer, element, false, state);
+        boolean blockContent = false;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            short type = child.getNodeType();
+            if (type == Node.ELEMENT_NODE || type == Node.COMMENT_NODE || type == Node.PROCESSING_INSTRUCTION_NODE) {
+                blockContent = true;
+            }
+            writeNode(writer, child, depth + 1, state);
+        }
+        if (blockContent) {
+            writeIndent(writer, depth);
+        }
+        writer.writeEndElement();
+    }
+
+    private void writeStartTag(XMLStreamWriter writer, Element element, boolean empty, RenderState state) throws XMLStreamException {
+        String localName = element.getLocalName();
+        if (localName == null) {
+            // Element created without namespace awareness
+            if (empty) {
+                writer.writeEmptyElement(element.getTagName());
+            } else {
+                writer.writeStartElement(element.getTagName());
+            }
+        } else {
+            String prefix = element.getPrefix() != null ? element.getPrefix() : XMLConstants.DEFAULT_NS_PREFIX;
+            String namespaceUri = element.getNamespaceURI() != null ? element.getNamespaceURI() : XMLConstants.NULL_NS_URI;
+            if (empty) {
+                writer.writeEmptyElement(prefix, localName, namespaceUri);
+            } else {
+                writer.writeStartElement(prefix, localName, namespaceUri);
+            }
+        }
+
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+                // Namespace declarations are written as they appear in the template.
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attr.getNodeName())) {
+                    writer.writeDefaultNamespace(attr.getValue());
+                } else {
+                    writer.writeNamespace(attr.getLocalName(), attr.getValue());
+                }
+            } else if (attr.getNamespaceURI() != null) {
+                String attrPrefix = attr.getPrefix() != null ? attr.getPrefix() : XMLConstants.DEFAULT_NS_PREFIX;
+                writer.writeAttribute(attrPrefix, attr.getNamespaceURI(), attr.getLocalName(), attr.getValue());
+            } else if (element == currencyElement && state.transactionIndex >= 0 && "Ccy".equals(attr.getNodeName())) {
+                writer.writeAttribute("Ccy", variation.getCurrency(state.batchIndex, state.transactionIndex));
+            } else {
+                writer.writeAttribute(attr.getNodeName(), attr.getValue());
+            }
+        }
+    }
+
+    private static void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder(1 + depth * INDENT.length());
+        sb.append('\n');
+        for (int i = 0; i < depth; i++) {
+            sb.append(INDENT);
+        }
+        writer.writeCharacters(sb.toString());
+    }
+
+    /**
+     * Resolves the value to write for a field node in the current batch/transaction.
+     *
+     * @return The new text content, or null if the node is not a field or keeps its template content.
+     */
+    private String resolveFieldValue(Element element, RenderState state) {
+        Field field = fields.get(element);
+        if (field == null) {
+            return null;
+        }
+        switch (field) {
+            case CRE_DT_TM:
+                return state.currentDateTime;
+            case REQD_EXCTN_DT:
+            case INTR_BK_STTLM_DT:
+                return state.currentDate;
+            case MSG_ID:
+                return state.newMsgId;
+            case BATCH_ID:
+                return state.batchIdPrefix;
+            case TX_ID_1:
+            case TX_ID_2:
+                return state.transactionId;
+            case TX_ID_3:
+                return state.transactionId != null ? state.transactionId + "X" : null;
+            case AMOUNT:
+            case COUNTERPARTY_NAME:
+            case COUNTERPARTY_IBAN:
+            case COUNTERPARTY_BIC:
+                // Only bound when they vary; the template transaction kept in an empty batch keeps its values
+                if (state.transactionIndex < 0) {
+                    return null;
+                }
+                return variedValue(field, state.batchIndex, state.transactionIndex);
+            case BATCH_NB_OF_TXS:
+                return String.valueOf(state.batchTxnCount);
+            case BATCH_CTRL_SUM:
+                return state.batchCtrlSums[state.batchIndex].toPlainString();
+            case GROUP_NB_OF_TXS:
+            case GROUP_CTRL_SUM:
+            case GROUP_TTL_INTR_BK_STTLM_AMT:
+                // Written once: a batch element holding the group header is not replicated (see writeBatches).
+                return field == Field.GROUP_NB_OF_TXS ? String.valueOf(state.numTransactions)
+                        : state.totalCtrlSum.toPlainString();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The varied value of a transaction field.
+     */
+    private String variedValue(Field field, int batchIndex, int transactionIndex) {
+        switch (field) {
+            case AMOUNT:
+                return variation.getAmountText(batchIndex, transactionIndex);
+            case COUNTERPARTY_NAME:
+                return variation.getName(batchIndex, transactionIndex);
+            case COUNTERPARTY_IBAN:
+                return variation.getIban(batchIndex, transactionIndex);
+            default:
+                return variation.getBic(batchIndex, transactionIndex);
+        }
+    }
+
+    /**
+     * @return The control sum of a range of transactions of one batch.
+     */
+    private ControlSum controlSum(int batchIndex, int from, int to) {
+        ControlSum sum = new ControlSum(amountScale);
+        if (amounts != null) {
+            sum.addRange(amounts, batchIndex, from, to);
+        }
+        return sum;
+    }
+
+    /**
+     * A range of transactions of one batch, rendered independently of the rest of the document.
+     */
+    private static class Chunk {
+        final int batchIndex;
+        final int from; // First transaction index within the batch (inclusive)
+        final int to; // Last transaction index within the batch (exclusive)
+        ControlSum ctrlSum; // Partial control sum of the chunk, until it is added to its batch
+        byte[] segment; // Rendered transactions, until they are written
+
+        Chunk(int batchIndex, int from, int to) {
+            this.batchIndex = batchIndex;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Renders the chunks of a document on the pool and hands them out in document order. Only a window of chunks
+     * ahead of the one being written is submitted; each written chunk lets the next one be submitted.
+     */
+    private class ChunkPipeline {
+        private final List<Chunk> chunks;
+        private final RenderState state;
+        private final ForkJoinPool pool;
+        private final ForkJoinTask<?>[] window; // Tasks of the chunks in flight, by chunk index modulo the window size
+        private int next; // Index of the next chunk to write
+        private int submitted; // Number of chunks submitted so far
+
+        ChunkPipeline(List<Chunk> chunks, RenderState state, ForkJoinPool pool) {
+            this.chunks = chunks;
+            this.state = state;
+            this.pool = pool;
+            this.window = new ForkJoinTask<?>[Math.max(1, Math.min(chunks.size(), pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_THREAD))];
+            submit();
+        }
+
+        // Fills the window with the next chunks.
+        private void submit() {
+            while (submitted < chunks.size() && submitted - next < window.length) {
+                window[submitted % window.length] = pool.submit(new RenderChunkTask(chunks.get(submitted), state));
+                submitted++;
+            }
+        }
+
+        /**
+         * Waits for the chunks of a batch in turn and copies each one to the stream.
+         */
+        void writeBatch(int batchIndex, OutputStream out) throws XMLStreamException, IOException {
+            while (next < chunks.size() && chunks.get(next).batchIndex == batchIndex) {
+                try {
+                    window[next % window.length].join();
+                } catch (ChunkRenderingException e) {
+                    throw e.getCause();
+                }
+                window[next % window.length] = null;
+                Chunk chunk = chunks.get(next++);
+                submit(); // Keeps the pool busy while the chunk is copied
+                out.write(chunk.segment);
+                chunk.segment = null;
+            }
+        }
+
+        /**
+         * Cancels the chunks that were submitted but not written, e.g. after a failure.
+         */
+        void cancel() {
+            for (int i = 0; i < window.length; i++) {
+                if (window[i] != null) {
+                    window[i].cancel(false);
+                    window[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders one chunk on the pool.
+     */
+    private class RenderChunkTask extends RecursiveAction {
+        private final Chunk chunk;
+        private final RenderState state;
+
+        RenderChunkTask(Chunk chunk, RenderState state) {
+            this.chunk = chunk;
+            this.state = state;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                renderChunk(chunk, state);
+            } catch (XMLStreamException e) {
+                throw new ChunkRenderingException(e);
+            }
+        }
+    }
+
+    /**
+     * Sums the amounts of a range of chunks on the pool, splitting it in halves down to single chunks.
+     */
+    private class SumChunksTask extends RecursiveAction {
+        private final List<Chunk> chunks;
+        private final int from; // First chunk index (inclusive)
+        private final int to; // Last chunk index (exclusive)
+
+        SumChunksTask(List<Chunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Chunk chunk = chunks.get(from);
+                chunk.ctrlSum = controlSum(chunk.batchIndex, chunk.from, chunk.to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SumChunksTask(chunks, from, middle), new SumChunksTask(chunks, middle, to));
+        }
+    }
+
+    /**
+     * Carries a rendering failure out of the ForkJoin pool.
+     */
+    private static class ChunkRenderingException extends RuntimeException {
+        ChunkRenderingException(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+
+    /**
+     * Per-document rendering state: the requested counts, the generated IDs and the current batch/transaction.
+     */
+    private static class RenderState {
+        final int numTransactions;
+        final int numBatches;
+        final String newMsgId;
+        final String currentDate;
+        final String currentDateTime;
+        final int[] batchTxnCounts;
+        ControlSum[] batchCtrlSums;
+        ControlSum totalCtrlSum;
+        ChunkPipeline chunks; // Transactions rendered in parallel; null when writing sequentially
+        OutputStream out; // Stream the rendered chunks are copied to
+        ProgressListener progress = ProgressListener.NONE;
+        int batchIndex = -1;
+        int batchTxnCount;
+        String batchIdPrefix;
+        int transactionIndex = -1; // Index of the transaction within its batch while it is written
+        String transactionId;
+
+        RenderState(int numTransactions, int numBatches, String newMsgId, String currentDate, String currentDateTime) {
+            this.numTransactions = numTransactions;
+            this.numBatches = numBatches;
+            this.newMsgId = newMsgId;
+            this.currentDate = currentDate;
+            this.currentDateTime = currentDateTime;
+
+            // Calculate the base number of transactions per batch and any remaining transactions
+            // to distribute evenly among the first few batches.
+            this.batchTxnCounts = new int[numBatches];
+            int txnsPerBatch = numTransactions / numBatches;
+            int remainingTxns = numTransactions % numBatches;
+            for (int i = 0; i < numBatches; i++) {
+                batchTxnCounts[i] = txnsPerBatch + (i < remainingTxns ? 1 : 0);
+            }
+        }
+
+        /**
+         * Sets the batch control sums and derives the group control sum from them.
+         */
+        void setControlSums(ControlSum[] batchCtrlSums) {
+            this.batchCtrlSums = batchCtrlSums;
+            ControlSum total = new ControlSum(batchCtrlSums.length > 0 ? batchCtrlSums[0].getScale() : 0);
+            for (ControlSum batchCtrlSum : batchCtrlSums) {
+                total.add(batchCtrlSum);
+            }
+            this.totalCtrlSum = total;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.xmlgenerator.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Thread-safe replacement for the shared SimpleDateFormat instances used for dates, CreDtTm, message IDs
+ * and file names.
+ *
+ * All formats only change once per second, so the strings of the current second are rendered once into
+ * char buffers and shared by every caller until the second changes; only the millisecond file name
+ * timestamp is rendered per call, from the cached digits of its second. The cached second is an immutable object
+ * published through a volatile field, so concurrent callers never see a half-written value.
+ */
+public class TimestampFormatter {
+
+    private static final TimestampFormatter SYSTEM_DEFAULT = new TimestampFormatter(Clock.systemDefaultZone());
+
+    private final Clock clock;
+    private volatile Second current; // Strings of the most recently formatted second
+
+    /**
+     * @param clock The clock to read the time from; its zone is used for formatting.
+     */
+    public TimestampFormatter(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The shared formatter using the system clock and the default time zone.
+     */
+    public static TimestampFormatter systemDefault() {
+        return SYSTEM_DEFAULT;
+    }
+
+    /**
+     * @return The current date as yyyy-MM-dd (e.g., ReqdExctnDt).
+     */
+    public String isoDate() {
+        return secondOf(clock.millis()).isoDate;
+    }
+
+    /**
+     * @return The current date and time as yyyy-MM-dd'T'HH:mm:ss (e.g., CreDtTm).
+     */
+    public String isoDateTime() {
+        return secondOf(clock.millis()).isoDateTime;
+    }
+
+    /**
+     * @return The current date and time as yyyyMMddHHmmss (e.g., MsgId prefix, ZIP file names).
+     */
+    public String compactDateTime() {
+        return secondOf(clock.millis()).compactDateTime;
+    }
+
+    /**
+     * @return The current date and time as yyyyMMddHHmmssSSS (e.g., generated file names).
+     */
+    public String compactDateTimeMillis() {
+        long millis = clock.millis();
+        char[] buffer = new char[17]; // yyyyMMddHHmmssSSS; copied into the String anyway, so not worth reusing
+        System.arraycopy(secondOf(millis).compactChars, 0, buffer, 0, 14);
+        writeDigits(buffer, 14, 3, (int) Math.floorMod(millis, 1000L));
+        return new String(buffer);
+    }
+
+    private Second secondOf(long millis) {
+        long epochSecond = Math.floorDiv(millis, 1000L);
+        Second second = current;
+        if (second == null || second.epochSecond != epochSecond) {
+            // Racing threads may both render the new second; the results are identical, either one may win.
+            second = new Second(epochSecond, clock.getZone());
+            current = second;
+        }
+        return second;
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int width, int value) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * The formatted strings of one second.
+     */
+    private static final class Second {
+        final long epochSecond;
+        final char[] compactChars; // yyyyMMddHHmmss
+        final String compactDateTime;
+        final String isoDateTime;
+        final String isoDate;
+
+        Second(long epochSecond, ZoneId zone) {
+            this.epochSecond = epochSecond;
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, zone.getRules().getOffset(instant));
+
+            char[] compact = new char[14];
+            writeDigits(compact, 0, 4, time.getYear());
+            writeDigits(compact, 4, 2, time.getMonthValue());
+            writeDigits(compact, 6, 2, time.getDayOfMonth());
+            writeDigits(compact, 8, 2, time.getHour());
+            writeDigits(compact, 10, 2, time.getMinute());
+            writeDigits(compact, 12, 2, time.getSecond());
+
+            char[] iso = new char[19];
+            System.arraycopy(compact, 0, iso, 0, 4);
+            iso[4] = '-';
+            System.arraycopy(compact, 4, iso, 5, 2);
+            iso[7] = '-';
+            System.arraycopy(compact, 6, iso, 8, 2);
+            iso[10] = 'T';
+            System.arraycopy(compact, 8, iso, 11, 2);
+            iso[13] = ':';
+            System.arraycopy(compact, 10, iso, 14, 2);
+            iso[16] = ':';
+            System.arraycopy(compact, 12, iso, 17, 2);
+
+            this.compactChars = compact;
+            this.compactDateTime = new String(compact);
+            this.isoDateTime = new String(iso);
+            this.isoDate = new String(iso, 0, 10);
+        }
+    }
+}
@@ -2,33 +2,45 @@
 // Located at: src/main/java/com/example/xmlgenerator/service/XmlProcessorService.java
 package com.example.xmlgenerator.service;
 
+import com.example.xmlgenerator.amount.ControlSum;
+import com.example.xmlgenerator.amount.TransactionAmounts;
+import com.example.xmlgenerator.archive.ArchiveWriter;
+import com.example.xmlgenerator.id.IdGenerator;
+import com.example.xmlgenerator.id.IdGenerators;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+import com.example.xmlgenerator.service.CompiledTemplate.Field;
+import com.example.xmlgenerator.variation.TransactionVariation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 
@@ -41,21 +53,46 @@ import java.util.concurrent.Future;
  */
 public class XmlProcessorService {
 
-    // Random number generator for unique IDs
-    private static final Random RANDOM = new Random();
-    // Date format for yyyy-MM-dd (for execution date)
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-    // Date format for yyyyMMddHHmmss (for message IDs and other IDs, without hyphens/colons)
-    private static final SimpleDateFormat MSG_ID_DATE_FORMAT = new SimpleDateFormat("yyyyMMddHHmmss");
-    // New Date format for CreDtTm: YYYY-MM-DDTHH:MM:SS (ISO 8601 format)
-    private static final SimpleDateFormat CRE_DT_TM_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-    // New Date format for file naming convention: YYYYMMDDHHmmssSSS
-    private static final SimpleDateFormat FILE_NAME_TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+    // Source of unique message IDs, selected with -Dxmlgenerator.idGenerator (see IdGenerators)
+    private final IdGenerator idGenerator;
+    // Thread-safe formatter for execution dates (yyyy-MM-dd), CreDtTm (yyyy-MM-dd'T'HH:mm:ss),
+    // message IDs (yyyyMMddHHmmss) and file names (yyyyMMddHHmmssSSS)
+    private final TimestampFormatter timestampFormatter = TimestampFormatter.systemDefault();
+    // Serializer for the DOM engine, reusing one Transformer per thread
+    private final XmlSerializer xmlSerializer = new XmlSerializer(Integer.getInteger("xmlgenerator.indent", 4));
+    // Buffer between the XML writer and an archive entry when streaming straight into an archive.
+    private static final int ARCHIVE_ENTRY_BUFFER_SIZE = 64 * 1024;
 
     // ExecutorService for managing a pool of threads for concurrent file generation.
     // The number of threads is set to the number of available processors for optimal performance.
     private final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
+    // Copies of one generation submitted to the pool at a time (see runCopyTasks). Enough to keep every
+    // thread busy for a single generation, while a generation started later only waits for this many copies
+    // of each running one instead of all of them.
+    private final int copiesInFlight = Math.max(1, Integer.getInteger("xmlgenerator.copiesInFlight",
+            Runtime.getRuntime().availableProcessors()));
+
+    // ForkJoinPool used to split a single large document across all cores (parallel streaming mode).
+    private final ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Creates the service with the ID generator selected by the system properties.
+     */
+    public XmlProcessorService() {
+        this(IdGenerators.fromSystemProperties());
+    }
+
+    /**
+     * Creates the service with a specific ID generator.
+     *
+     * @param idGenerator The source of message IDs.
+     */
+    public XmlProcessorService(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+        MessageTypeRegistry.getInstance(); // Reports invalid -Dxmlgenerator.messageTypes at startup, not on the first upload
+    }
+
     /**
      * Generates multiple XML files based on the provided template and parameters.
      * Each copy of the generated file is processed in a separate thread to improve performance.
@@ -74,297 +111,589 @@ public class XmlProcessorService {
      */
     public GenerationResult generateXmlFiles(InputStream templateInputStream, int numTransactions, int numBatches, int numCopies)
             throws IOException, ParserConfigurationException, SAXException, TransformerException, InterruptedException {
+        // Parse and compile the template once; every copy is generated against the compiled plan.
+        return generateXmlFiles(compileTemplate(templateInputStream), numTransactions, numBatches, numCopies);
+    }
 
-        // Use DocumentBuilderFactory to create a DocumentBuilder for parsing XML.
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        // Set namespace aware to true to correctly handle XML namespaces (e.g., for pain.001.001.03)
-        dbFactory.setNamespaceAware(true);
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+    /**
+     * Generates multiple XML files from an already compiled template.
+     * Each copy of the generated file is processed in a separate thread to improve performance.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws InterruptedException If the current thread is interrupted while waiting for tasks to complete.
+     */
+    public GenerationResult generateXmlFiles(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies)
+            throws InterruptedException {
+        return generateXmlFiles(compiledTemplate, numTransactions, numBatches, numCopies, HeapOutputSink.getInstance());
+    }
 
-        // Parse the template file once into a Document object.
-        Document templateDoc = dBuilder.parse(templateInputStream);
-        // Normalize the document to remove empty text nodes and combine adjacent text nodes.
-        templateDoc.getDocumentElement().normalize();
+    /**
+     * Generates multiple XML files from an already compiled template into an output sink (e.g., straight to disk).
+     * Each copy of the generated file is processed in a separate thread to improve performance.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param outputSink       Where the content of the generated files goes.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws InterruptedException If the current thread is interrupted while waiting for tasks to complete.
+     */
+    public GenerationResult generateXmlFiles(final CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                             final OutputSink outputSink) throws InterruptedException {
 
-        // Determine file type shortcode and batch/transaction type once from the template
-        final String fileTypeShortcode = getFileTypeAndVersionShortcode(templateDoc);
+        // File type shortcode was determined once when compiling the template
+        final String fileTypeShortcode = compiledTemplate.getFileTypeShortcode();
         final String batchTransactionType = getBatchTransactionType(numTransactions, numBatches, 1); 
 
-        // List to hold Callable tasks, each representing the generation of one XML file copy.
-        List<Callable<GeneratedFile>> tasks = new ArrayList<>();
-        
-        // Create a task for each copy requested by the user.
-        for (int i = 0; i < numCopies; i++) {
-            final int copyIndex = i; // Final variable for use in anonymous inner class
-            // Clone the original template document for each copy to ensure independent modification.
-            // Deep clone (true) is essential to copy all child nodes and attributes.
-            final Document currentTemplateDoc = (Document) templateDoc.cloneNode(true);
-            
-            // Generate a unique timestamp for each file copy for the filename
-            final String fileTimestamp = FILE_NAME_TIMESTAMP_FORMAT.format(new Date());
-
-            // Construct the file name for the current copy using the new naming convention.
-            // Format: <FileFormat>_<Target>_<TimeStamp>_F<Suffix>.xml (e.g., PAIN1V3_SDMC_20250721123456789_F1.xml)
-            final String fileName = fileTypeShortcode + "_" + batchTransactionType + "_" + fileTimestamp + "_F" + (copyIndex + 1) + ".xml";
-            
-            // Add a new Callable task to the list.
-            // This Callable will process the XML and return a GeneratedFile object.
-            tasks.add(new Callable<GeneratedFile>() {
-                public GeneratedFile call() throws Exception {
-                    // Process the cloned XML document with the specified parameters.
-                    processSingleXmlDocument(currentTemplateDoc, numTransactions, numBatches);
-                    // Convert the modified XML document to a byte array.
-                    byte[] content = xmlDocumentToBytes(currentTemplateDoc);
-                    return new GeneratedFile(fileName, content); // Return GeneratedFile object
+        // Creates the task of each copy requested by the user, as the copy's turn comes.
+        CopyTaskFactory tasks = new CopyTaskFactory() {
+            @Override
+            public Callable<GeneratedFile> newTask(final int copyIndex) {
+                // Construct the file name for the current copy, with a unique timestamp for each copy.
+                final String fileName = newXmlFileName(compiledTemplate, batchTransactionType, copyIndex + 1);
+
+                // This Callable will process the XML and return a GeneratedFile object.
+                return new Callable<GeneratedFile>() {
+                    public GeneratedFile call() throws Exception {
+                        // Clone the compiled prototype for this copy to ensure independent modification.
+                        Document currentTemplateDoc = compiledTemplate.newDocument();
+                        // Process the cloned XML document with the specified parameters.
+                        processSingleXmlDocument(currentTemplateDoc, compiledTemplate, compiledTemplate.variationForCopy(copyIndex),
+                                numTransactions, numBatches);
+                        // Write the modified XML document to the output sink.
+                        SinkOutputStream out = outputSink.open(fileName);
+                        try {
+                            xmlSerializer.serialize(currentTemplateDoc, out);
+                            return new GeneratedFile(fileName, out.finish()); // Return GeneratedFile object
+                        } finally {
+                            out.close(); // Releases a partial file if serializing failed
+                        }
+                    }
+                };
+            }
+        };
+
+        // Execute the tasks in the thread pool, a window of copies at a time, and wait for their completion.
+        return runCopyTasks(tasks, numCopies, fileTypeShortcode, batchTransactionType);
+    }
+
+    /**
+     * Generates multiple XML files with the streaming engine.
+     * The template is parsed once; each copy is written straight to its output through an XMLStreamWriter
+     * instead of being built as a DOM first, so memory no longer grows with the number of transactions.
+     *
+     * @param templateInputStream InputStream of the template XML file.
+     * @param numTransactions     Total number of transactions to generate across all batches.
+     * @param numBatches          Total number of batches to divide transactions into.
+     * @param numCopies           Number of copies of the generated file.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws IOException                  If an I/O error occurs during file operations.
+     * @throws ParserConfigurationException If a DocumentBuilder cannot be created.
+     * @throws SAXException                 If any parse errors occur during XML parsing.
+     * @throws InterruptedException         If the current thread is interrupted while waiting for tasks to complete.
+     */
+    public GenerationResult generateXmlFilesStreaming(InputStream templateInputStream, int numTransactions, int numBatches, int numCopies)
+            throws IOException, ParserConfigurationException, SAXException, InterruptedException {
+        return generateXmlFilesStreaming(compileTemplate(templateInputStream), numTransactions, numBatches, numCopies);
+    }
+
+    /**
+     * Generates multiple XML files from an already compiled template with the streaming engine.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws InterruptedException If the current thread is interrupted while waiting for tasks to complete.
+     */
+    public GenerationResult generateXmlFilesStreaming(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies)
+            throws InterruptedException {
+        return generateXmlFilesStreaming(compiledTemplate, numTransactions, numBatches, numCopies, HeapOutputSink.getInstance());
+    }
+
+    /**
+     * Generates multiple XML files from an already compiled template with the streaming engine into an output sink.
+     * With a file based sink, no file is ever held on the heap, so single files can exceed 2 GB.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param outputSink       Where the content of the generated files goes.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws InterruptedException If the current thread is interrupted while waiting for tasks to complete.
+     */
+    public GenerationResult generateXmlFilesStreaming(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                                      final OutputSink outputSink) throws InterruptedException {
+
+        final String fileTypeShortcode = compiledTemplate.getFileTypeShortcode();
+        final String batchTransactionType = getBatchTransactionType(numTransactions, numBatches, 1);
+
+        // Creates the task of each copy, as the copy's turn comes.
+        CopyTaskFactory tasks = new CopyTaskFactory() {
+            @Override
+            public Callable<GeneratedFile> newTask(final int copyIndex) {
+                final String fileName = newXmlFileName(compiledTemplate, batchTransactionType, copyIndex + 1);
+
+                return new Callable<GeneratedFile>() {
+                    public GeneratedFile call() throws Exception {
+                        // Captures the fragments of the compiled template, with the transaction values of this copy.
+                        StreamingXmlGenerator generator = new StreamingXmlGenerator(compiledTemplate, copyIndex);
+                        SinkOutputStream out = outputSink.open(fileName);
+                        try {
+                            writeStreamingCopy(generator, out, numTransactions, numBatches);
+                            return new GeneratedFile(fileName, out.finish());
+                        } finally {
+                            out.close();
+                        }
+                    }
+                };
+            }
+        };
+
+        // Execute the tasks in the thread pool, a window of copies at a time, and wait for their completion.
+        return runCopyTasks(tasks, numCopies, fileTypeShortcode, batchTransactionType);
+    }
+
+    /**
+     * Creates the task generating one copy.
+     */
+    private interface CopyTaskFactory {
+        Callable<GeneratedFile> newTask(int copyIndex);
+    }
+
+    /**
+     * Runs the copy tasks of one generation on the shared pool, keeping at most copiesInFlight of them submitted:
+     * the next copy is submitted as one completes. The pool's queue is first come, first served, so submitting
+     * all copies at once would make a generation admitted later wait for every copy of the earlier ones; with
+     * the window it waits for at most copiesInFlight copies of each, and only that many futures exist at a time.
+     *
+     * A copy that failed is logged and counted in the result (see GenerationResult.getFailedCopies), so that
+     * the caller can tell a partial result from a complete one.
+     *
+     * @param tasks                Creates the task of each copy.
+     * @param numCopies            Number of copies.
+     * @param fileTypeShortcode    The file type shortcode of the template.
+     * @param batchTransactionType The batch/transaction type of the files.
+     * @return The files of the copies that were generated, in copy order, and the number of copies that failed.
+     * @throws InterruptedException If the current thread is interrupted while waiting for a task. The copies in
+     *                              flight are cancelled and the finished ones discarded.
+     */
+    private GenerationResult runCopyTasks(CopyTaskFactory tasks, int numCopies, String fileTypeShortcode,
+                                          String batchTransactionType) throws InterruptedException {
+        CompletionService<GeneratedFile> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<GeneratedFile>, Integer> inFlight = new HashMap<>(); // Copy index of each submitted task
+        GeneratedFile[] files = new GeneratedFile[numCopies];
+        int failedCopies = 0;
+        int submitted = 0;
+        try {
+            while (submitted < numCopies || !inFlight.isEmpty()) {
+                while (submitted < numCopies && inFlight.size() < copiesInFlight) {
+                    inFlight.put(completionService.submit(tasks.newTask(submitted)), submitted);
+                    submitted++;
+                }
+                Future<GeneratedFile> done = completionService.take();
+                int copyIndex = inFlight.remove(done);
+                try {
+                    files[copyIndex] = done.get();
+                } catch (ExecutionException | CancellationException e) {
+                    failedCopies++;
+                    Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                    System.err.println("Error: Copy " + (copyIndex + 1) + " of the " + fileTypeShortcode + " template could not be generated: " + cause);
                 }
-            });
+            }
+        } catch (InterruptedException e) {
+            for (Future<GeneratedFile> future : inFlight.keySet()) {
+                future.cancel(true);
+            }
+            for (GeneratedFile file : files) {
+                if (file != null) {
+                    file.discard(); // The caller never sees them
+                }
+            }
+            throw e;
         }
 
-        // Execute all tasks in the thread pool and wait for their completion.
-        List<Future<GeneratedFile>> futures = executorService.invokeAll(tasks);
+        List<GeneratedFile> generatedFiles = new ArrayList<>(numCopies - failedCopies);
+        for (GeneratedFile file : files) {
+            if (file != null) {
+                generatedFiles.add(file);
+            }
+        }
+        return new GenerationResult(generatedFiles, fileTypeShortcode, batchTransactionType, failedCopies);
+    }
+
+    /**
+     * Generates multiple XML files with the streaming engine, splitting each document across all cores.
+     * Unlike the other modes, which run one copy per thread, copies are generated one after another and the
+     * batches and transaction ranges of each copy are rendered in parallel. This keeps every core busy when a
+     * single very large file is requested.
+     *
+     * @param templateInputStream InputStream of the template XML file.
+     * @param numTransactions     Total number of transactions to generate across all batches.
+     * @param numBatches          Total number of batches to divide transactions into.
+     * @param numCopies           Number of copies of the generated file.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws IOException                  If an I/O error occurs during file operations.
+     * @throws ParserConfigurationException If a DocumentBuilder cannot be created.
+     * @throws SAXException                 If any parse errors occur during XML parsing.
+     * @throws XMLStreamException           If the XML cannot be written.
+     */
+    public GenerationResult generateXmlFilesParallel(InputStream templateInputStream, int numTransactions, int numBatches, int numCopies)
+            throws IOException, ParserConfigurationException, SAXException, XMLStreamException {
+        return generateXmlFilesParallel(compileTemplate(templateInputStream), numTransactions, numBatches, numCopies, HeapOutputSink.getInstance());
+    }
+
+    /**
+     * Generates multiple XML files from an already compiled template with the parallel streaming engine into
+     * an output sink.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param outputSink       Where the content of the generated files goes.
+     * @return A GenerationResult object containing the list of GeneratedFile objects, file type, and batch type.
+     * @throws IOException        If the output sink cannot be written.
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public GenerationResult generateXmlFilesParallel(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                                     OutputSink outputSink) throws IOException, XMLStreamException {
+        String fileTypeShortcode = compiledTemplate.getFileTypeShortcode();
+        String batchTransactionType = getBatchTransactionType(numTransactions, numBatches, 1);
 
-        // Retrieve results from futures and add to the list of generated file contents.
         List<GeneratedFile> generatedFiles = new ArrayList<>();
-        for (Future<GeneratedFile> future : futures) {
-            try {
-                generatedFiles.add(future.get()); // Get the GeneratedFile object result from each completed task
-            } catch (Exception e) {
-                System.err.println("Error retrieving generated file content from task: " + e.getMessage());
-                // Handle exceptions from individual tasks if necessary
+        boolean completed = false;
+        try {
+            for (int i = 0; i < numCopies; i++) {
+                String fileName = newXmlFileName(compiledTemplate, batchTransactionType, i + 1);
+                SinkOutputStream out = outputSink.open(fileName);
+                try {
+                    writeParallelCopy(new StreamingXmlGenerator(compiledTemplate, i), out, numTransactions, numBatches);
+                    generatedFiles.add(new GeneratedFile(fileName, out.finish()));
+                } finally {
+                    out.close();
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                for (GeneratedFile generatedFile : generatedFiles) {
+                    generatedFile.discard(); // The caller never sees the copies finished before the failure
+                }
             }
         }
-        return new GenerationResult(generatedFiles, fileTypeShortcode, batchTransactionType); // Return the GenerationResult object
+        return new GenerationResult(generatedFiles, fileTypeShortcode, batchTransactionType);
     }
 
     /**
-     * Processes a single XML document: updates dates, message IDs, control sums,
-     * and replicates batch and transaction elements according to the specified counts.
+     * Generates the XML files of a compiled template and writes them as entries of an archive, one copy
+     * after another. Each copy is written straight into its entry by the streaming engine, so nothing is
+     * buffered beyond the current chunk (tar formats spool each entry first, see TarArchiveWriter) and memory
+     * does not depend on the size of the output.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param parallel         Whether to render each copy across all cores (see generateXmlFilesParallel).
+     * @param archive          The archive to add the entries to. It is not finished.
+     * @throws IOException        If the archive cannot be written.
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public void writeXmlFilesToArchive(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                       boolean parallel, ArchiveWriter archive) throws IOException, XMLStreamException {
+        writeXmlFilesToArchive(compiledTemplate, numTransactions, numBatches, numCopies, parallel, archive, ProgressListener.NONE);
+    }
+
+    /**
+     * Same as writeXmlFilesToArchive above, reporting the rendered transactions of all copies to a listener,
+     * which may abort the generation by throwing a GenerationCancelledException.
+     *
+     * @param compiledTemplate The compiled template to generate from.
+     * @param numTransactions  Total number of transactions to generate across all batches.
+     * @param numBatches       Total number of batches to divide transactions into.
+     * @param numCopies        Number of copies of the generated file.
+     * @param parallel         Whether to render each copy across all cores (see generateXmlFilesParallel).
+     * @param archive          The archive to add the entries to. It is not finished.
+     * @param progress         The listener to report rendered transactions to.
+     * @throws IOException        If the archive cannot be written.
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public void writeXmlFilesToArchive(CompiledTemplate compiledTemplate, int numTransactions, int numBatches, int numCopies,
+                                       boolean parallel, ArchiveWriter archive, ProgressListener progress) throws IOException, XMLStreamException {
+        String fileTypeShortcode = compiledTemplate.getFileTypeShortcode();
+        String batchTransactionType = getBatchTransactionType(numTransactions, numBatches, 1);
+
+        for (int i = 0; i < numCopies; i++) {
+            StreamingXmlGenerator generator = new StreamingXmlGenerator(compiledTemplate, i);
+            String fileName = newXmlFileName(compiledTemplate, batchTransactionType, i + 1);
+            // The XML writer issues many tiny writes, which are very slow to compress one by one.
+            BufferedOutputStream entryOut = new BufferedOutputStream(archive.openEntry(fileName), ARCHIVE_ENTRY_BUFFER_SIZE);
+            if (parallel) {
+                writeParallelCopy(generator, entryOut, numTransactions, numBatches, progress);
+            } else {
+                writeStreamingCopy(generator, entryOut, numTransactions, numBatches, progress);
+            }
+            entryOut.close(); // Completes the entry, not the archive
+        }
+    }
+
+    /**
+     * Parses a template and compiles it into an immutable generation plan.
+     * The message type, the batch/transaction anchors and the paths of all mutable fields are resolved
+     * here once, instead of once per generated copy.
+     *
+     * @param templateInputStream InputStream of the template XML file.
+     * @return The CompiledTemplate, which can be shared by any number of generation threads.
+     * @throws IOException                  If an I/O error occurs while reading the template.
+     * @throws ParserConfigurationException If a DocumentBuilder cannot be created.
+     * @throws SAXException                 If any parse errors occur during XML parsing.
+     * @throws IllegalArgumentException     If the beginning of the template is not well-formed XML or has no message
+     *                                      element (see MessageTypeSniffer).
+     */
+    public CompiledTemplate compileTemplate(InputStream templateInputStream)
+            throws IOException, ParserConfigurationException, SAXException {
+        // Use DocumentBuilderFactory to create a DocumentBuilder for parsing XML.
+        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+        // Set namespace aware to true to correctly handle XML namespaces (e.g., for pain.001.001.03)
+        dbFactory.setNamespaceAware(true);
+        // Build the full tree up front: a deferred DOM expands lazily on read, which is not safe
+        // once the compiled template is shared between threads.
+        dbFactory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+
+        // Detect the XML type (pain, pacs, camt) from the first few KB, so that an upload that is not a
+        // template is rejected before it is parsed in full.
+        InputStream in = new BufferedInputStream(templateInputStream, MessageTypeSniffer.SNIFF_LIMIT);
+        in.mark(MessageTypeSniffer.SNIFF_LIMIT);
+        String sniffedShortcode = MessageTypeSniffer.sniff(in);
+        in.reset();
+
+        // Parse the template file once into a Document object.
+        Document templateDoc = dBuilder.parse(in);
+        // Normalize the document to remove empty text nodes and combine adjacent text nodes.
+        templateDoc.getDocumentElement().normalize();
+
+        // The message element was beyond the sniffed bytes (e.g. a long comment before it): detect from the DOM
+        String fileTypeShortcode = (sniffedShortcode != null) ? sniffedShortcode : getFileTypeAndVersionShortcode(templateDoc);
+        System.out.println("Detected XML file type: " + fileTypeShortcode); // Log the detected type.
+        return new CompiledTemplate(templateDoc, fileTypeShortcode);
+    }
+
+    /**
+     * Writes one generated copy to the given stream with fresh dates and message ID.
      *
-     * @param doc             The XML Document to process.
+     * @param generator       The streaming generator of the copy.
+     * @param out             The stream to write to. It is flushed but not closed.
      * @param numTransactions Total number of transactions to be generated in this document.
      * @param numBatches      Total number of batches to be generated in this document.
-     * @throws Exception If any error occurs during XML manipulation (e.g., element not found).
+     * @throws XMLStreamException If the XML cannot be written.
      */
-    private void processSingleXmlDocument(Document doc, int numTransactions, int numBatches) throws Exception {
-        // 1. Update Creation Date/Time and Requested Execution Date to current date/time.
-        updateDates(doc);
+    public void writeStreamingCopy(StreamingXmlGenerator generator, OutputStream out, int numTransactions, int numBatches)
+            throws XMLStreamException {
+        writeStreamingCopy(generator, out, numTransactions, numBatches, ProgressListener.NONE);
+    }
 
-        // 2. Detect XML Type (pain, pacs, camt) based on the root element's local name.
-        String fileTypeShortcode = getFileTypeAndVersionShortcode(doc);
-        System.out.println("Detected XML file type: " + fileTypeShortcode); // Log the detected type.
+    /**
+     * Writes one generated copy to the given stream with fresh dates and message ID, reporting progress.
+     *
+     * @param generator       The streaming generator of the copy.
+     * @param out             The stream to write to. It is flushed but not closed.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param progress        The listener to report rendered transactions to.
+     * @throws XMLStreamException If the XML cannot be written.
+     */
+    public void writeStreamingCopy(StreamingXmlGenerator generator, OutputStream out, int numTransactions, int numBatches,
+                                   ProgressListener progress) throws XMLStreamException {
+        TimestampFormatter timestamps = timestampsOf(generator.getTimestampFormatter());
+        String currentDate = timestamps.isoDate();
+        String currentDateTime = timestamps.isoDateTime();
+        generator.write(out, numTransactions, numBatches, messageIdOf(generator.getVariation()), currentDate, currentDateTime, progress);
+    }
 
-        // 3. Update the main Message ID (MsgId) in the Group Header.
-        String newMsgId = generateNewMsgId(); // Declared here
-
-        updateElementTextContent(doc, "MsgId", newMsgId);
-
-        // Determine tag names based on file type
-        String batchTagName;
-        String transactionTagName;
-        String batchIdTagName; // New: Tag name for batch ID (e.g., PmtInfId, RvslPmtInfId)
-        String batchNbOfTxsTagName; // New: Tag name for batch transaction count (e.g., NbOfTxs, OrgnlNbOfTxs)
-        String batchCtrlSumTagName; // New: Tag name for batch control sum (e.g., CtrlSum, OrgnlCtrlSum)
-        String transactionIdTagName1 = "EndToEndId"; // Common for pain.001, pain.008
-        String transactionIdTagName2 = "InstrId"; // Common for pain.001
-        String transactionIdTagName3 = null; // Added for TxId in pacs.008
-        String amountTagName = "InstdAmt"; // Common amount tag
-
-        switch (fileTypeShortcode) {
-            case "PAIN1V3":
-            case "PAIN1V9":
-                // Covers Pain1v3_2, Pain1v3_3 if they resolve to PAIN1V3 or PAIN1V9 from namespace
-                batchTagName = "PmtInf";
-                transactionTagName = "CdtTrfTxInf";
-                batchIdTagName = "PmtInfId";
-                batchNbOfTxsTagName = "NbOfTxs";
-                batchCtrlSumTagName = "CtrlSum";
-                transactionIdTagName1 = "EndToEndId";
-                transactionIdTagName2 = "InstrId";
-                amountTagName = "InstdAmt";
-                break;
-            case "PAIN7V2":
-            case "PAIN7V9": // Added support for Pain7v9
-                batchTagName = "OrgnlPmtInfAndRvsl";
-                transactionTagName = "TxInf";
-                batchIdTagName = "RvslPmtInfId";
-                batchNbOfTxsTagName = "OrgnlNbOfTxs";
-                batchCtrlSumTagName = "OrgnlCtrlSum";
-                transactionIdTagName1 = "RvslId";
-                transactionIdTagName2 = "OrgnlInstrId";
-                amountTagName = "OrgnlInstdAmt";
-                break;
-            case "PAIN8V2":
-            case "PAIN8V8": // Added support for pain8v8_8 (assuming it resolves to PAIN8V8)
-                // Covers pain8v2_2, pain8v2_3 if they resolve to PAIN8V2 from namespace
-                batchTagName = "PmtInf";
-                transactionTagName = "DrctDbtTxInf";
-                batchIdTagName = "PmtInfId";
-                batchNbOfTxsTagName = "NbOfTxs";
-                batchCtrlSumTagName = "CtrlSum";
-                transactionIdTagName1 = "EndToEndId";
-                transactionIdTagName2 = null;
-                amountTagName = "InstdAmt";
-                break;
-            case "PACS8V2":
-            case "PACS8V8": // Added support for PACS 8v8
-                batchTagName = "FIToFICstmrCdtTrf";
-                transactionTagName = "CdtTrfTxInf";
-                batchIdTagName = null;
-                batchNbOfTxsTagName = "NbOfTxs";
-                batchCtrlSumTagName = "CtrlSum";
-                transactionIdTagName1 = "EndToEndId";
-                transactionIdTagName2 = "InstrId";
-                transactionIdTagName3 = "TxId";
-                amountTagName = "IntrBkSttlmAmt";
-                System.out.println("INFO: Processing PACS message. Batch replication logic will be handled differently.");
-                break;
-            case "CAMT53V2":
-                batchTagName = "Stmt";
-                transactionTagName = "Ntry";
-                batchIdTagName = "Id";
-                batchNbOfTxsTagName = "NbOfTxs";
-                batchCtrlSumTagName = "TtlNtries";
-                System.err.println("Warning: CAMT53V2 template processing is highly specific and current logic might not apply.");
-                break;
-            default:
-                batchTagName = "PmtInf";
-                transactionTagName = "CdtTrfTxInf";
-                batchIdTagName = "PmtInfId";
-                batchNbOfTxsTagName = "NbOfTxs";
-                batchCtrlSumTagName = "CtrlSum";
-                transactionIdTagName1 = "EndToEndId";
-                transactionIdTagName2 = "InstrId";
-                amountTagName = "InstdAmt";
-                System.err.println("Warning: Unknown XML file type: " + fileTypeShortcode + ". Using default PAIN.001 tag names. This might lead to errors.");
-                break;
-        }
+    /**
+     * Writes one generated copy to the given stream, rendering its transactions on all cores.
+     *
+     * @param generator       The streaming generator of the copy.
+     * @param out             The stream to write to. It is flushed but not closed.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @throws XMLStreamException If the XML cannot be written.
+     * @throws IOException        If the output cannot be written.
+     */
+    public void writeParallelCopy(StreamingXmlGenerator generator, OutputStream out, int numTransactions, int numBatches)
+            throws XMLStreamException, IOException {
+        writeParallelCopy(generator, out, numTransactions, numBatches, ProgressListener.NONE);
+    }
 
+    /**
+     * Writes one generated copy to the given stream, rendering its transactions on all cores and reporting progress.
+     *
+     * @param generator       The streaming generator of the copy.
+     * @param out             The stream to write to. It is flushed but not closed.
+     * @param numTransactions Total number of transactions to be generated in this document.
+     * @param numBatches      Total number of batches to be generated in this document.
+     * @param progress        The listener to report rendered transactions to, called from the pool threads.
+     * @throws XMLStreamException If the XML cannot be written.
+     * @throws IOException        If the output cannot be written.
+     */
+    public void writeParallelCopy(StreamingXmlGenerator generator, OutputStream out, int numTransactions, int numBatches,
+                                  ProgressListener progress) throws XMLStreamException, IOException {
+        TimestampFormatter timestamps = timestampsOf(generator.getTimestampFormatter());
+        String currentDate = timestamps.isoDate();
+        String currentDateTime = timestamps.isoDateTime();
+        generator.writeParallel(out, numTransactions, numBatches, messageIdOf(generator.getVariation()), currentDate, currentDateTime,
+                forkJoinPool, progress);
+    }
 
-        // 4. Replicate Batches and Transactions.
-        // Find the first Payment Information (PmtInf) element, which serves as the template for new batches.
-        NodeList pmtInfList = doc.getElementsByTagName(batchTagName);
-        Node firstPmtInf = (pmtInfList.getLength() > 0) ? pmtInfList.item(0) : null;
+    /**
+     * Processes a single XML document: updates dates, message IDs, control sums,
+     * and replicates batch and transaction elements according to the specified counts.
+     *
+     * @param doc              The XML Document to process, a clone of the compiled template's prototype.
+     * @param compiledTemplate The compiled template the document was cloned from.
+     * @param numTransactions  Total number of transactions to be generated in this document.
+     * @param numBatches       Total number of batches to be generated in this document.
+     * @throws Exception If any error occurs during XML manipulation (e.g., element not found).
+     */
+    // Package-private so the benchmarks module can measure this stage on its own.
+    void processSingleXmlDocument(Document doc, CompiledTemplate compiledTemplate, int numTransactions, int numBatches) throws Exception {
+        processSingleXmlDocument(doc, compiledTemplate, compiledTemplate.variationForCopy(0), numTransactions, numBatches);
+    }
 
-        if (firstPmtInf == null) {
-            // If no PmtInf element is found, it's a critical error for batch generation.
-            throw new RuntimeException("No '" + batchTagName + "' (batch) element found in the template. Cannot generate batches.");
-        }
+    /**
+     * Same as processSingleXmlDocument above, for one copy of a template with a variation.
+     * Each transaction's varying fields (amount, currency, counterparty name, IBAN, BIC) are set to its own values.
+     *
+     * @param doc              The XML Document to process, a clone of the compiled template's prototype.
+     * @param compiledTemplate The compiled template the document was cloned from.
+     * @param variation        The varied values of the copy's transactions, or null if the template has no variation.
+     * @param numTransactions  Total number of transactions to be generated in this document.
+     * @param numBatches       Total number of batches to be generated in this document.
+     * @throws Exception If any error occurs during XML manipulation (e.g., element not found).
+     */
+    void processSingleXmlDocument(Document doc, CompiledTemplate compiledTemplate, TransactionVariation variation,
+                                  int numTransactions, int numBatches) throws Exception {
+        // 1. Update Creation Date/Time and Requested Execution Date to current date/time.
+        updateDates(doc, compiledTemplate);
 
-        // Remove all existing PmtInf elements except the first one.
-        // Iterate backwards to avoid issues with NodeList changing during removal.
-        for (int i = pmtInfList.getLength() - 1; i >= 1; i--) {
-            pmtInfList.item(i).getParentNode().removeChild(pmtInfList.item(i));
-        }
+        // 2. Update the main Message ID (MsgId) in the Group Header.
+        String newMsgId = messageIdOf(variation); // Declared here
 
-        // Get the Group Header (GrpHdr) element to update its transaction count and control sum.
-        Element groupHeader = (Element) doc.getElementsByTagName("GrpHdr").item(0);
-        if (groupHeader == null) {
-            throw new RuntimeException("No GrpHdr element found in the template.");
-        }
+        updateField(compiledTemplate, Field.MSG_ID, doc, newMsgId);
+
+        // 3. Replicate Batches and Transactions.
+        // The first batch element serves as the template for new batches; the compiled
+        // prototype only contains this batch and its first transaction.
+        Element firstPmtInf = compiledTemplate.getBatch(doc);
+        Node parentOfPmtInf = firstPmtInf.getParentNode();
+        // Snapshot of the batch before any transaction is added to it. Later batches are cloned from this
+        // snapshot, so cloning a batch no longer copies all the transactions of the first one.
+        Node batchPrototype = firstPmtInf.cloneNode(true);
+        // A batch element holding the GrpHdr (PACS.008) is not replicated: the transactions of every batch are
+        // added to it, one batch after another.
+        boolean singleBatchElement = compiledTemplate.isSingleBatchElement();
 
         // Calculate the base number of transactions per batch and any remaining transactions
         // to distribute evenly among the first few batches.
         int txnsPerBatch = numTransactions / numBatches;
         int remainingTxns = numTransactions % numBatches;
 
-        BigDecimal totalCtrlSum = BigDecimal.ZERO; // Use BigDecimal for accurate sum calculations.
+        // Sums are kept in minor units of the amounts' scale and only turned into decimal text when written.
+        TransactionAmounts amounts = compiledTemplate.getTransactionAmounts(variation);
+        int amountScale = (amounts != null) ? amounts.getScale() : 0;
+        boolean variableAmounts = amounts != null && !amounts.isConstant();
+        ControlSum totalCtrlSum = new ControlSum(amountScale);
         int totalNbOfTxs = 0; // Total number of transactions across all batches.
+        Node lastTxInf = null; // Latest transaction of the current batch element; clones are inserted after it.
 
         // Loop to create and process each batch.
         for (int i = 0; i < numBatches; i++) {
             // For the first batch, use the original 'firstPmtInf' node.
-            // For subsequent batches, clone the 'firstPmtInf' node to create new independent batch elements.
-            Node currentPmtInf = (i == 0) ? firstPmtInf : firstPmtInf.cloneNode(true);
-            Element pmtInfElement = (Element) currentPmtInf;
+            // For subsequent batches, clone the batch snapshot to create new independent batch elements,
+            // unless the transactions continue in the single batch element.
+            boolean continued = singleBatchElement && i > 0;
+            Element pmtInfElement = (i == 0 || continued) ? firstPmtInf : (Element) batchPrototype.cloneNode(true);
+            String batchId = newMsgId + "B" + (i + 1);
 
             // Update the batch ID (e.g., PmtInfId, RvslPmtInfId) for the current batch.
-            // Only update if a batchIdTagName is defined for the current file type.
-            if (batchIdTagName != null) {
-                // Use updateElementTextContent to log a warning if the element is not found, as it's expected if defined.
-                updateElementTextContent(pmtInfElement, batchIdTagName, newMsgId + "B" + (i + 1));
+            if (!continued) {
+                updateField(compiledTemplate, Field.BATCH_ID, pmtInfElement, batchId);
             }
 
-            // Find the first transaction element within the current batch, which serves as the template.
-            NodeList txInfListInBatch = pmtInfElement.getElementsByTagName(transactionTagName);
-            
-            Node firstTxInf = (txInfListInBatch.getLength() > 0) ? txInfListInBatch.item(0) : null;
-
-            if (firstTxInf == null && !"CAMT53V2".equals(fileTypeShortcode)) { // CAMT might not have this structure
-                System.err.println("Warning: No '" + transactionTagName + "' (transaction) element found in '" + batchTagName + "'. Cannot generate transactions within batches.");
-            } else if (firstTxInf != null) {
-                // Remove all existing transaction elements from the current batch except the first one.
-                for (int j = txInfListInBatch.getLength() - 1; j >= 1; j--) {
-                    firstTxInf.getParentNode().removeChild(txInfListInBatch.item(j));
-                }
+            // The first transaction element within the current batch serves as the template.
+            Node firstTxInf = compiledTemplate.getTransaction(pmtInfElement);
+            if (!continued) {
+                lastTxInf = firstTxInf;
             }
 
             // Determine the number of transactions for the current batch.
             // Distribute remaining transactions (from numTransactions % numBatches) among the first batches.
             int currentBatchTxnCount = txnsPerBatch + (i < remainingTxns ? 1 : 0);
-            BigDecimal batchCtrlSum = BigDecimal.ZERO; // Control sum for the current batch.
+            ControlSum batchCtrlSum = new ControlSum(amountScale); // Control sum for the current batch.
+
+            if (firstTxInf != null && currentBatchTxnCount == 0 && numTransactions > 0 && !continued) {
+                // An empty batch keeps its template transaction, carrying the IDs of the first transaction
+                // of the first batch as it always has.
+                updateTransactionIds(compiledTemplate, firstTxInf, newMsgId + "B1T1");
+            }
 
             // Loop to create and process each transaction within the current batch.
+            // Every field is reached through its precomputed path, so the cost per transaction
+            // does not depend on the size of the batch or document.
             for (int j = 0; j < currentBatchTxnCount; j++) {
                 if (firstTxInf != null) {
                     // For the first transaction, use the original 'firstTxInf' node.
                     // For subsequent transactions, clone the 'firstTxInf' node.
-                    Node currentTxInf = (j == 0) ? firstTxInf : firstTxInf.cloneNode(true);
-                    Element txInfElement = (Element) currentTxInf;
+                    Node currentTxInf = (j == 0 && !continued) ? firstTxInf : firstTxInf.cloneNode(true);
 
                     // Update transaction IDs - these are generally expected.
-                    updateElementTextContentOptional(txInfElement, transactionIdTagName1, newMsgId + "B" + (i + 1) + "T" + (j + 1));
-                    if (transactionIdTagName2 != null) {
-                        updateElementTextContentOptional(txInfElement, transactionIdTagName2, newMsgId + "B" + (i + 1) + "T" + (j + 1));
-                    }
-                    if (transactionIdTagName3 != null) { // For PACS.008 TxId
-                        updateElementTextContentOptional(txInfElement, transactionIdTagName3, newMsgId + "B" + (i + 1) + "T" + (j + 1) + "X");
-                    }
-
-                    // Extract the transaction amount and add it to the batch control sum.
-                    Node amtNode = findFirstElementByTagName(txInfElement, amountTagName);
-                    // Special handling for pain.007 where OrgnlInstdAmt might be nested under OrgnlTxRef
-                    if (amtNode == null && ("PAIN7V2".equals(fileTypeShortcode) || "PAIN7V9".equals(fileTypeShortcode))) {
-                        Element orgnlTxRef = findFirstElementByTagName(txInfElement, "OrgnlTxRef");
-                        if (orgnlTxRef != null) {
-                            amtNode = findFirstElementByTagName(orgnlTxRef, amountTagName);
+                    updateTransactionIds(compiledTemplate, currentTxInf, batchId + "T" + (j + 1));
+
+                    // Add the transaction amount to the batch control sum. The amount is known without
+                    // reading it back from the clone; only varying amounts have to be written.
+                    if (amounts != null) {
+                        long amount = amounts.getUnscaledAmount(i, j);
+                        batchCtrlSum.add(amount);
+                        if (variableAmounts) {
+                            updateField(compiledTemplate, Field.AMOUNT, currentTxInf, variation.getAmountText(i, j));
                         }
                     }
-
-                    if (amtNode != null) {
-                        try {
-                            // Parse amount as BigDecimal for precision.
-                            BigDecimal txAmt = new BigDecimal(amtNode.getTextContent());
-                            batchCtrlSum = batchCtrlSum.add(txAmt);
-                        } catch (NumberFormatException e) {
-                            System.err.println("Warning: Could not parse transaction amount for sum calculation: " + amtNode.getTextContent() + ". Error: " + e.getMessage());
-                        }
+                    if (variation != null) {
+                        updateVariedFields(compiledTemplate, variation, currentTxInf, i, j);
                     }
 
-                    // Append cloned transactions to the current batch's PmtInf element.
-                    if (j > 0) {
-                        pmtInfElement.appendChild(currentTxInf);
+                    // Insert cloned transactions after the previous one, so they stay ahead of any elements
+                    // following the transactions in the batch element (e.g., SplmtryData in FIToFICstmrCdtTrf).
+                    if (j > 0 || continued) {
+                        pmtInfElement.insertBefore(currentTxInf, lastTxInf.getNextSibling());
+                        lastTxInf = currentTxInf;
                     }
                 }
             }
 
-            // Update batch-level transaction count and control sum using determined tag names.
-            // For PACS messages, these are updated in the GrpHdr, not the 'batch' element itself.
-            if (!fileTypeShortcode.startsWith("PACS")) { // Apply to all PAIN and CAMT, but not PACS
-                // These are optional as per user's last request.
-                updateElementTextContentOptional(pmtInfElement, batchNbOfTxsTagName, String.valueOf(currentBatchTxnCount));
-                updateElementTextContentOptional(pmtInfElement, batchCtrlSumTagName, batchCtrlSum.toPlainString());
-            }
+            // Update batch-level transaction count and control sum.
+            // For PACS messages these fields are not bound, they are updated in the GrpHdr instead.
+            updateField(compiledTemplate, Field.BATCH_NB_OF_TXS, pmtInfElement, String.valueOf(currentBatchTxnCount));
+            updateField(compiledTemplate, Field.BATCH_CTRL_SUM, pmtInfElement, batchCtrlSum.toPlainString());
 
 
             // Accumulate batch sums and counts to calculate the total group header sums.
-            totalCtrlSum = totalCtrlSum.add(batchCtrlSum);
+            totalCtrlSum.add(batchCtrlSum);
             totalNbOfTxs += currentBatchTxnCount;
 
             // Append cloned batches to the document.
-            if (i > 0) {
-                Node parentOfPmtInf = firstPmtInf.getParentNode();
+            if (i > 0 && !continued) {
                 if (parentOfPmtInf != null) {
-                    parentOfPmtInf.appendChild(currentPmtInf);
+                    parentOfPmtInf.appendChild(pmtInfElement);
                 } else {
                     System.err.println("Warning: Parent of PmtInf not found. Cannot append new batches correctly.");
                 }
@@ -373,153 +702,160 @@ public class XmlProcessorService {
 
         // Update Group Header level transaction count (NbOfTxs) and control sum (CtrlSum).
         // These are optional as per user's last request.
-        updateElementTextContentOptional(groupHeader, "NbOfTxs", String.valueOf(totalNbOfTxs));
-        updateElementTextContentOptional(groupHeader, "CtrlSum", totalCtrlSum.toPlainString());
+        updateField(compiledTemplate, Field.GROUP_NB_OF_TXS, doc, String.valueOf(totalNbOfTxs));
+        updateField(compiledTemplate, Field.GROUP_CTRL_SUM, doc, totalCtrlSum.toPlainString());
+        // PACS.008: the total interbank settlement amount, in the currency of every transaction
+        updateField(compiledTemplate, Field.GROUP_TTL_INTR_BK_STTLM_AMT, doc, totalCtrlSum.toPlainString());
+        if (compiledTemplate.omitsTotalInterbankSettlementAmount(variation)) {
+            // Removed last, the field paths count the element among its siblings
+            removeField(compiledTemplate, Field.GROUP_TTL_INTR_BK_STTLM_AMT, doc);
+        }
     }
 
     /**
      * Updates creation date/time (CreDtTm) and requested execution date (ReqdExctnDt)
      * in the XML document to the current date/time.
      *
-     * @param doc The XML Document to modify.
+     * @param doc              The XML Document to modify.
+     * @param compiledTemplate The compiled template the document was cloned from.
      */
-    private void updateDates(Document doc) {
-        String currentDate = DATE_FORMAT.format(new Date()); // Current date in yyyy-MM-dd format
-        String currentDateTime = CRE_DT_TM_FORMAT.format(new Date()); // Modified: Use CRE_DT_TM_FORMAT for CreDtTm
+    private void updateDates(Document doc, CompiledTemplate compiledTemplate) {
+        TimestampFormatter timestamps = timestampsOf(compiledTemplate.getTimestampFormatter());
+        String currentDate = timestamps.isoDate(); // Current date in yyyy-MM-dd format
+        String currentDateTime = timestamps.isoDateTime(); // yyyy-MM-ddTHH:mm:ss for CreDtTm
 
         // Update the text content of the "CreDtTm" (Creation Date/Time) element.
-        updateElementTextContent(doc, "CreDtTm", currentDateTime);
+        updateField(compiledTemplate, Field.CRE_DT_TM, doc, currentDateTime);
 
         // Update the text content of the "ReqdExctnDt" (Requested Execution Date) element.
-        // This is now optional as per user's requirement.
-        updateElementTextContentOptional(doc, "ReqdExctnDt", currentDate);
+        // This is optional; the field is only bound if the template contains it.
+        updateField(compiledTemplate, Field.REQD_EXCTN_DT, doc, currentDate);
+        // Same for the interbank settlement date in the GrpHdr of a PACS.008.
+        updateField(compiledTemplate, Field.INTR_BK_STTLM_DT, doc, currentDate);
     }
 
     /**
-     * Generates a new unique message ID.
-     * The format is yyyyMMddHHmmss followed by a 3-digit random number.
+     * Sets the transaction ID fields (e.g., EndToEndId, InstrId, and TxId for PACS.008) of a transaction.
      *
-     * @return The newly generated message ID string.
+     * @param compiledTemplate The compiled template the transaction was cloned from.
+     * @param txInf            The transaction element.
+     * @param transactionId    The new transaction ID.
      */
-    private String generateNewMsgId() {
-        String timestamp = MSG_ID_DATE_FORMAT.format(new Date()); // Get current timestamp without hyphens/colons
-        String randomSuffix = String.format("%03d", RANDOM.nextInt(1000)); // Generate a 3-digit random number
-        return timestamp + randomSuffix; // Concatenate timestamp and random suffix directly
+    private void updateTransactionIds(CompiledTemplate compiledTemplate, Node txInf, String transactionId) {
+        updateField(compiledTemplate, Field.TX_ID_1, txInf, transactionId);
+        updateField(compiledTemplate, Field.TX_ID_2, txInf, transactionId);
+        updateField(compiledTemplate, Field.TX_ID_3, txInf, transactionId + "X");
     }
 
     /**
-     * Finds the first element with the given tag name in the entire document
-     * and updates its text content.
+     * Sets the varying currency and counterparty fields of a transaction. Fields that do not vary keep the
+     * template's value.
      *
-     * @param doc       The XML Document to search within.
-     * @param tagName   The tag name of the element to find and update.
-     * @param newContent The new text content to set.
-     */
-    private void updateElementTextContent(Document doc, String tagName, String newContent) {
-        NodeList nodeList = doc.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            // If the element is found, update its text content.
-            nodeList.item(0).setTextContent(newContent);
-        } else {
-            // Log a warning if the element is not found.
-            System.err.println("Warning: Element with tag '" + tagName + "' not found in document.");
+     * @param compiledTemplate The compiled template the transaction was cloned from.
+     * @param variation        The varied values of the copy's transactions.
+     * @param txInf            The transaction element.
+     * @param batchIndex       The index of the batch.
+     * @param transactionIndex The index of the transaction within its batch.
+     */
+    private void updateVariedFields(CompiledTemplate compiledTemplate, TransactionVariation variation, Node txInf,
+                                    int batchIndex, int transactionIndex) {
+        String currency = variation.getCurrency(batchIndex, transactionIndex);
+        if (currency != null) {
+            Element amount = (Element) compiledTemplate.resolveField(Field.AMOUNT, txInf);
+            if (amount != null && amount.hasAttribute("Ccy")) {
+                amount.setAttribute("Ccy", currency);
+            }
+        }
+        String name = variation.getName(batchIndex, transactionIndex);
+        if (name != null) {
+            updateField(compiledTemplate, Field.COUNTERPARTY_NAME, txInf, name);
+        }
+        String iban = variation.getIban(batchIndex, transactionIndex);
+        if (iban != null) {
+            updateField(compiledTemplate, Field.COUNTERPARTY_IBAN, txInf, iban);
+        }
+        String bic = variation.getBic(batchIndex, transactionIndex);
+        if (bic != null) {
+            updateField(compiledTemplate, Field.COUNTERPARTY_BIC, txInf, bic);
         }
     }
 
     /**
-     * Finds the first element with the given tag name within a specified parent element
-     * and updates its text content. This is useful for scoped updates.
+     * Updates the text content of a compiled template field by following its precomputed path.
+     * If the template does not contain the field, it does nothing (missing required fields are
+     * reported once when the template is compiled).
      *
-     * @param parentNode The parent Element to search within.
-     * @param tagName    The tag name of the element to find and update.
-     * @param newContent The new text content to set.
-     */
-    private void updateElementTextContent(Element parentNode, String tagName, String newContent) {
-        NodeList nodeList = parentNode.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            // If the element is found within the parent, update its text content.
-            nodeList.item(0).setTextContent(newContent);
-        } else {
-            // Log a warning if the element is not found within the specified parent.
-            System.err.println("Warning: Element with tag '" + tagName + "' not found within parent node: " + parentNode.getTagName());
+     * @param compiledTemplate The compiled template the node was cloned from.
+     * @param field            The field to update.
+     * @param base             The document, batch or transaction node matching the field's scope.
+     * @param newContent       The new text content to set.
+     */
+    private void updateField(CompiledTemplate compiledTemplate, Field field, Node base, String newContent) {
+        Node node = compiledTemplate.resolveField(field, base);
+        if (node != null) {
+            node.setTextContent(newContent);
         }
     }
 
     /**
-     * Finds the first element with the given tag name in the entire document
-     * and updates its text content. If the element is not found, it does nothing (no warning).
+     * Removes a compiled template field from a document, with the indentation before it.
      *
-     * @param doc       The XML Document to search within.
-     * @param tagName   The tag name of the element to find and update.
-     * @param newContent The new text content to set.
-     */
-    private void updateElementTextContentOptional(Document doc, String tagName, String newContent) {
-        NodeList nodeList = doc.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            nodeList.item(0).setTextContent(newContent);
+     * @param compiledTemplate The compiled template the node was cloned from.
+     * @param field            The field to remove.
+     * @param base             The document, batch or transaction node matching the field's scope.
+     */
+    private void removeField(CompiledTemplate compiledTemplate, Field field, Node base) {
+        Node node = compiledTemplate.resolveField(field, base);
+        if (node == null) {
+            return;
         }
-        // No warning if not found, as per requirement
+        Node previous = node.getPreviousSibling();
+        if (previous != null && previous.getNodeType() == Node.TEXT_NODE && previous.getNodeValue().trim().isEmpty()) {
+            previous.getParentNode().removeChild(previous);
+        }
+        node.getParentNode().removeChild(node);
     }
 
     /**
-     * Finds the first element with the given tag name within a specified parent element
-     * and updates its text content. If the element is not found, it does nothing (no warning).
+     * Generates a new unique message ID.
+     * Batch and transaction IDs are derived from it, so they are unique as well.
      *
-     * @param parentNode The parent Element to search within.
-     * @param tagName    The tag name of the element to find and update.
-     * @param newContent The new text content to set.
-     */
-    private void updateElementTextContentOptional(Element parentNode, String tagName, String newContent) {
-        NodeList nodeList = parentNode.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            nodeList.item(0).setTextContent(newContent);
-        }
-        // No warning if not found, as per requirement
+     * @return The newly generated message ID string.
+     */
+    private String generateNewMsgId() {
+        return idGenerator.nextId();
     }
 
     /**
-     * Finds the first child element with the given tag name within a specified parent element.
-     *
-     * @param parentNode The parent Element to search within.
-     * @param tagName    The tag name of the element to find.
-     * @return The found Element, or null if no such element is found.
-     */
-    private Element findFirstElementByTagName(Element parentNode, String tagName) {
-        NodeList nodeList = parentNode.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            return (Element) nodeList.item(0); // Return the first found element.
-        }
-        return null; // Return null if no element with the tag name is found.
+     * @param variation The variation of the generated copy, or null.
+     * @return The message ID of the copy: derived from the seed in a seeded variation, a new unique ID otherwise.
+     */
+    private String messageIdOf(TransactionVariation variation) {
+        return (variation != null && variation.isSeeded()) ? variation.getMessageId() : generateNewMsgId();
+    }
+
+    /**
+     * @param fixedClock The formatter of a variation's fixed clock, or null.
+     * @return The formatter to date a copy with: the fixed clock if there is one, the current time otherwise.
+     */
+    private TimestampFormatter timestampsOf(TimestampFormatter fixedClock) {
+        return (fixedClock != null) ? fixedClock : timestampFormatter;
     }
 
     /**
      * Converts an XML Document to a byte array.
-     * The output XML will be indented for readability.
+     * The output XML is indented as configured with -Dxmlgenerator.indent (4 spaces by default, 0 for none).
      *
      * @param doc The XML Document to convert.
      * @return A byte array containing the XML content.
      * @throws TransformerException If an unrecoverable error occurs during the XML transformation process.
      * @throws IOException          If an I/O error occurs while writing to the byte stream.
      */
-    private byte[] xmlDocumentToBytes(Document doc) throws TransformerException, IOException {
-        // Create a TransformerFactory instance.
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        // Create a Transformer instance.
-        Transformer transformer = transformerFactory.newTransformer();
-        // Set output properties for pretty printing the XML.
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes"); // Enable indentation
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4"); // Set indent amount to 4 spaces
-        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); // Ensure UTF-8 encoding
-
-        // Create a DOMSource from the Document.
-        DOMSource source = new DOMSource(doc);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(); // Use a ByteArrayOutputStream to capture output
-        StreamResult result = new StreamResult(baos); // Create a StreamResult for the output stream
-        transformer.transform(source, result); // Perform the XML transformation (write to ByteArrayOutputStream)
-
-        // Convert to string, trim leading/trailing whitespace (including newlines), and get bytes
-        String xmlString = baos.toString("UTF-8").trim(); // Trim removes leading/trailing whitespace, including newlines
-        return xmlString.getBytes("UTF-8"); // Return the trimmed string's bytes
+    // Package-private so the benchmarks module can measure this stage on its own.
+    byte[] xmlDocumentToBytes(Document doc) throws TransformerException, IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024); // Use a ByteArrayOutputStream to capture output
+        xmlSerializer.serialize(doc, baos); // Written directly as UTF-8, without trailing whitespace
+        return baos.toByteArray();
     }
     
     
@@ -527,57 +863,54 @@ public class XmlProcessorService {
      * Determines the shortcode for the XML file type and version based on the document's structure.
      * It primarily looks at the namespace URI of the first child element of the document's root.
      * Fallback to common ISO 20022 message types if namespace parsing fails.
+     * Templates are usually detected before they are parsed (see MessageTypeSniffer), with the same rules.
      *
      * @param doc The XML Document to inspect.
      * @return A shortcode string (e.g., "PAIN1V3", "PACS8V2", "CAMT53V2"), or "UNKNOWN" if not recognized.
      */
     public String getFileTypeAndVersionShortcode(Document doc) {
-        Element rootElement = doc.getDocumentElement();
-        NodeList children = rootElement.getChildNodes();
-        Element messageRoot = null;
-        for (int i = 0; i < children.getLength(); i++) {
-            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
-                messageRoot = (Element) children.item(i);
-                break;
-            }
+        Node messageRoot = doc.getDocumentElement().getFirstChild();
+        while (messageRoot != null && messageRoot.getNodeType() != Node.ELEMENT_NODE) {
+            messageRoot = messageRoot.getNextSibling();
         }
-
         if (messageRoot == null) {
-            return "UNKNOWN";
+            return MessageTypeSniffer.UNKNOWN;
         }
+        // e.g., CstmrCdtTrfInitn in urn:iso:std:iso:20022:tech:xsd:pain.001.001.03
+        return MessageTypeSniffer.shortcodeOf(messageRoot.getNamespaceURI(), messageRoot.getLocalName());
+    }
 
-        String localName = messageRoot.getLocalName(); // e.g., CstmrCdtTrfInitn, FndgSrcAndTx, BkToCstmrStmt
-        String namespaceUri = messageRoot.getNamespaceURI(); // e.g., urn:iso:std:iso:20022:tech:xsd:pain.001.001.03
-
-        if (namespaceUri != null) {
-            // Example namespace: urn:iso:std:iso:20022:tech:xsd:pain.001.001.03
-            String[] parts = namespaceUri.split(":");
-            if (parts.length > 0) {
-                String lastPart = parts[parts.length - 1]; // pain.001.001.03
-                String[] versionParts = lastPart.split("\\.");
-                // Ensure there are enough parts for type.major.minor.revision (e.g., pain.001.001.03)
-                if (versionParts.length >= 4) {
-                    String type = versionParts[0].toUpperCase(); // PAIN, PACS, CAMT
-                    // Convert "001" to "1", "008" to "8", etc.
-                    String major = String.valueOf(Integer.parseInt(versionParts[1]));
-                    // The last part (e.g., "03") is the version
-                    String minor = String.valueOf(Integer.parseInt(versionParts[3]));
-                    return type + major + "V" + minor;
-                }
-            }
-        }
-
-        // Fallback if namespace parsing fails or is not present, infer from local name
-        if ("CstmrCdtTrfInitn".equals(localName)) return "PAIN1V3"; // Common for pain.001.001.03
-        if ("CstmrPmtRvsl".equals(localName)) return "PAIN7V2"; // Based on pain7v2.xml
-        if ("CstmrDrctDbtInitn".equals(localName)) return "PAIN8V2"; // Based on pain8v2.xml
-        if ("FIToFICstmrCdtTrf".equals(localName)) return "PACS8V2"; // Based on pacs8V2.txt
-        // if ("BkToCstmrStmt".equals(localName)) return "CAMT53V2";
-
+    /**
+     * Builds the file name of a generated copy, with the current timestamp.
+     * Format: <FileFormat>_<Target>_<TimeStamp>_F<Suffix>.xml (e.g., PAIN1V3_SDMC_20250721123456789_F1.xml)
+     *
+     * @param fileTypeShortcode    The file type shortcode of the template (e.g., PAIN1V3).
+     * @param batchTransactionType The batch/transaction type (see getBatchTransactionType).
+     * @param copyNumber           The 1-based number of the copy.
+     * @return The file name.
+     */
+    public String newXmlFileName(String fileTypeShortcode, String batchTransactionType, int copyNumber) {
+        return fileTypeShortcode + "_" + batchTransactionType + "_" + timestampFormatter.compactDateTimeMillis() + "_F" + copyNumber + ".xml";
+    }
 
-        return "UNKNOWN";
+    /**
+     * Same as newXmlFileName above, with the timestamp of the template's fixed clock if its variation has one,
+     * so that seeded runs produce the same file names. The template number of a run with several templates
+     * is added before the copy number (e.g., PAIN1V3_SDMC_20000101000000000_T2_F1.xml), as their copies could
+     * otherwise get the same name.
+     *
+     * @param compiledTemplate     The compiled template of the copy.
+     * @param batchTransactionType The batch/transaction type (see getBatchTransactionType).
+     * @param copyNumber           The 1-based number of the copy.
+     * @return The file name.
+     */
+    public String newXmlFileName(CompiledTemplate compiledTemplate, String batchTransactionType, int copyNumber) {
+        return compiledTemplate.getFileTypeShortcode() + "_" + batchTransactionType + "_"
+                + timestampsOf(compiledTemplate.getTimestampFormatter()).compactDateTimeMillis()
+                + (compiledTemplate.getTemplateNumber() > 0 ? "_T" + compiledTemplate.getTemplateNumber() : "")
+                + "_F" + copyNumber + ".xml";
     }
-    
+
     /**
      * Determines the batch/transaction type string based on the number of transactions and batches.
      * This is used for naming the generated files.
@@ -603,4 +936,13 @@ public class XmlProcessorService {
             }
         }
     }
+
+    /**
+     * Stops the worker pools once the tasks already submitted have finished.
+     * The service cannot generate files afterwards.
+     */
+    public void shutdown() {
+        executorService.shutdown();
+        forkJoinPool.shutdown();
+    }
 }
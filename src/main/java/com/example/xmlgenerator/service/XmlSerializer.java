@@ -0,0 +1,165 @@
+package com.example.xmlgenerator.service;
+
+import org.w3c.dom.Document;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+/**
+ * Serializes DOM documents to a stream, reusing one configured Transformer per thread.
+ *
+ * The TransformerFactory lookup and the creation of the Transformer happen once per thread instead of once
+ * per file. The output goes straight to the destination stream; trailing whitespace after the root element
+ * is dropped on the way, which gives the same bytes as the former String trim() round trip.
+ */
+public class XmlSerializer {
+
+    // Looked up on first use, only the DOM engine needs it (the lookup costs tens of milliseconds at startup).
+    private static TransformerFactory transformerFactory; // Guarded by XmlSerializer.class
+
+    // Identity stylesheet dropping whitespace-only text nodes, used when writing without indentation
+    // (a plain identity transformer would keep the template's own line breaks and indentation).
+    private static final String STRIP_SPACE_STYLESHEET =
+            "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:strip-space elements=\"*\"/>"
+            + "<xsl:template match=\"@*|node()\"><xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy></xsl:template>"
+            + "</xsl:stylesheet>";
+
+    private final int indentAmount;
+    private Templates compactTemplates; // Compiled on first use, only used without indentation. Guarded by XmlSerializer.class
+    private final ThreadLocal<Transformer> transformers = new ThreadLocal<>();
+
+    /**
+     * @param indentAmount Number of spaces per nesting level, or 0 to write the document without indentation.
+     */
+    public XmlSerializer(int indentAmount) {
+        if (indentAmount < 0) {
+            throw new IllegalArgumentException("Indent amount must not be negative: " + indentAmount);
+        }
+        this.indentAmount = indentAmount;
+    }
+
+    /**
+     * Writes a document as UTF-8 to a stream. The stream is flushed but not closed.
+     *
+     * @param doc The XML Document to write.
+     * @param out The destination stream.
+     * @throws TransformerException If an unrecoverable error occurs during the XML transformation process.
+     * @throws IOException          If the destination stream cannot be written.
+     */
+    public void serialize(Document doc, OutputStream out) throws TransformerException, IOException {
+        Transformer transformer = transformers.get();
+        if (transformer == null) {
+            transformer = newTransformer();
+            transformers.set(transformer);
+        }
+        TrailingWhitespaceTrimmingOutputStream trimmingOut = new TrailingWhitespaceTrimmingOutputStream(out);
+        try {
+            transformer.transform(new DOMSource(doc), new StreamResult(trimmingOut));
+        } catch (TransformerException e) {
+            transformers.remove(); // Do not reuse a transformer left in an unknown state
+            throw e;
+        }
+        trimmingOut.flush();
+    }
+
+    private Transformer newTransformer() throws TransformerConfigurationException {
+        Transformer transformer;
+        synchronized (XmlSerializer.class) { // TransformerFactory is not thread-safe
+            if (transformerFactory == null) {
+                transformerFactory = TransformerFactory.newInstance();
+            }
+            if (indentAmount == 0) {
+                if (compactTemplates == null) {
+                    compactTemplates = transformerFactory.newTemplates(new StreamSource(new StringReader(STRIP_SPACE_STYLESHEET)));
+                }
+                transformer = compactTemplates.newTransformer();
+            } else {
+                transformer = transformerFactory.newTransformer();
+            }
+        }
+        // Set output properties for pretty printing the XML.
+        if (indentAmount > 0) {
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes"); // Enable indentation
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", String.valueOf(indentAmount));
+        } else {
+            transformer.setOutputProperty(OutputKeys.INDENT, "no");
+        }
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); // Ensure UTF-8 encoding
+        return transformer;
+    }
+
+    public int getIndentAmount() { return indentAmount; }
+
+    /**
+     * Holds back whitespace bytes until a non-whitespace byte follows, so whitespace at the very end of
+     * the output is never written. Whitespace here means the bytes trimmed by String.trim() (<= 0x20),
+     * which never occur inside a multi-byte UTF-8 sequence.
+     */
+    private static final class TrailingWhitespaceTrimmingOutputStream extends FilterOutputStream {
+        private int pendingWhitespace; // Number of held back whitespace bytes
+        private byte[] pending = new byte[16];
+
+        TrailingWhitespaceTrimmingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if ((b & 0xff) <= ' ') {
+                hold((byte) b);
+            } else {
+                releasePending();
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            int lastContent = end - 1;
+            while (lastContent >= off && (b[lastContent] & 0xff) <= ' ') {
+                lastContent--;
+            }
+            if (lastContent >= off) {
+                releasePending();
+                out.write(b, off, lastContent + 1 - off);
+            }
+            for (int i = Math.max(lastContent + 1, off); i < end; i++) {
+                hold(b[i]);
+            }
+        }
+
+        private void hold(byte b) {
+            if (pendingWhitespace == pending.length) {
+                byte[] grown = new byte[pending.length * 2];
+                System.arraycopy(pending, 0, grown, 0, pendingWhitespace);
+                pending = grown;
+            }
+            pending[pendingWhitespace++] = b;
+        }
+
+        private void releasePending() throws IOException {
+            if (pendingWhitespace > 0) {
+                out.write(pending, 0, pendingWhitespace);
+                pendingWhitespace = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush(); // Pending whitespace is trailing whitespace: dropped. The destination is not ours to close.
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.xmlgenerator.templates;
+
+import com.example.xmlgenerator.service.CompiledTemplate;
+
+/**
+ * A compiled template held by the TemplateRegistry, with the ID that later requests can pass instead of uploading it again.
+ */
+public class RegisteredTemplate {
+    private final String templateId;
+    private final CompiledTemplate compiledTemplate;
+
+    RegisteredTemplate(String templateId, CompiledTemplate compiledTemplate) {
+        this.templateId = templateId;
+        this.compiledTemplate = compiledTemplate;
+    }
+
+    /**
+     * @return The template ID: the SHA-256 of the template file, as 64 lowercase hex digits.
+     */
+    public String getTemplateId() { return templateId; }
+
+    /**
+     * @return The compiled template, without variation. It is shared by all requests using the template.
+     */
+    public CompiledTemplate getCompiledTemplate() { return compiledTemplate; }
+}
@@ -0,0 +1,294 @@
+package com.example.xmlgenerator.templates;
+
+import com.example.xmlgenerator.archive.CompressingOutputSink;
+import com.example.xmlgenerator.archive.ZipCompression;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.StreamingXmlGenerator;
+import com.example.xmlgenerator.service.XmlProcessorService;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named templates stored in a library directory, selected by name instead of being uploaded.
+ *
+ * Every *.xml file of the directory is a template named after the file without its extension
+ * (e.g. pain.001.001.03.xml is "pain.001.001.03"). All templates are compiled on the library's background
+ * thread when it starts, and each one is generated once through the DOM and streaming engines, so that parsing,
+ * class loading and JIT compilation are done before the first request; the server waits for this (see awaitLoaded)
+ * before it opens its port. The same thread then watches the directory and recompiles templates that are added or
+ * changed, warming each one up before it replaces the previous version, and drops the ones that are deleted.
+ * A template that does not compile keeps its previous version.
+ */
+public class TemplateLibrary {
+
+    private static final String EXTENSION = ".xml";
+    // Files are often written in several steps: changes are collected for this long before reloading.
+    private static final long RELOAD_DELAY_MILLIS = 250;
+
+    private final File directory;
+    private final XmlProcessorService xmlProcessorService;
+    private final int warmupTransactions;
+    private final Map<String, RegisteredTemplate> templates = new ConcurrentHashMap<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ExecutorService loader;
+    private volatile WatchService watchService;
+
+    /**
+     * @param directory           The library directory. A missing directory is an empty library.
+     * @param xmlProcessorService The service compiling the templates.
+     * @param warmupTransactions  Number of transactions generated from each template at startup, 0 for none.
+     */
+    public TemplateLibrary(File directory, XmlProcessorService xmlProcessorService, int warmupTransactions) {
+        this.directory = directory;
+        this.xmlProcessorService = xmlProcessorService;
+        this.warmupTransactions = warmupTransactions;
+        this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "template-library");
+                thread.setDaemon(true); // Must not keep the JVM alive
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts loading the library on its background thread, then watching the directory for changes.
+     */
+    public void start() {
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } finally {
+                    loaded.countDown();
+                }
+                watch();
+            }
+        });
+    }
+
+    /**
+     * Waits until every template of the directory has been compiled and warmed up.
+     *
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public void awaitLoaded() throws InterruptedException {
+        loaded.await();
+    }
+
+    /**
+     * @param name The template name (case-insensitive).
+     * @return The template, or null if the library has no template of that name.
+     */
+    public RegisteredTemplate get(String name) {
+        return (name != null) ? templates.get(name.trim().toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * @return The templates of the library by name, sorted by name.
+     */
+    public Map<String, RegisteredTemplate> getTemplates() {
+        return Collections.unmodifiableMap(new TreeMap<>(templates));
+    }
+
+    /**
+     * Stops watching the directory.
+     */
+    public void close() {
+        loader.shutdownNow();
+        WatchService watcher = watchService;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Warning: Could not close the template library watcher: " + e.getMessage());
+            }
+        }
+    }
+
+    // Registers the watcher first, so that no change made during the initial load is missed, then loads every template.
+    private void load() {
+        if (!directory.isDirectory()) {
+            System.out.println("INFO: Template library directory " + directory.getAbsolutePath()
+                    + " not found; set -Dxmlgenerator.templates.dir to use named templates.");
+            return;
+        }
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = watcher;
+        } catch (IOException e) {
+            System.err.println("Warning: Cannot watch template library " + directory + ", changes need a restart: " + e.getMessage());
+        }
+
+        long startNanos = System.nanoTime();
+        rescan(); // Warms up every template as it is compiled
+        System.out.println("Template library " + directory.getAbsolutePath() + ": " + templates.size()
+                + " template(s) loaded in " + (System.nanoTime() - startNanos) / 1000000L + " ms " + templates.keySet());
+    }
+
+    // Reloads the templates whose files change, until the library is closed.
+    private void watch() {
+        WatchService watcher = watchService;
+        if (watcher == null) {
+            return;
+        }
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<String> changed = new TreeSet<>();
+                boolean overflow = false;
+                // Collect the events of a burst of writes, so that a file is reloaded once it is complete
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed.add(((Path) event.context()).getFileName().toString());
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("Warning: Template library " + directory + " is no longer accessible.");
+                        return;
+                    }
+                    key = watcher.poll(RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                if (overflow) {
+                    rescan(); // Events were lost
+                    continue;
+                }
+                for (String fileName : changed) {
+                    if (templateName(fileName) != null) {
+                        reload(fileName);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    // Reloads every file of the directory and drops the templates whose file is gone.
+    private void rescan() {
+        Set<String> present = new HashSet<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = templateName(file.getName());
+                if (name != null) {
+                    present.add(name);
+                    reload(file.getName());
+                }
+            }
+        }
+        templates.keySet().retainAll(present);
+    }
+
+    /**
+     * Compiles and warms up the template of a library file again, or drops it if the file is gone.
+     * Unchanged content (same SHA-256) is not recompiled.
+     *
+     * @param fileName The name of the file in the library directory.
+     */
+    private void reload(String fileName) {
+        String name = templateName(fileName);
+        File file = new File(directory, fileName);
+        if (!file.isFile()) {
+            if (templates.remove(name) != null) {
+                System.out.println("Template library: removed " + name);
+            }
+            return;
+        }
+        try {
+            String templateId = TemplateRegistry.sha256Of(file);
+            RegisteredTemplate previous = templates.get(name);
+            if (previous != null && previous.getTemplateId().equals(templateId)) {
+                return;
+            }
+            CompiledTemplate compiledTemplate;
+            try (InputStream templateInputStream = new FileInputStream(file)) {
+                compiledTemplate = xmlProcessorService.compileTemplate(templateInputStream);
+            }
+            // A reloaded template is warmed up too, before requests can select it
+            warmUp(compiledTemplate);
+            templates.put(name, new RegisteredTemplate(templateId, compiledTemplate));
+            if (previous != null) {
+                System.out.println("Template library: reloaded " + name + " (" + compiledTemplate.getFileTypeShortcode() + ")");
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Template library: could not load " + file + (templates.containsKey(name)
+                    ? ", keeping the previous version: " : ": ") + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates the template once through the DOM and streaming engines and discards the output,
+     * so that the first request runs the same compiled code as the following ones.
+     */
+    private void warmUp(CompiledTemplate compiledTemplate) {
+        if (warmupTransactions <= 0) {
+            return;
+        }
+        try {
+            xmlProcessorService.writeStreamingCopy(new StreamingXmlGenerator(compiledTemplate), DISCARD, warmupTransactions, 1);
+            // The DOM engine is much slower per transaction; a tenth of them still compiles its hot paths.
+            // Its files are deflated the way buffered ZIP downloads are, which warms up the compression as well.
+            xmlProcessorService.generateXmlFiles(compiledTemplate, Math.max(1, warmupTransactions / 10), 1, 1,
+                    new CompressingOutputSink(HeapOutputSink.getInstance(), ZipCompression.DEFAULT));
+        } catch (Exception e) {
+            System.err.println("Warning: Template library: warm-up of " + compiledTemplate.getFileTypeShortcode()
+                    + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The template name of a library file name (lowercase, without the extension), or null if it is not a template.
+     */
+    private static String templateName(String fileName) {
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        if (!lowerCase.endsWith(EXTENSION) || lowerCase.length() == EXTENSION.length() || lowerCase.startsWith(".")) {
+            return null;
+        }
+        return lowerCase.substring(0, lowerCase.length() - EXTENSION.length());
+    }
+
+    // Output of the warm-up generations
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+}
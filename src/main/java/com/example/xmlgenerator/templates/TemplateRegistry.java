@@ -0,0 +1,153 @@
+package com.example.xmlgenerator.templates;
+
+import com.example.xmlgenerator.service.CompiledTemplate;
+import com.example.xmlgenerator.service.XmlProcessorService;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded registry of compiled templates, keyed by the SHA-256 of the template file.
+ *
+ * The same few templates are uploaded over and over; each upload is hashed, and only a template that is not
+ * registered yet is parsed and compiled. The compiled template is then shared by every request using it
+ * (a variation only adds a light copy, see CompiledTemplate.withVariation), and its ID can be passed instead
+ * of uploading the template again. When the registry is full, the least recently used template is evicted.
+ */
+public class TemplateRegistry {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final XmlProcessorService xmlProcessorService;
+    private final int maxEntries;
+
+    // Access-ordered, so iteration starts with the least recently used template. Guarded by 'this'.
+    private final LinkedHashMap<String, RegisteredTemplate> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param xmlProcessorService The service compiling the templates.
+     * @param maxEntries          Maximum number of templates held; at least 1.
+     */
+    public TemplateRegistry(XmlProcessorService xmlProcessorService, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The template registry needs room for at least one template: " + maxEntries);
+        }
+        this.xmlProcessorService = xmlProcessorService;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Registers a template file: returns the registered template if the registry already holds the same content,
+     * otherwise compiles and adds it. Two threads registering the same new template may both compile it;
+     * the first one to finish is kept.
+     *
+     * @param templateFile The template file (e.g. an uploaded temporary file).
+     * @return The registered template.
+     * @throws IOException                  If the file cannot be read.
+     * @throws ParserConfigurationException If a DocumentBuilder cannot be created.
+     * @throws SAXException                 If the template is not well-formed XML.
+     */
+    public RegisteredTemplate register(File templateFile) throws IOException, ParserConfigurationException, SAXException {
+        String templateId = sha256Of(templateFile);
+        RegisteredTemplate registered = lookup(templateId);
+        if (registered != null) {
+            hits.incrementAndGet();
+            return registered;
+        }
+        misses.incrementAndGet();
+
+        CompiledTemplate compiledTemplate;
+        try (InputStream templateInputStream = new FileInputStream(templateFile)) {
+            compiledTemplate = xmlProcessorService.compileTemplate(templateInputStream);
+        }
+        RegisteredTemplate added = new RegisteredTemplate(templateId, compiledTemplate);
+        synchronized (this) {
+            RegisteredTemplate previous = entries.get(templateId);
+            if (previous != null) {
+                return previous; // Registered by another thread meanwhile
+            }
+            entries.put(templateId, added);
+            evictToCapacity();
+        }
+        System.out.println("Registered template " + templateId + " (" + compiledTemplate.getFileTypeShortcode() + ")");
+        return added;
+    }
+
+    /**
+     * Looks up a registered template and marks it as recently used.
+     *
+     * @param templateId The template ID returned when the template was registered (case-insensitive).
+     * @return The registered template, or null if the ID is unknown or the template was evicted.
+     */
+    public RegisteredTemplate get(String templateId) {
+        RegisteredTemplate registered = (templateId != null) ? lookup(templateId.trim().toLowerCase(Locale.ROOT)) : null;
+        if (registered != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return registered;
+    }
+
+    private synchronized RegisteredTemplate lookup(String templateId) {
+        return entries.get(templateId);
+    }
+
+    // Evicts the least recently used templates until the entry limit is respected. Caller holds 'this'.
+    private void evictToCapacity() {
+        Iterator<Map.Entry<String, RegisteredTemplate>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The SHA-256 of the file content as lowercase hex digits.
+     */
+    static String sha256Of(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Required on every Java platform
+        }
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+    public int getMaxEntries() { return maxEntries; }
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+}
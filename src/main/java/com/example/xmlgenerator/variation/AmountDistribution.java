@@ -0,0 +1,120 @@
+package com.example.xmlgenerator.variation;
+
+import com.example.xmlgenerator.amount.MinorUnits;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Distribution of the generated transaction amounts, sampled in minor units.
+ * Samples are pure functions of the random values passed in, so the same position always gets the same amount.
+ */
+public abstract class AmountDistribution {
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53; // 1 / 2^53
+
+    private final int scale;
+
+    private AmountDistribution(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * @param min The smallest amount.
+     * @param max The largest amount; the scale is the larger one of the two.
+     * @return A distribution drawing every amount in [min, max] with the same probability.
+     */
+    public static AmountDistribution uniform(BigDecimal min, BigDecimal max) {
+        int scale = Math.max(min.scale(), max.scale());
+        return new Uniform(scale, MinorUnits.of(min.setScale(scale)), MinorUnits.of(max.setScale(scale)));
+    }
+
+    /**
+     * @param median The median amount, which also gives the scale.
+     * @param sigma  The standard deviation of the logarithm of the amounts (0 gives the median only).
+     * @param max    The largest amount; larger samples are capped.
+     * @return A log-normal distribution: mostly small amounts with a long tail of large ones, as in real payment flows.
+     */
+    public static AmountDistribution logNormal(BigDecimal median, double sigma, BigDecimal max) {
+        int scale = median.scale();
+        BigDecimal cap = max.setScale(scale, RoundingMode.DOWN).max(median);
+        return new LogNormal(scale, MinorUnits.of(median), sigma, MinorUnits.of(cap));
+    }
+
+    /**
+     * @return The number of decimal places of the sampled amounts.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Samples an amount.
+     *
+     * @param random1 A uniformly distributed random value.
+     * @param random2 Another, independent one (not used by every distribution).
+     * @return The amount in minor units.
+     */
+    public abstract long sample(long random1, long random2);
+
+    /**
+     * @return A uniformly distributed double in [0, 1) from the upper 53 bits of a random value.
+     */
+    static double toUnitInterval(long random) {
+        return (random >>> 11) * DOUBLE_UNIT;
+    }
+
+    private static final class Uniform extends AmountDistribution {
+        private final long min;
+        private final long max;
+        private final double range; // Number of possible amounts
+
+        Uniform(int scale, long min, long max) {
+            super(scale);
+            this.min = min;
+            this.max = max;
+            this.range = (double) (max - min) + 1;
+        }
+
+        @Override
+        public long sample(long random1, long random2) {
+            return Math.min(max, min + (long) (toUnitInterval(random1) * range)); // Rounding may reach max + 1
+        }
+
+        @Override
+        public String toString() {
+            return "uniform(" + MinorUnits.toPlainString(min, getScale()) + "," + MinorUnits.toPlainString(max, getScale()) + ")";
+        }
+    }
+
+    private static final class LogNormal extends AmountDistribution {
+        private final double median;
+        private final double sigma;
+        private final long max;
+
+        LogNormal(int scale, long median, double sigma, long max) {
+            super(scale);
+            this.median = median;
+            this.sigma = sigma;
+            this.max = max;
+        }
+
+        @Override
+        public long sample(long random1, long random2) {
+            // Box-Muller transform: a standard normal value from two uniform ones (u1 must not be 0)
+            double u1 = 1.0 - toUnitInterval(random1);
+            double u2 = toUnitInterval(random2);
+            double normal = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+            double amount = median * Math.exp(sigma * normal);
+            if (amount >= max) {
+                return max;
+            }
+            return Math.max(1L, Math.round(amount)); // At least one minor unit
+        }
+
+        @Override
+        public String toString() {
+            return "lognormal(" + MinorUnits.toPlainString((long) median, getScale()) + "," + sigma + ")";
+        }
+    }
+}
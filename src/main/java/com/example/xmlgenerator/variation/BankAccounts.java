@@ -0,0 +1,229 @@
+package com.example.xmlgenerator.variation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates banks (national bank code and BIC) and accounts (IBAN) that pass validation: every IBAN carries
+ * correct ISO 13616 check digits and, where the country defines them in the BBAN (BE, ES, FR, NL), correct
+ * national check digits too. BICs follow the ISO 9362 format with the country of the bank and are not test BICs.
+ * The banks and accounts do not exist.
+ */
+final class BankAccounts {
+
+    private static final List<String> SUPPORTED_COUNTRIES = Arrays.asList("AT", "BE", "CH", "DE", "ES", "FR", "GB", "NL");
+
+    // Real institution codes for the countries whose BBAN starts with the letters of the BIC
+    private static final String[] GB_BANK_CODES = {"BARC", "LOYD", "NWBK", "HBUK", "MIDL", "RBOS", "NAIA", "CITI"};
+    private static final String[] NL_BANK_CODES = {"ABNA", "INGB", "RABO", "SNSB", "TRIO", "KNAB", "BUNQ", "ASNB"};
+
+    // Weights of the Spanish control digits (Codigo Cuenta Cliente)
+    private static final int[] ES_WEIGHTS = {1, 2, 4, 8, 5, 10, 9, 7, 3, 6};
+
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String LOCATION_LETTERS = "ABCDEFGHIJKLMNPQRSTUVWXYZ"; // Second character of the location code
+
+    private BankAccounts() {
+    }
+
+    /**
+     * A bank of the counterparty pool.
+     */
+    static final class Bank {
+        final String country;
+        final String code; // National bank code, the start of the BBAN
+        final String bic;
+
+        Bank(String country, String code, String bic) {
+            this.country = country;
+            this.code = code;
+            this.bic = bic;
+        }
+    }
+
+    static boolean isSupported(String country) {
+        return SUPPORTED_COUNTRIES.contains(country);
+    }
+
+    static String supportedCountries() {
+        return String.join(", ", SUPPORTED_COUNTRIES);
+    }
+
+    /**
+     * @param country One of the supported countries.
+     * @param random  The source of the random choices.
+     * @return A new bank of the country.
+     */
+    static Bank newBank(String country, SplittableRandom random) {
+        String code;
+        String institution = null; // First four letters of the BIC
+        switch (country) {
+            case "AT":
+                code = (1 + random.nextInt(9)) + digits(random, 4);
+                break;
+            case "BE":
+                code = digits(random, 3);
+                break;
+            case "CH":
+                code = digits(random, 5);
+                break;
+            case "DE":
+                code = (1 + random.nextInt(8)) + digits(random, 7); // German bank codes start with 1-8
+                break;
+            case "ES":
+                code = digits(random, 4);
+                break;
+            case "FR":
+                code = digits(random, 5);
+                break;
+            case "GB":
+                institution = GB_BANK_CODES[random.nextInt(GB_BANK_CODES.length)];
+                code = institution + digits(random, 6); // Bank code and sort code
+                break;
+            case "NL":
+                institution = NL_BANK_CODES[random.nextInt(NL_BANK_CODES.length)];
+                code = institution;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported country: " + country);
+        }
+        if (institution == null) {
+            institution = letters(random, 4);
+        }
+        // Letters only for the location code: a second character 0 (test BIC), 1 (passive participant) or 2 has a
+        // special meaning, and O is not allowed there
+        char location2 = LOCATION_LETTERS.charAt(random.nextInt(LOCATION_LETTERS.length()));
+        String bic = institution + country + letters(random, 1) + location2;
+        return new Bank(country, code, bic);
+    }
+
+    /**
+     * @param bank   The bank holding the account.
+     * @param random The source of the random choices.
+     * @return The IBAN of a new account at the bank.
+     */
+    static String newIban(Bank bank, SplittableRandom random) {
+        String bban;
+        switch (bank.country) {
+            case "AT":
+                bban = bank.code + digits(random, 11);
+                break;
+            case "BE": {
+                String account = bank.code + digits(random, 7);
+                long check = Long.parseLong(account) % 97;
+                bban = account + twoDigits(check == 0 ? 97 : check);
+                break;
+            }
+            case "CH":
+                bban = bank.code + digits(random, 12);
+                break;
+            case "DE":
+                bban = bank.code + digits(random, 10);
+                break;
+            case "ES": {
+                String branch = digits(random, 4);
+                String account = digits(random, 10);
+                bban = bank.code + branch + spanishControlDigit("00" + bank.code + branch) + spanishControlDigit(account) + account;
+                break;
+            }
+            case "FR": {
+                String branch = digits(random, 5);
+                String account = digits(random, 11);
+                long key = 97 - (89 * Long.parseLong(bank.code) + 15 * Long.parseLong(branch) + 3 * Long.parseLong(account)) % 97;
+                bban = bank.code + branch + account + twoDigits(key);
+                break;
+            }
+            case "GB":
+                bban = bank.code + digits(random, 8);
+                break;
+            case "NL":
+                bban = bank.code + dutchAccountNumber(random);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported country: " + bank.country);
+        }
+        return bank.country + ibanCheckDigits(bank.country, bban) + bban;
+    }
+
+    /**
+     * Computes the ISO 13616 check digits: 98 minus the remainder of (BBAN + country + "00") modulo 97,
+     * with letters counting as 10 to 35.
+     *
+     * @param country The country code.
+     * @param bban    The basic bank account number.
+     * @return The two check digits.
+     */
+    static String ibanCheckDigits(String country, String bban) {
+        int remainder = mod97(bban + country + "00");
+        return twoDigits(98 - remainder);
+    }
+
+    /**
+     * @param iban An IBAN without spaces.
+     * @return true if its check digits are correct.
+     */
+    static boolean isValidIban(String iban) {
+        return iban.length() > 4 && mod97(iban.substring(4) + iban.substring(0, 4)) == 1;
+    }
+
+    private static int mod97(String value) {
+        int remainder = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                remainder = (remainder * 10 + (c - '0')) % 97;
+            } else {
+                remainder = (remainder * 100 + (c - 'A' + 10)) % 97;
+            }
+        }
+        return remainder;
+    }
+
+    private static int spanishControlDigit(String tenDigits) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            sum += (tenDigits.charAt(i) - '0') * ES_WEIGHTS[i];
+        }
+        int digit = 11 - sum % 11;
+        return digit == 11 ? 0 : digit == 10 ? 1 : digit;
+    }
+
+    // Ten digit account number passing the Dutch eleven test (weights 10 down to 1, sum divisible by 11)
+    private static String dutchAccountNumber(SplittableRandom random) {
+        while (true) {
+            char[] digits = new char[10];
+            int sum = 0;
+            for (int i = 0; i < 9; i++) {
+                int digit = (i == 0) ? 1 + random.nextInt(9) : random.nextInt(10);
+                digits[i] = (char) ('0' + digit);
+                sum += digit * (10 - i);
+            }
+            int last = (11 - sum % 11) % 11;
+            if (last < 10) {
+                digits[9] = (char) ('0' + last);
+                return new String(digits);
+            }
+        }
+    }
+
+    private static String digits(SplittableRandom random, int count) {
+        char[] digits = new char[count];
+        for (int i = 0; i < count; i++) {
+            digits[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    private static String letters(SplittableRandom random, int count) {
+        char[] letters = new char[count];
+        for (int i = 0; i < count; i++) {
+            letters[i] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+        }
+        return new String(letters);
+    }
+
+    private static String twoDigits(long value) {
+        return (value < 10 ? "0" : "") + value;
+    }
+}
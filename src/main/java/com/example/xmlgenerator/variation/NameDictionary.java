@@ -0,0 +1,93 @@
+package com.example.xmlgenerator.variation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Source of counterparty names: either the built-in first and last name lists, combined at random,
+ * or a UTF-8 file with one full name per line. Blank lines and lines starting with # are skipped.
+ */
+final class NameDictionary {
+
+    // Nm is a Max140Text in every supported message type
+    private static final int MAX_NAME_LENGTH = 140;
+
+    private final String[] firstNames; // null for a file dictionary
+    private final String[] names;
+
+    private NameDictionary(String[] firstNames, String[] names) {
+        this.firstNames = firstNames;
+        this.names = names;
+    }
+
+    /**
+     * @return The dictionary of the built-in first and last names.
+     */
+    static NameDictionary builtin() {
+        return new NameDictionary(readResource("/variation/first-names.txt"), readResource("/variation/last-names.txt"));
+    }
+
+    /**
+     * @param file A UTF-8 file with one name per line.
+     * @return The dictionary of the names in the file.
+     * @throws IllegalArgumentException If the file cannot be read, has no names or a name is too long.
+     */
+    static NameDictionary fromFile(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            String[] names = readLines(in, file.getPath());
+            if (names.length == 0) {
+                throw new IllegalArgumentException("Name dictionary " + file + " contains no names.");
+            }
+            return new NameDictionary(null, names);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read name dictionary " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param random The source of the random choice.
+     * @return A name from the dictionary.
+     */
+    String pick(SplittableRandom random) {
+        if (firstNames == null) {
+            return names[random.nextInt(names.length)];
+        }
+        return firstNames[random.nextInt(firstNames.length)] + " " + names[random.nextInt(names.length)];
+    }
+
+    private static String[] readResource(String resource) {
+        try (InputStream in = NameDictionary.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + resource);
+            }
+            return readLines(in, resource);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read resource " + resource, e);
+        }
+    }
+
+    private static String[] readLines(InputStream in, String source) throws IOException {
+        List<String> names = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.length() > MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("Name longer than " + MAX_NAME_LENGTH + " characters in " + source + ": " + line);
+            }
+            names.add(line);
+        }
+        return names.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.xmlgenerator.variation;
+
+import com.example.xmlgenerator.amount.MinorUnits;
+import com.example.xmlgenerator.amount.TransactionAmounts;
+
+import java.util.Locale;
+
+/**
+ * The varied values of the transactions of one generated copy.
+ * Every value is a pure function of the copy and the transaction position (batch index, transaction index),
+ * so it can be asked for in any order, any number of times and from any thread. The amount, currency and
+ * counterparty of a transaction are independent; the name, IBAN and BIC of a transaction belong to the same
+ * counterparty of the pool.
+ *
+ * The getters of the fields that do not vary return null; the engines then keep the template's value.
+ */
+public final class TransactionVariation implements TransactionAmounts {
+
+    // Prefix of the seeded message IDs. The IdGenerator IDs start with N, R or S, so a seeded ID never looks like one.
+    private static final String MESSAGE_ID_PREFIX = "D";
+
+    private final Variation variation;
+    private final long copySeed;
+
+    TransactionVariation(Variation variation, long copySeed) {
+        this.variation = variation;
+        this.copySeed = copySeed;
+    }
+
+    /**
+     * @return The scale of the varied amounts (see variesAmounts).
+     */
+    @Override
+    public int getScale() {
+        return variation.getAmountDistribution().getScale();
+    }
+
+    /**
+     * @return The amount of a transaction in minor units, rounded down to the minor unit of its currency.
+     */
+    @Override
+    public long getUnscaledAmount(int batchIndex, int transactionIndex) {
+        AmountDistribution distribution = variation.getAmountDistribution();
+        long amount = distribution.sample(hash(Variation.AMOUNT_SALT, batchIndex, transactionIndex),
+                hash(Variation.AMOUNT_SALT_2, batchIndex, transactionIndex));
+        if (variation.variesCurrencies()) {
+            long divisor = variation.currencyDivisor(currencyIndex(batchIndex, transactionIndex));
+            if (divisor > 1 && amount > 0) {
+                amount = Math.max(divisor, amount - amount % divisor); // At least one unit of the currency
+            }
+        }
+        return amount;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * @return The amount of a transaction as written, with the number of decimals of its currency
+     * (e.g. "1234" for JPY where the other currencies get "1234.56"); null if the amounts do not vary.
+     */
+    public String getAmountText(int batchIndex, int transactionIndex) {
+        if (!variation.variesAmounts()) {
+            return null;
+        }
+        long amount = getUnscaledAmount(batchIndex, transactionIndex);
+        if (variation.variesCurrencies()) {
+            int currency = currencyIndex(batchIndex, transactionIndex);
+            return MinorUnits.toPlainString(amount / variation.currencyDivisor(currency), variation.currencyScale(currency));
+        }
+        return MinorUnits.toPlainString(amount, getScale());
+    }
+
+    /**
+     * @return The currency code of a transaction (the Ccy attribute of its amount), or null if it does not vary.
+     */
+    public String getCurrency(int batchIndex, int transactionIndex) {
+        return variation.variesCurrencies() ? variation.currency(currencyIndex(batchIndex, transactionIndex)) : null;
+    }
+
+    /**
+     * @return The counterparty name of a transaction, or null if it does not vary.
+     */
+    public String getName(int batchIndex, int transactionIndex) {
+        return variation.variesNames() ? variation.name(counterpartyIndex(batchIndex, transactionIndex)) : null;
+    }
+
+    /**
+     * @return The counterparty IBAN of a transaction, or null if it does not vary.
+     */
+    public String getIban(int batchIndex, int transactionIndex) {
+        return variation.variesIbans() ? variation.iban(counterpartyIndex(batchIndex, transactionIndex)) : null;
+    }
+
+    /**
+     * @return The BIC of the counterparty's bank, or null if it does not vary.
+     */
+    public String getBic(int batchIndex, int transactionIndex) {
+        return variation.variesBics() ? variation.bic(counterpartyIndex(batchIndex, transactionIndex)) : null;
+    }
+
+    /**
+     * @return The message ID of the copy in a seeded variation: "D" and 13 base 36 digits derived from the seed,
+     * the template and the copy, so that a rerun with the same seed writes the same IDs (and the same batch and
+     * transaction IDs). Unlike the IdGenerator IDs, they repeat across runs by design; their own prefix keeps them from being
+     * mistaken for (or colliding with) the IDs of the snowflake generator, which have the same length.
+     */
+    public String getMessageId() {
+        String digits = Long.toString(Variation.mix(copySeed ^ Variation.MESSAGE_ID_SALT) >>> 1, 36).toUpperCase(Locale.ROOT);
+        return MESSAGE_ID_PREFIX + "0000000000000".substring(digits.length()) + digits;
+    }
+
+    public boolean isSeeded() { return variation.isSeeded(); }
+    public boolean variesAmounts() { return variation.variesAmounts(); }
+    public boolean variesCurrencies() { return variation.variesCurrencies(); }
+    public boolean variesNames() { return variation.variesNames(); }
+    public boolean variesIbans() { return variation.variesIbans(); }
+    public boolean variesBics() { return variation.variesBics(); }
+
+    private int currencyIndex(int batchIndex, int transactionIndex) {
+        return variation.currencyIndex(hash(Variation.CURRENCY_SALT, batchIndex, transactionIndex));
+    }
+
+    private int counterpartyIndex(int batchIndex, int transactionIndex) {
+        return variation.counterpartyIndex(hash(Variation.COUNTERPARTY_SALT, batchIndex, transactionIndex));
+    }
+
+    /**
+     * @return A hash of the copy, the field and the transaction position.
+     */
+    private long hash(long salt, int batchIndex, int transactionIndex) {
+        long position = ((long) batchIndex << 32) | (transactionIndex & 0xFFFFFFFFL);
+        return Variation.mix(copySeed ^ salt ^ Variation.mix(position + salt));
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.xmlgenerator.variation;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Currency;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The shared, immutable part of a data variation: the seed, the amount distribution, the currency weights
+ * and the preallocated counterparty pool (names, IBANs and BICs).
+ *
+ * Everything that takes time is done once here. The per-transaction values (see TransactionVariation) are
+ * then derived from a hash of the seed, the copy, the batch and the transaction position: there is no
+ * random generator state to share or advance, so every engine and every thread gets the same value for
+ * the same transaction, and a value costs a few multiplications and an array lookup.
+ *
+ * A variation whose spec has a seed is seeded: the message ID of each copy is derived from the seed as well and
+ * the dates come from a fixed clock, so the whole output only depends on the spec and the generation parameters.
+ * The copies of several templates generated with the same seed in one run are told apart by the template number,
+ * which salts the copy seeds: each template gets its own message IDs and transaction values.
+ */
+public final class Variation {
+
+    // Salts keeping the hashes of the different fields independent of each other
+    static final long AMOUNT_SALT = 0x5851F42D4C957F2DL;
+    static final long AMOUNT_SALT_2 = 0x2545F4914F6CDD1DL;
+    static final long CURRENCY_SALT = 0x14057B7EF767814FL;
+    static final long COUNTERPARTY_SALT = 0x9E3779B97F4A7C15L;
+    private static final long POOL_SALT = 0xD1B54A32D192ED03L;
+    static final long MESSAGE_ID_SALT = 0xAEF17502108EF2D9L;
+    private static final long TEMPLATE_SALT = 0xC2B2AE3D27D4EB4FL;
+
+    // Date and time of seeded runs without a clock setting
+    private static final LocalDateTime DEFAULT_SEEDED_CLOCK = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final long seed;
+    private final boolean seeded; // The seed was given, not chosen for this run
+    private final int templateNumber; // Of the template among several of one run, 0 if it is the only one
+    private final Clock clock; // Fixed clock of the dates, or null for the current time
+    private final AmountDistribution amountDistribution; // null: keep the template amounts
+    private final String[] currencies; // null: keep the template currency
+    private final int[] cumulativeWeights;
+    private final long[] currencyDivisors; // Amounts are rounded down to a multiple of these, per currency
+    private final int[] currencyScales; // Decimal places written per currency
+    private final String[] names; // Counterparty pool, null for the fields that do not vary
+    private final String[] ibans;
+    private final String[] bics;
+    private final int poolSize;
+
+    private Variation(VariationSpec spec, long seed, int templateNumber) {
+        this.seed = seed;
+        this.seeded = spec.getSeed() != null;
+        this.templateNumber = templateNumber;
+        this.clock = clockOf(spec);
+        this.amountDistribution = spec.getAmountDistribution();
+
+        List<String> currencyCodes = spec.getCurrencies();
+        if (currencyCodes.isEmpty()) {
+            this.currencies = null;
+            this.cumulativeWeights = null;
+            this.currencyDivisors = null;
+            this.currencyScales = null;
+        } else {
+            this.currencies = currencyCodes.toArray(new String[0]);
+            this.cumulativeWeights = spec.getCurrencyWeights();
+            for (int i = 1; i < cumulativeWeights.length; i++) {
+                cumulativeWeights[i] += cumulativeWeights[i - 1];
+            }
+            // Amounts drawn with more decimals than the currency has (e.g. 1234.56 in JPY) are rounded down
+            // to the currency's minor unit and written with its number of decimals.
+            int scale = (amountDistribution != null) ? amountDistribution.getScale() : 0;
+            this.currencyDivisors = new long[currencies.length];
+            this.currencyScales = new int[currencies.length];
+            for (int i = 0; i < currencies.length; i++) {
+                int digits = Currency.getInstance(currencies[i]).getDefaultFractionDigits();
+                currencyScales[i] = (digits >= 0 && digits < scale) ? digits : scale;
+                currencyDivisors[i] = pow10(scale - currencyScales[i]);
+            }
+        }
+
+        // The pool only depends on the seed, so all copies share the same counterparties.
+        this.poolSize = spec.getPoolSize();
+        SplittableRandom random = new SplittableRandom(seed ^ POOL_SALT);
+        if (spec.variesNames()) {
+            NameDictionary dictionary = spec.hasBuiltinNames() ? NameDictionary.builtin() : NameDictionary.fromFile(spec.getNameFile());
+            this.names = new String[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                names[i] = dictionary.pick(random);
+            }
+        } else {
+            this.names = null;
+        }
+        if (spec.variesIbans() || spec.variesBics()) {
+            // About 20 accounts per bank, so the BICs repeat the way they do in real payment files
+            List<String> countries = spec.getCountries();
+            BankAccounts.Bank[] banks = new BankAccounts.Bank[Math.max(1, Math.min(2000, poolSize / 20))];
+            for (int i = 0; i < banks.length; i++) {
+                banks[i] = BankAccounts.newBank(countries.get(i % countries.size()), random);
+            }
+            String[] poolIbans = new String[poolSize];
+            String[] poolBics = new String[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                BankAccounts.Bank bank = banks[random.nextInt(banks.length)];
+                poolIbans[i] = BankAccounts.newIban(bank, random);
+                poolBics[i] = bank.bic;
+            }
+            this.ibans = spec.variesIbans() ? poolIbans : null;
+            this.bics = spec.variesBics() ? poolBics : null;
+        } else {
+            this.ibans = null;
+            this.bics = null;
+        }
+    }
+
+    /**
+     * Prepares a variation. Without a seed in the spec a random one is chosen and logged,
+     * so that the run can be repeated.
+     *
+     * @param spec The variation spec.
+     * @return The variation, ready to be shared by all generation threads.
+     * @throws IllegalArgumentException If the name dictionary cannot be read.
+     */
+    public static Variation create(VariationSpec spec) {
+        return create(spec, 0);
+    }
+
+    /**
+     * Prepares the variation of one of several templates generated in the same run (see create above).
+     *
+     * @param spec           The variation spec.
+     * @param templateNumber The 1-based number of the template in the run, or 0 if it is the only template.
+     * @return The variation, ready to be shared by all generation threads.
+     * @throws IllegalArgumentException If the name dictionary cannot be read.
+     */
+    public static Variation create(VariationSpec spec, int templateNumber) {
+        long seed;
+        if (spec.getSeed() != null) {
+            seed = spec.getSeed();
+        } else {
+            seed = ThreadLocalRandom.current().nextLong();
+            System.out.println("Variation seed: " + seed);
+        }
+        return new Variation(spec, seed, templateNumber);
+    }
+
+    /**
+     * @param spec The variation spec, or null.
+     * @return The fixed clock of the dates of the spec (its clock setting, or the default one of seeded runs),
+     * or null if the dates are the current time. The clock is in UTC, so the times are written as given.
+     */
+    public static Clock clockOf(VariationSpec spec) {
+        if (spec == null) {
+            return null;
+        }
+        LocalDateTime time = (spec.getClock() != null) ? spec.getClock() : (spec.getSeed() != null ? DEFAULT_SEEDED_CLOCK : null);
+        return (time != null) ? Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC) : null;
+    }
+
+    /**
+     * @param copyIndex The index of the generated copy (file), starting at 0.
+     * @return The values of the transactions of that copy.
+     */
+    public TransactionVariation forCopy(int copyIndex) {
+        // Template number 0 adds nothing, so a single template keeps the values it always had
+        return new TransactionVariation(this, mix(seed + (copyIndex + 1L) * COUNTERPARTY_SALT + templateNumber * TEMPLATE_SALT));
+    }
+
+    public long getSeed() { return seed; }
+    public boolean isSeeded() { return seeded; }
+    /** @return The fixed clock of the dates and file names, or null if they use the current time. */
+    public Clock getClock() { return clock; }
+    public boolean variesAmounts() { return amountDistribution != null; }
+    public boolean variesCurrencies() { return currencies != null; }
+    public boolean variesNames() { return names != null; }
+    public boolean variesIbans() { return ibans != null; }
+    public boolean variesBics() { return bics != null; }
+
+    AmountDistribution getAmountDistribution() { return amountDistribution; }
+
+    /**
+     * @param hash A hash of the transaction position.
+     * @return The index of the currency with the given weights.
+     */
+    int currencyIndex(long hash) {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        int value = (int) ((hash >>> 1) % total);
+        int index = 0;
+        while (value >= cumulativeWeights[index]) {
+            index++;
+        }
+        return index;
+    }
+
+    String currency(int index) { return currencies[index]; }
+    long currencyDivisor(int index) { return currencyDivisors[index]; }
+    int currencyScale(int index) { return currencyScales[index]; }
+
+    /**
+     * @param hash A hash of the transaction position.
+     * @return The index of a counterparty of the pool.
+     */
+    int counterpartyIndex(long hash) {
+        return (int) ((hash >>> 1) % poolSize);
+    }
+
+    String name(int index) { return names[index]; }
+    String iban(int index) { return ibans[index]; }
+    String bic(int index) { return bics[index]; }
+
+    /**
+     * The SplitMix64 finalizer: spreads every bit of the input over the whole output.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long pow10(int exponent) {
+        long value = 1;
+        for (int i = 0; i < exponent; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "Variation(seed=" + seed + (seeded ? "" : " (random)")
+                + (clock != null ? ", clock=" + clock.instant() : "")
+                + (amountDistribution != null ? ", amount=" + amountDistribution : "")
+                + (currencies != null ? ", currencies=" + currencies.length : "")
+                + (names != null ? ", names" : "") + (ibans != null ? ", ibans" : "") + (bics != null ? ", bics" : "")
+                + ", pool=" + poolSize + ")";
+    }
+}
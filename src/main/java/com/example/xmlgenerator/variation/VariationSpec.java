@@ -0,0 +1,245 @@
+package com.example.xmlgenerator.variation;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Configuration of the data variation: which transaction fields vary and how.
+ *
+ * A spec is a list of key=value settings separated by semicolons or line breaks, for example
+ * "seed=42; amount=uniform(1.00,2500.00); currency=EUR:90,USD:7,GBP:3; name=builtin; iban=on; bic=on; countries=DE,FR,NL".
+ * Fields without a setting keep the template's value.
+ * <ul>
+ *   <li>seed: makes a run reproducible; without it a random seed is chosen and logged. With a seed the output is
+ *       byte-identical from run to run, whatever the number of threads: the message IDs are derived from the
+ *       seed, the template and the copy, and the dates from the clock setting.</li>
+ *   <li>clock: the date and time written as CreDtTm, ReqdExctnDt and in the file names, e.g. 2024-03-01T09:30:00
+ *       (default with a seed: 2000-01-01T00:00:00, otherwise the current time).</li>
+ *   <li>amount: fixed (default), uniform(min,max) or lognormal(median,sigma[,max]); the decimals of min or
+ *       median give the scale of the amounts.</li>
+ *   <li>currency: currency codes with optional weights, e.g. EUR:90,USD:10.</li>
+ *   <li>name: builtin (first and last name dictionaries) or file:path (one name per line, where allowed).</li>
+ *   <li>iban, bic: on or off. Accounts and banks come from a pool of counterparties of the given countries.</li>
+ *   <li>countries: the countries of the counterparty banks (default DE), see BankAccounts.</li>
+ *   <li>pool: number of distinct counterparties (default 10000, at most 100000).</li>
+ * </ul>
+ */
+public final class VariationSpec {
+
+    public static final int DEFAULT_POOL_SIZE = 10000;
+    public static final int MAX_POOL_SIZE = 100000;
+
+    // ISO 20022 amounts have at most 18 digits, 5 of them decimals
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("9999999999999.99999");
+
+    private final Long seed; // null: choose one per run
+    private final LocalDateTime clock; // null: the current time, or the default clock of seeded runs
+    private final AmountDistribution amountDistribution; // null: keep the template amount
+    private final List<String> currencies; // Empty: keep the template currency
+    private final int[] currencyWeights;
+    private final boolean builtinNames;
+    private final File nameFile; // Dictionary file, or null
+    private final boolean ibans;
+    private final boolean bics;
+    private final List<String> countries;
+    private final int poolSize;
+
+    private VariationSpec(Map<String, String> settings, boolean allowFiles) {
+        String seedValue = settings.remove("seed");
+        this.seed = (seedValue != null) ? parseLong("seed", seedValue) : null;
+
+        String clockValue = settings.remove("clock");
+        try {
+            this.clock = (clockValue != null) ? LocalDateTime.parse(clockValue) : null;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid clock (expected yyyy-MM-ddTHH:mm:ss): " + clockValue);
+        }
+
+        String amount = settings.remove("amount");
+        this.amountDistribution = (amount != null) ? parseAmount(amount) : null;
+
+        this.currencies = new ArrayList<>();
+        String currency = settings.remove("currency");
+        List<Integer> weights = new ArrayList<>();
+        if (currency != null) {
+            for (String item : currency.split(",")) {
+                String[] parts = item.trim().split(":");
+                String code = parts[0].trim().toUpperCase(Locale.ROOT);
+                try {
+                    Currency.getInstance(code);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown currency: " + code);
+                }
+                int weight = (parts.length > 1) ? (int) parseLong("currency weight", parts[1].trim()) : 1;
+                if (weight < 1 || parts.length > 2) {
+                    throw new IllegalArgumentException("Invalid currency weight: " + item.trim());
+                }
+                currencies.add(code);
+                weights.add(weight);
+            }
+        }
+        this.currencyWeights = new int[weights.size()];
+        for (int i = 0; i < currencyWeights.length; i++) {
+            currencyWeights[i] = weights.get(i);
+        }
+
+        String name = settings.remove("name");
+        if (name == null || "off".equals(name)) {
+            this.builtinNames = false;
+            this.nameFile = null;
+        } else if ("builtin".equals(name)) {
+            this.builtinNames = true;
+            this.nameFile = null;
+        } else if (name.startsWith("file:")) {
+            if (!allowFiles) {
+                throw new IllegalArgumentException("Name dictionary files are not allowed here, use name=builtin.");
+            }
+            this.builtinNames = false;
+            this.nameFile = new File(name.substring("file:".length()).trim());
+        } else {
+            throw new IllegalArgumentException("Invalid name setting: " + name + " (expected builtin or file:path)");
+        }
+
+        this.ibans = parseSwitch("iban", settings.remove("iban"));
+        this.bics = parseSwitch("bic", settings.remove("bic"));
+
+        this.countries = new ArrayList<>();
+        String countryList = settings.remove("countries");
+        for (String country : (countryList != null ? countryList : "DE").split(",")) {
+            String code = country.trim().toUpperCase(Locale.ROOT);
+            if (!BankAccounts.isSupported(code)) {
+                throw new IllegalArgumentException("Unsupported country: " + code + " (supported: " + BankAccounts.supportedCountries() + ")");
+            }
+            countries.add(code);
+        }
+
+        String pool = settings.remove("pool");
+        this.poolSize = (pool != null) ? (int) parseLong("pool", pool) : DEFAULT_POOL_SIZE;
+        if (poolSize < 1 || poolSize > MAX_POOL_SIZE) {
+            throw new IllegalArgumentException("pool must be between 1 and " + MAX_POOL_SIZE + ": " + pool);
+        }
+
+        if (!settings.isEmpty()) {
+            throw new IllegalArgumentException("Unknown variation setting: " + settings.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Parses a variation spec.
+     *
+     * @param spec       The settings, e.g. "seed=42; amount=uniform(1.00,2500.00)".
+     * @param allowFiles Whether dictionaries may be read from files (command line only, never for web requests).
+     * @return The spec, or null if the text is null or blank.
+     * @throws IllegalArgumentException If a setting is unknown or invalid.
+     */
+    public static VariationSpec parse(String spec, boolean allowFiles) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String setting : spec.split("[;\\r\\n]+")) {
+            setting = setting.trim();
+            if (setting.isEmpty() || setting.startsWith("#")) {
+                continue;
+            }
+            int equals = setting.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Invalid variation setting (expected key=value): " + setting);
+            }
+            String key = setting.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            if (settings.put(key, setting.substring(equals + 1).trim()) != null) {
+                throw new IllegalArgumentException("Duplicate variation setting: " + key);
+            }
+        }
+        return settings.isEmpty() ? null : new VariationSpec(settings, allowFiles);
+    }
+
+    private static AmountDistribution parseAmount(String amount) {
+        if ("fixed".equals(amount)) {
+            return null;
+        }
+        int open = amount.indexOf('(');
+        if (open < 0 || !amount.endsWith(")")) {
+            throw new IllegalArgumentException("Invalid amount distribution: " + amount
+                    + " (expected fixed, uniform(min,max) or lognormal(median,sigma[,max]))");
+        }
+        String type = amount.substring(0, open).trim();
+        String[] args = amount.substring(open + 1, amount.length() - 1).split(",");
+        if ("uniform".equals(type) && args.length == 2) {
+            BigDecimal min = parseAmountValue(args[0]);
+            BigDecimal max = parseAmountValue(args[1]);
+            if (min.compareTo(max) > 0) {
+                throw new IllegalArgumentException("Minimum amount " + min + " is above the maximum " + max);
+            }
+            return AmountDistribution.uniform(min, max);
+        }
+        if ("lognormal".equals(type) && (args.length == 2 || args.length == 3)) {
+            BigDecimal median = parseAmountValue(args[0]);
+            double sigma;
+            try {
+                sigma = Double.parseDouble(args[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid sigma: " + args[1].trim());
+            }
+            if (!(sigma >= 0 && sigma <= 10) || median.signum() <= 0) {
+                throw new IllegalArgumentException("lognormal needs a positive median and a sigma between 0 and 10: " + amount);
+            }
+            BigDecimal max = (args.length == 3) ? parseAmountValue(args[2]) : MAX_AMOUNT;
+            return AmountDistribution.logNormal(median, sigma, max);
+        }
+        throw new IllegalArgumentException("Invalid amount distribution: " + amount);
+    }
+
+    private static BigDecimal parseAmountValue(String value) {
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + value.trim());
+        }
+        if (amount.signum() < 0 || amount.compareTo(MAX_AMOUNT) > 0 || amount.scale() < 0 || amount.scale() > 5) {
+            throw new IllegalArgumentException("Amount out of range (0 to " + MAX_AMOUNT.toPlainString() + ", at most 5 decimals): " + value.trim());
+        }
+        return amount;
+    }
+
+    private static boolean parseSwitch(String key, String value) {
+        if (value == null || "off".equals(value) || "false".equals(value)) {
+            return false;
+        }
+        if ("on".equals(value) || "true".equals(value)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Invalid " + key + " setting: " + value + " (expected on or off)");
+    }
+
+    private static long parseLong(String key, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+
+    public Long getSeed() { return seed; }
+    public LocalDateTime getClock() { return clock; }
+    public AmountDistribution getAmountDistribution() { return amountDistribution; }
+    public List<String> getCurrencies() { return Collections.unmodifiableList(currencies); }
+    public int[] getCurrencyWeights() { return currencyWeights.clone(); }
+    public boolean hasBuiltinNames() { return builtinNames; }
+    public File getNameFile() { return nameFile; }
+    public boolean variesNames() { return builtinNames || nameFile != null; }
+    public boolean variesIbans() { return ibans; }
+    public boolean variesBics() { return bics; }
+    public List<String> getCountries() { return Collections.unmodifiableList(countries); }
+    public int getPoolSize() { return poolSize; }
+}
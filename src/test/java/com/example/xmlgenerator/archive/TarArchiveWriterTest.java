@@ -0,0 +1,270 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the archives written by TarArchiveWriter field by field: ustar headers and their checksums, 512 byte
+ * padding of the entries, the end-of-archive blocks padded to a full record, and the tar.gz round trip.
+ */
+class TarArchiveWriterTest {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MODIFICATION_TIME = 1715953531L; // Seconds since the epoch
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochSecond(MODIFICATION_TIME, 999000000), ZoneOffset.UTC);
+
+    @Test
+    void writesUstarHeadersAndPadsEntriesAndRecord() throws Exception {
+        byte[] empty = new byte[0];
+        byte[] oneBlock = content(BLOCK_SIZE);
+        byte[] partialBlocks = content(3 * BLOCK_SIZE + 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out, HeapOutputSink.getInstance(), CLOCK);
+        writer.addEntry("empty.xml", heapContent(empty));
+        writer.addEntry("one-block.xml", heapContent(oneBlock));
+        writer.addEntry("partial.xml", heapContent(partialBlocks));
+        writer.close();
+
+        byte[] archive = out.toByteArray();
+        List<TarEntry> entries = readTar(archive);
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(0), "empty.xml", empty);
+        assertEntry(entries.get(1), "one-block.xml", oneBlock);
+        assertEntry(entries.get(2), "partial.xml", partialBlocks);
+        // The entry after a partial block starts on the next block, the padding is zeros
+        assertEquals(0, entries.get(2).dataOffset % BLOCK_SIZE);
+        int paddingStart = entries.get(2).dataOffset + partialBlocks.length;
+        assertZeros(archive, paddingStart, roundUp(paddingStart, BLOCK_SIZE));
+
+        // Two zero blocks end the archive, padded with zeros to a full record
+        assertEquals(0, archive.length % RECORD_SIZE);
+        int end = roundUp(paddingStart, BLOCK_SIZE);
+        assertTrue(archive.length - end >= 2 * BLOCK_SIZE);
+        assertZeros(archive, end, archive.length);
+    }
+
+    @Test
+    void spoolsEntriesOfUnknownSize() throws Exception {
+        byte[] xml = content(5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out, HeapOutputSink.getInstance(), CLOCK);
+        try (OutputStream entry = writer.openEntry("generated.xml")) {
+            entry.write(xml, 0, 100);
+            entry.write(xml[100]);
+            entry.write(xml, 101, xml.length - 101);
+        }
+        writer.openEntry("unclosed.xml").write(xml); // Completed by finish
+        writer.close();
+
+        List<TarEntry> entries = readTar(out.toByteArray());
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), "generated.xml", xml);
+        assertEntry(entries.get(1), "unclosed.xml", xml);
+    }
+
+    @Test
+    void writesSizesAbove8GbInBase256() throws Exception {
+        final long size = 9L * 1024 * 1024 * 1024;
+        // Only the header is checked: the content claims the size but writes nothing
+        GeneratedContent huge = new GeneratedContent() {
+            @Override
+            public long getLength() { return size; }
+            @Override
+            public InputStream openStream() { return new ByteArrayInputStream(new byte[0]); }
+            @Override
+            public void writeTo(OutputStream out) { }
+            @Override
+            public void discard() { }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out, HeapOutputSink.getInstance(), CLOCK);
+        writer.addEntry("huge.xml", huge);
+        writer.finish();
+
+        byte[] header = Arrays.copyOf(out.toByteArray(), BLOCK_SIZE);
+        assertEquals((byte) 0x80, header[124]);
+        long decoded = 0;
+        for (int i = 125; i < 136; i++) {
+            decoded = (decoded << 8) | (header[i] & 0xff);
+        }
+        assertEquals(size, decoded);
+        assertChecksum(header);
+    }
+
+    @Test
+    void refusesDuplicateEntryNames() throws Exception {
+        byte[] xml = content(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out, HeapOutputSink.getInstance(), CLOCK);
+        writer.addEntry("a.xml", heapContent(xml));
+        try {
+            writer.addEntry("a.xml", heapContent(xml));
+            fail("Duplicate name added");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.xml"), e.getMessage());
+        }
+        try {
+            writer.openEntry("a.xml");
+            fail("Duplicate name opened");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.xml"), e.getMessage());
+        }
+        writer.close();
+
+        assertEquals(1, readTar(out.toByteArray()).size());
+    }
+
+    @Test
+    void roundTripsThroughTarGz() throws Exception {
+        byte[] first = content(3000);
+        byte[] second = content(700);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveSettings settings = new ArchiveSettings(ZipCompression.DEFAULT, 6, 3, HeapOutputSink.getInstance(), CLOCK);
+        try (ArchiveWriter writer = ArchiveFormat.TAR_GZ.newWriter(out, settings)) {
+            writer.addEntry("first.xml", heapContent(first));
+            try (OutputStream entry = writer.openEntry("second.xml")) {
+                entry.write(second);
+            }
+        }
+
+        byte[] tar;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            tar = readAll(in);
+        }
+        assertEquals(0, tar.length % RECORD_SIZE);
+        List<TarEntry> entries = readTar(tar);
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), "first.xml", first);
+        assertEntry(entries.get(1), "second.xml", second);
+    }
+
+    /**
+     * An entry read back from an archive.
+     */
+    private static final class TarEntry {
+        final byte[] header;
+        final int dataOffset;
+        final byte[] content;
+
+        TarEntry(byte[] header, int dataOffset, byte[] content) {
+            this.header = header;
+            this.dataOffset = dataOffset;
+            this.content = content;
+        }
+    }
+
+    // Reads the entries up to the first zero block
+    private static List<TarEntry> readTar(byte[] archive) {
+        List<TarEntry> entries = new ArrayList<>();
+        int offset = 0;
+        while (offset + BLOCK_SIZE <= archive.length) {
+            byte[] header = Arrays.copyOfRange(archive, offset, offset + BLOCK_SIZE);
+            if (Arrays.equals(header, new byte[BLOCK_SIZE])) {
+                break;
+            }
+            assertChecksum(header);
+            int size = (int) parseOctal(header, 124, 12);
+            int dataOffset = offset + BLOCK_SIZE;
+            entries.add(new TarEntry(header, dataOffset, Arrays.copyOfRange(archive, dataOffset, dataOffset + size)));
+            offset = roundUp(dataOffset + size, BLOCK_SIZE);
+        }
+        return entries;
+    }
+
+    private static void assertEntry(TarEntry entry, String name, byte[] content) {
+        byte[] header = entry.header;
+        assertEquals(name, new String(header, 0, name.length(), StandardCharsets.UTF_8));
+        assertZeros(header, name.length(), 100); // Rest of the name field
+        assertEquals("0000644\0", ascii(header, 100, 8));
+        assertEquals("0000000\0", ascii(header, 108, 8));
+        assertEquals("0000000\0", ascii(header, 116, 8));
+        assertEquals(content.length, parseOctal(header, 124, 12));
+        assertEquals(0, header[135]); // Size field ends with a NUL
+        assertEquals(MODIFICATION_TIME, parseOctal(header, 136, 12));
+        assertEquals('0', header[156]);
+        assertEquals("ustar\0", ascii(header, 257, 6));
+        assertEquals("00", ascii(header, 263, 2));
+        assertArrayEquals(content, entry.content, name);
+    }
+
+    // The checksum is the sum of the header bytes with the checksum field as spaces: 6 octal digits, NUL, space
+    private static void assertChecksum(byte[] header) {
+        long expected = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            expected += (i >= 148 && i < 156) ? ' ' : header[i] & 0xff;
+        }
+        assertEquals(0, header[154]);
+        assertEquals(' ', header[155]);
+        assertEquals(expected, parseOctal(header, 148, 7));
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length && header[i] != 0; i++) {
+            assertTrue(header[i] >= '0' && header[i] <= '7', "Not an octal digit at " + i + ": " + header[i]);
+            value = (value << 3) | (header[i] - '0');
+        }
+        return value;
+    }
+
+    private static String ascii(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    private static void assertZeros(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertEquals(0, bytes[i], "Not zero at " + i);
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    private static GeneratedContent heapContent(byte[] content) throws IOException {
+        try (SinkOutputStream out = HeapOutputSink.getInstance().open("entry.xml")) {
+            out.write(content);
+            return out.finish();
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.xmlgenerator.archive;
+
+import com.example.xmlgenerator.output.GeneratedContent;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Round trips of archives written by ZipArchiveWriter through java.util.zip: ZipFile reads the central directory
+ * (sizes, CRCs, offsets, ZIP64 end records), ZipInputStream the local headers and data descriptors.
+ */
+class ZipArchiveWriterTest {
+
+    // An odd second, stored as the even second before it (DOS times have a 2 second resolution)
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(2024, 5, 17, 13, 45, 31);
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void copiesStoredAndDeflatedContentAsItIs() throws Exception {
+        byte[] xml = sampleXml(2000);
+        TestArchive archive = new TestArchive();
+        archive.writer.addEntry("stored.xml", compress(xml, ZipCompression.STORED));
+        archive.writer.addEntry("deflated.xml", compress(xml, ZipCompression.parse("9")));
+        archive.writer.addEntry("plain.xml", heapContent(xml)); // Not compressed while generated: stored
+        archive.writer.close();
+
+        Map<String, ZipEntry> entries = readWithZipFile(archive.bytes(), xml);
+        assertEquals(3, entries.size());
+        assertEquals(ZipEntry.STORED, entries.get("stored.xml").getMethod());
+        assertEquals(ZipEntry.DEFLATED, entries.get("deflated.xml").getMethod());
+        assertEquals(ZipEntry.STORED, entries.get("plain.xml").getMethod());
+        assertTrue(entries.get("deflated.xml").getCompressedSize() < xml.length, "Entry not deflated");
+        for (ZipEntry entry : entries.values()) {
+            assertEquals(xml.length, entry.getSize(), entry.getName());
+            assertEquals(crcOf(xml), entry.getCrc(), entry.getName());
+        }
+        assertEquals(3, readWithZipInputStream(archive.bytes(), xml).size());
+    }
+
+    @Test
+    void writesOpenEntriesWithDataDescriptors() throws Exception {
+        byte[] xml = sampleXml(5000);
+        TestArchive archive = new TestArchive();
+        for (ZipCompression compression : new ZipCompression[]{ZipCompression.DEFAULT, ZipCompression.STORED}) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(archive.out, compression, archive.clock);
+            try (OutputStream entry = writer.openEntry("generated.xml")) {
+                // Small and large writes, as the XML writer and the chunk copies do
+                entry.write(xml, 0, 100);
+                entry.write(xml[100]);
+                entry.write(xml, 101, xml.length - 101);
+            }
+            writer.addEntry("after.xml", compress(xml, ZipCompression.DEFAULT));
+            writer.close();
+
+            Map<String, ZipEntry> entries = readWithZipInputStream(archive.bytes(), xml);
+            assertEquals(2, entries.size());
+            // Entries of unknown size are always deflated, level 0 for stored
+            assertEquals(ZipEntry.DEFLATED, entries.get("generated.xml").getMethod());
+            assertEquals(xml.length, entries.get("generated.xml").getSize());
+            assertEquals(crcOf(xml), entries.get("generated.xml").getCrc());
+
+            entries = readWithZipFile(archive.bytes(), xml);
+            assertEquals(xml.length, entries.get("generated.xml").getSize());
+            assertEquals(crcOf(xml), entries.get("generated.xml").getCrc());
+            archive.out.reset();
+        }
+    }
+
+    @Test
+    void finishCompletesAnOpenEntry() throws Exception {
+        byte[] xml = sampleXml(10);
+        TestArchive archive = new TestArchive();
+        archive.writer.openEntry("open.xml").write(xml);
+        archive.writer.close();
+
+        assertEquals(1, readWithZipFile(archive.bytes(), xml).size());
+    }
+
+    @Test
+    void refusesDuplicateEntryNames() throws Exception {
+        byte[] xml = sampleXml(10);
+        TestArchive archive = new TestArchive();
+        archive.writer.addEntry("a.xml", heapContent(xml));
+        try {
+            archive.writer.addEntry("a.xml", heapContent(xml));
+            fail("Duplicate name added");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.xml"), e.getMessage());
+        }
+        try {
+            archive.writer.openEntry("a.xml");
+            fail("Duplicate name opened");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.xml"), e.getMessage());
+        }
+        archive.writer.openEntry("b.xml").close();
+        try {
+            archive.writer.addEntry("b.xml", heapContent(xml));
+            fail("Name of an open entry added");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("b.xml"), e.getMessage());
+        }
+        archive.writer.close();
+
+        // The refused entries left no trace in the archive
+        Map<String, ZipEntry> entries = readWithZipFile(archive.bytes(), null);
+        assertEquals(2, entries.size());
+        assertTrue(entries.containsKey("a.xml") && entries.containsKey("b.xml"));
+    }
+
+    @Test
+    void writesTheEntryTimeInTheClockZone() throws Exception {
+        TestArchive archive = new TestArchive();
+        archive.writer.addEntry("a.xml", compress(sampleXml(10), ZipCompression.DEFAULT));
+        archive.writer.openEntry("b.xml").close();
+        archive.writer.close();
+
+        for (ZipEntry entry : readWithZipFile(archive.bytes(), null).values()) {
+            // java.util.zip reads DOS times in the default zone
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getTime()), ZoneId.systemDefault());
+            assertEquals(ENTRY_TIME.withSecond(30), time, entry.getName());
+        }
+    }
+
+    @Test
+    void writesZip64EndRecordsForMoreThan65534Entries() throws Exception {
+        int count = 0xFFFF + 10;
+        byte[] xml = "<a/>".getBytes(StandardCharsets.UTF_8);
+        GeneratedContent content = heapContent(xml);
+        TestArchive archive = new TestArchive();
+        for (int i = 0; i < count; i++) {
+            archive.writer.addEntry("f" + i + ".xml", content);
+        }
+        archive.writer.close();
+
+        File file = writeFile(archive.bytes());
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertEquals(count, zipFile.size());
+            ZipEntry last = zipFile.getEntry("f" + (count - 1) + ".xml");
+            try (InputStream in = zipFile.getInputStream(last)) {
+                assertArrayEquals(xml, readAll(in));
+            }
+        }
+    }
+
+    /**
+     * An archive written to memory with the fixed entry time.
+     */
+    private static final class TestArchive {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Clock clock = Clock.fixed(ENTRY_TIME.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+        final ZipArchiveWriter writer = new ZipArchiveWriter(out, ZipCompression.DEFAULT, clock);
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+    }
+
+    private Map<String, ZipEntry> readWithZipFile(byte[] archive, byte[] expectedContent) throws IOException {
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(writeFile(archive))) {
+            Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    byte[] content = readAll(in); // Also checks the CRC
+                    if (expectedContent != null) {
+                        assertArrayEquals(expectedContent, content, entry.getName());
+                    }
+                }
+                assertNull(entries.put(entry.getName(), entry), "Duplicate entry " + entry.getName());
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, ZipEntry> readWithZipInputStream(byte[] archive, byte[] expectedContent) throws IOException {
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                assertArrayEquals(expectedContent, readAll(in), entry.getName()); // Also checks the CRC
+                entries.put(entry.getName(), entry); // Sizes and CRC of a data descriptor are set once read
+            }
+        }
+        return entries;
+    }
+
+    private File writeFile(byte[] archive) throws IOException {
+        File file = File.createTempFile("archive", ".zip", tempDir);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(archive);
+        }
+        return file;
+    }
+
+    private static GeneratedContent compress(byte[] content, ZipCompression compression) throws IOException {
+        return write(new CompressingOutputSink(HeapOutputSink.getInstance(), compression), content);
+    }
+
+    private static GeneratedContent heapContent(byte[] content) throws IOException {
+        return write(HeapOutputSink.getInstance(), content);
+    }
+
+    private static GeneratedContent write(OutputSink sink, byte[] content) throws IOException {
+        try (SinkOutputStream out = sink.open("entry.xml")) {
+            out.write(content);
+            return out.finish();
+        }
+    }
+
+    private static byte[] sampleXml(int transactions) {
+        StringBuilder sb = new StringBuilder("<Document>");
+        for (int i = 0; i < transactions; i++) {
+            sb.append("<CdtTrfTxInf><EndToEndId>E").append(i).append("</EndToEndId><InstdAmt>100.50</InstdAmt></CdtTrfTxInf>");
+        }
+        return sb.append("</Document>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long crcOf(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.id.IdGenerator;
+import com.example.xmlgenerator.id.IdGenerators;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Stress test of the state shared by the generation threads: the TimestampFormatter (CreDtTm, dates and file
+ * names, formerly a shared SimpleDateFormat) and the ID generators (MsgId, from which the batch and transaction IDs
+ * are derived). Many threads hammer them at once; no value may be malformed, and no ID may repeat.
+ */
+class ConcurrentGenerationStressTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 25000;
+    private static final int TIMESTAMPS_PER_THREAD = 20000;
+    private static final int GENERATIONS_PER_THREAD = 3;
+    private static final int COPIES = 8;
+
+    private static final Pattern ID = Pattern.compile("[0-9A-Z]{1,21}");
+    private static final Pattern ISO_DATE_TIME = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}");
+    private static final Pattern MSG_ID = Pattern.compile("<MsgId>([^<]*)</MsgId>");
+    private static final Pattern CRE_DT_TM = Pattern.compile("<CreDtTm>([^<]*)</CreDtTm>");
+    private static final Pattern PMT_INF_ID = Pattern.compile("<PmtInfId>([^<]*)</PmtInfId>");
+    private static final Pattern END_TO_END_ID = Pattern.compile("<EndToEndId>([^<]*)</EndToEndId>");
+
+    private static final DateTimeFormatter COMPACT_MILLIS = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS", Locale.ROOT);
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT);
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT);
+
+    @Test
+    void idGeneratorsNeverRepeatOrMalformIds() throws Exception {
+        for (String name : new String[]{"counter", "snowflake", "random"}) {
+            final IdGenerator generator = IdGenerators.create(name, 42);
+            final Set<String> ids = ConcurrentHashMap.newKeySet();
+            runConcurrently(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        String id = generator.nextId();
+                        assertTrue(ID.matcher(id).matches(), name + " ID is malformed: " + id);
+                        assertTrue(ids.add(id), name + " ID was returned twice: " + id);
+                    }
+                    return null;
+                }
+            });
+            assertEquals(THREADS * IDS_PER_THREAD, ids.size(), name);
+        }
+    }
+
+    @Test
+    void timestampFormatterMatchesTheTimeOfEveryCall() throws Exception {
+        // Every thread reads its own times from the shared formatter, so the cached second keeps changing hands
+        final ThreadLocal<Long> now = new ThreadLocal<>();
+        final TimestampFormatter formatter = new TimestampFormatter(new ThreadClock(now, ZoneId.of("Europe/Berlin")));
+        final long base = LocalDateTime.of(2024, 3, 31, 0, 30).toInstant(ZoneOffset.UTC).toEpochMilli(); // Around a DST change
+        final SplittableRandom seeds = new SplittableRandom(7);
+        final List<SplittableRandom> randoms = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            randoms.add(seeds.split());
+        }
+        final ThreadLocal<SplittableRandom> random = new ThreadLocal<SplittableRandom>() {
+            @Override
+            protected SplittableRandom initialValue() {
+                synchronized (randoms) {
+                    return randoms.remove(randoms.size() - 1);
+                }
+            }
+        };
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int i = 0; i < TIMESTAMPS_PER_THREAD; i++) {
+                    long millis = base + random.get().nextLong(4 * 3600 * 1000L);
+                    LocalDateTime expected = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.of("Europe/Berlin"));
+                    now.set(millis);
+                    assertEquals(ISO.format(expected), formatter.isoDateTime());
+                    assertEquals(ISO_DATE.format(expected), formatter.isoDate());
+                    assertEquals(COMPACT_MILLIS.format(expected), formatter.compactDateTimeMillis());
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    void parallelGenerationWritesUniqueIdsAndWellFormedCreationTimes() throws Exception {
+        final byte[] template = readResource("/templates/pain001v3.xml");
+        final Set<String> msgIds = ConcurrentHashMap.newKeySet();
+        for (String name : new String[]{"counter", "snowflake", "random"}) {
+            final XmlProcessorService service = new XmlProcessorService(IdGenerators.create(name, 7));
+            try {
+                final CompiledTemplate compiledTemplate = service.compileTemplate(new ByteArrayInputStream(template));
+                final LocalDateTime start = LocalDateTime.now().withNano(0);
+                runConcurrently(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < GENERATIONS_PER_THREAD; i++) {
+                            List<GenerationResult> results = new ArrayList<>();
+                            results.add(service.generateXmlFiles(compiledTemplate, 4, 2, COPIES));
+                            results.add(service.generateXmlFilesStreaming(compiledTemplate, 4, 2, COPIES));
+                            results.add(service.generateXmlFilesParallel(compiledTemplate, 4, 2, 2, HeapOutputSink.getInstance()));
+                            for (GenerationResult result : results) {
+                                assertEquals(0, result.getFailedCopies());
+                                for (GeneratedFile file : result.getFiles()) {
+                                    checkFile(file, start, msgIds);
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                });
+            } finally {
+                service.shutdown();
+            }
+        }
+        assertEquals(3 * THREADS * GENERATIONS_PER_THREAD * (2 * COPIES + 2), msgIds.size());
+    }
+
+    // Checks the IDs and the creation time of a generated file and records its MsgId.
+    private static void checkFile(GeneratedFile file, LocalDateTime start, Set<String> msgIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        file.writeTo(bytes);
+        String xml = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+
+        String msgId = single(MSG_ID, xml, file);
+        assertTrue(ID.matcher(msgId).matches(), "Malformed MsgId " + msgId + " in " + file.getFileName());
+        assertTrue(msgIds.add(msgId), "MsgId " + msgId + " was generated twice");
+
+        String creDtTm = single(CRE_DT_TM, xml, file);
+        assertTrue(ISO_DATE_TIME.matcher(creDtTm).matches(), "Malformed CreDtTm " + creDtTm + " in " + file.getFileName());
+        LocalDateTime created = LocalDateTime.parse(creDtTm);
+        assertTrue(!created.isBefore(start) && !created.isAfter(LocalDateTime.now()),
+                "CreDtTm " + creDtTm + " is not the time of the generation");
+
+        // The batch and transaction IDs are derived from the MsgId of their own file
+        for (Pattern derived : new Pattern[]{PMT_INF_ID, END_TO_END_ID}) {
+            Matcher matcher = derived.matcher(xml);
+            while (matcher.find()) {
+                assertTrue(matcher.group(1).startsWith(msgId), matcher.group(1) + " is not derived from " + msgId);
+            }
+        }
+    }
+
+    private static String single(Pattern pattern, String xml, GeneratedFile file) {
+        Matcher matcher = pattern.matcher(xml);
+        if (!matcher.find()) {
+            fail("No " + pattern + " in " + file.getFileName());
+        }
+        String value = matcher.group(1);
+        assertTrue(!matcher.find(), "More than one " + pattern + " in " + file.getFileName());
+        return value;
+    }
+
+    /**
+     * Runs the task on THREADS threads released at the same time, and rethrows the first failure.
+     */
+    private static void runConcurrently(final Callable<Void> task) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch startGate = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(threads.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        startGate.await();
+                        return task.call();
+                    }
+                }));
+            }
+            startGate.countDown();
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause(); // Assertion failures
+                    }
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = ConcurrentGenerationStressTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * A clock reading the time the calling thread set, so that each thread knows the time of its calls.
+     */
+    private static final class ThreadClock extends Clock {
+        private final ThreadLocal<Long> now;
+        private final ZoneId zone;
+
+        ThreadClock(ThreadLocal<Long> now, ZoneId zone) {
+            this.now = now;
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new ThreadClock(now, zone);
+        }
+
+        @Override
+        public long millis() {
+            return now.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.xmlgenerator.service;
+
+import com.example.xmlgenerator.id.IdGenerators;
+import com.example.xmlgenerator.output.HeapOutputSink;
+import com.example.xmlgenerator.output.OutputSink;
+import com.example.xmlgenerator.output.SinkOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A generation with many copies only keeps a window of them on the shared pool, so a small generation started
+ * while it runs is served between its copies instead of after all of them.
+ */
+class CopyWindowFairnessTest {
+
+    private static final long COPY_MILLIS = 20;
+    private static final int COPIES_PER_THREAD = 50; // The large generation takes about a second on any machine
+
+    @Test
+    void smallGenerationFinishesWhileALargeOneIsStillRunning() throws Exception {
+        final XmlProcessorService service = new XmlProcessorService(IdGenerators.create("counter", 1));
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final CompiledTemplate compiledTemplate;
+            try (InputStream in = CopyWindowFairnessTest.class.getResourceAsStream("/templates/pain001v3.xml")) {
+                compiledTemplate = service.compileTemplate(in);
+            }
+            final int largeCopies = COPIES_PER_THREAD * Runtime.getRuntime().availableProcessors();
+            final CountDownLatch largeStarted = new CountDownLatch(1);
+            final AtomicInteger largeCopiesStarted = new AtomicInteger();
+            // Every copy of the large generation takes at least COPY_MILLIS
+            final OutputSink slowSink = new OutputSink() {
+                @Override
+                public SinkOutputStream open(String fileName) throws IOException {
+                    largeCopiesStarted.incrementAndGet();
+                    largeStarted.countDown();
+                    try {
+                        Thread.sleep(COPY_MILLIS);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    return HeapOutputSink.getInstance().open(fileName);
+                }
+            };
+
+            Future<GenerationResult> large = callers.submit(new Callable<GenerationResult>() {
+                @Override
+                public GenerationResult call() throws Exception {
+                    return service.generateXmlFilesStreaming(compiledTemplate, 10, 1, largeCopies, slowSink);
+                }
+            });
+            assertTrue(largeStarted.await(10, TimeUnit.SECONDS), "Large generation did not start");
+
+            Future<GenerationResult> small = callers.submit(new Callable<GenerationResult>() {
+                @Override
+                public GenerationResult call() throws Exception {
+                    return service.generateXmlFiles(compiledTemplate, 10, 1, 1);
+                }
+            });
+            GenerationResult smallResult = small.get(30, TimeUnit.SECONDS);
+            assertEquals(1, smallResult.getFiles().size());
+            assertFalse(large.isDone(), "The small generation waited for the whole large one");
+            assertTrue(largeCopiesStarted.get() < largeCopies,
+                    "All copies of the large generation started before the small one finished");
+
+            // The window still delivers every copy of the large generation, in copy order
+            GenerationResult largeResult = large.get(60, TimeUnit.SECONDS);
+            assertEquals(largeCopies, largeResult.getFiles().size());
+            assertEquals(0, largeResult.getFailedCopies());
+            for (int i = 0; i < largeCopies; i++) {
+                assertTrue(largeResult.getFiles().get(i).getFileName().endsWith("_F" + (i + 1) + ".xml"),
+                        largeResult.getFiles().get(i).getFileName());
+            }
+        } finally {
+            callers.shutdownNow();
+            service.shutdown();
+        }
+    }
+}